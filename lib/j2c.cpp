@@ -1,17 +1,446 @@
 #include <stdint.h>
+#include <stdlib.h>
 
+#ifdef J2C_GC
+#define GC_THREADS
+#include <gc.h>
+#endif
+
+#include <algorithm>
+#include <atomic>
+#include <climits>
+#include <cstring>
 #include <iostream>
+#include <mutex>
+#include <new>
+#include <string>
+
+#include <cxxabi.h>
+#include <dlfcn.h>
+#include <linux/futex.h>
+#include <pthread.h>
+#include <sched.h>
+#include <sys/syscall.h>
+#include <time.h>
+#include <unistd.h>
+#include <unwind.h>
 
+#include <java/io/Serializable.hpp>
+#include <java/lang/ArrayIndexOutOfBoundsException.hpp>
+#include <java/lang/ArrayStoreException.hpp>
+#include <java/lang/Boolean.hpp>
+#include <java/lang/Byte.hpp>
+#include <java/lang/Character.hpp>
 #include <java/lang/Class.hpp>
+#include <java/lang/CloneNotSupportedException.hpp>
+#include <java/lang/Cloneable.hpp>
+#include <java/lang/Double.hpp>
+#include <java/lang/Float.hpp>
+#include <java/lang/IllegalArgumentException.hpp>
+#include <java/lang/IllegalMonitorStateException.hpp>
+#include <java/lang/IllegalThreadStateException.hpp>
+#include <java/lang/Integer.hpp>
+#include <java/lang/InterruptedException.hpp>
+#include <java/lang/Long.hpp>
+#include <java/lang/NullPointerException.hpp>
+#include <java/lang/OutOfMemoryError.hpp>
+#include <java/lang/Short.hpp>
+#include <java/lang/StackTraceElement.hpp>
 
 #include <Array.hpp>
+#include <ObjectArray.hpp>
+#include <class_info.hpp>
+#include <j2c.hpp>
+#include <thread_local.hpp>
 #include <java/lang/String.hpp>
 
 using namespace java::lang;
 
-void lock(Object*) { }
+// Allocation
+//
+// Every object (through Object::operator new) and all array storage is
+// allocated here. By default memory comes from malloc and is never reclaimed.
+// Build the runtime and the generated code with -DJ2C_GC and link with -lgc to
+// use the Boehm collector instead - a conservative mark-sweep that scans
+// thread stacks, statics and the heap. Threads must then be started through
+// the collector (GC_pthread_create, which gc.h substitutes for
+// pthread_create) so that their stacks are seen.
+
+void *alloc_object(size_t size) {
+#ifdef J2C_GC
+  auto ret = GC_MALLOC(size);
+#else
+  auto ret = calloc(1, size);
+#endif
+  if(!ret) throw std::bad_alloc();
+  return ret;
+}
+
+void free_object(void *p) {
+#ifndef J2C_GC
+  free(p);
+#endif
+}
+
+/** Memory that the collector scans but doesn't free - runtime bookkeeping */
+void *alloc_root(size_t size) {
+#ifdef J2C_GC
+  auto ret = GC_MALLOC_UNCOLLECTABLE(size);
+#else
+  auto ret = calloc(1, size);
+#endif
+  if(!ret) throw std::bad_alloc();
+  return ret;
+}
+
+void free_root(void *p) {
+#ifdef J2C_GC
+  GC_FREE(p);
+#else
+  free(p);
+#endif
+}
+
+void *alloc_array_data(size_t size, bool scan) {
+#ifdef J2C_GC
+  // Primitive storage holds no references and need not be scanned
+  auto ret = scan ? GC_MALLOC(size) : GC_MALLOC_ATOMIC(size);
+#else
+  (void)scan;
+  auto ret = malloc(size);
+#endif
+  if(!ret && size) throw std::bad_alloc();
+  return ret;
+}
+
+void free_array_data(void *p) {
+#ifndef J2C_GC
+  free(p);
+#endif
+}
+
+// Monitors
+//
+// Every object has a lock word in its header, Object::monitor_. The word is
+// either thin - owner thread id, recursion count and a waiters bit - or a
+// pointer to a fat monitor. Uncontended locking is a single CAS. When another
+// thread wants a thin lock it sets the waiters bit and sleeps until the owner
+// inflates the word to a futex-based fat monitor on its way out - on one of a
+// fixed set of futexes, picked by the address of the object. Object.wait
+// inflates too, since a fat monitor is needed to sleep on. A fat monitor lives
+// as long as its object: the collector finds it through the word, without it
+// ~Object frees it.
+
+namespace
+{
+  monitor_stats_t stats;
+
+  const uintptr_t inflated_bit = 1;
+  const uintptr_t waiters_bit = 2;
+  const int count_shift = 2;
+  const uintptr_t count_one = uintptr_t(1) << count_shift;
+  const uintptr_t count_mask = uintptr_t(0x3f) << count_shift;
+  const int owner_shift = 8;
+  const uintptr_t owner_mask = ~uintptr_t(0) << owner_shift;
+
+  std::atomic<uintptr_t> next_thread_id(1);
+  thread_local uintptr_t thread_id = 0;
+
+  uintptr_t self() {
+    if(!thread_id) thread_id = next_thread_id++;
+    return thread_id;
+  }
+
+  uint32_t *futex_addr(std::atomic<uint32_t> *a) {
+    return reinterpret_cast<uint32_t*>(a);
+  }
+
+  void futex_wait(std::atomic<uint32_t> *a, uint32_t v, const timespec *timeout = nullptr) {
+    syscall(SYS_futex, futex_addr(a), FUTEX_WAIT_PRIVATE, v, timeout, nullptr, 0);
+  }
+
+  void futex_wake(std::atomic<uint32_t> *a, int n) {
+    syscall(SYS_futex, futex_addr(a), FUTEX_WAKE_PRIVATE, n, nullptr, nullptr, 0);
+  }
+
+  /** What a thread sleeps and is interrupted on - see Threads */
+  struct thread_state
+  {
+    Object *thread = nullptr;             // its java.lang.Thread once attached
+    std::atomic<uint32_t> alive { 0 };
+    std::atomic<bool> interrupted { false };
+    std::atomic<uint32_t> permit { 0 };   // LockSupport.park / unpark
+    std::atomic<uint32_t> sleeps { 0 };   // bumped to wake Thread.sleep
+    std::atomic<std::atomic<uint32_t>*> waiting { nullptr }; // the monitor Object.wait sleeps on
+  };
+
+  thread_state *new_thread_state() {
+#ifdef J2C_GC
+    // Lives as long as its Thread, which holds it through its fat monitor
+    auto p = GC_MALLOC(sizeof(thread_state));
+    if(!p) throw std::bad_alloc();
+    return new (p) thread_state();
+#else
+    return new thread_state();
+#endif
+  }
+
+  /**
+   * The state of the running thread. Thread-local storage is not scanned, so
+   * the pointer sits in a root of its own until the thread ends - that keeps
+   * the state and its Thread alive while the thread runs.
+   */
+  struct current_t
+  {
+    thread_state **root = nullptr;
+
+    thread_state *get() { return root ? *root : nullptr; }
+
+    void set(thread_state *st) {
+      if(!root) root = static_cast<thread_state**>(alloc_root(sizeof *root));
+      *root = st;
+    }
+
+    ~current_t() {
+      if(!root) return;
+#ifndef J2C_GC
+      // Nothing but this thread knew a state without a Thread
+      if(!(*root)->thread) delete *root;
+#endif
+      free_root(root);
+    }
+  };
+
+  thread_local current_t current_state;
+
+  thread_state *this_thread() {
+    auto st = current_state.get();
+    if(!st) current_state.set(st = new_thread_state());
+    return st;
+  }
+
+  void check_interrupt(thread_state *st) {
+    if(st->interrupted.exchange(false)) throw new InterruptedException();
+  }
+
+  struct Monitor
+  {
+    std::atomic<uint32_t> state { 0 }; // 0 free, 1 locked, 2 locked with sleepers
+    std::atomic<uintptr_t> owner { 0 };
+    uintptr_t count = 0; // recursive enters beyond the first
+    std::atomic<uint32_t> seq { 0 }; // bumped by notify
+    std::atomic<thread_state*> thread { nullptr }; // if the object is a started or attached Thread
+
+    bool owned() { return owner.load(std::memory_order_relaxed) == self(); }
+
+    void acquire() {
+      uint32_t c = 0;
+      if(state.compare_exchange_strong(c, 1, std::memory_order_acquire, std::memory_order_relaxed)) return;
+
+      stats.fat_contended++;
+      if(c != 2) c = state.exchange(2, std::memory_order_acquire);
+      while(c != 0) {
+        futex_wait(&state, 2);
+        c = state.exchange(2, std::memory_order_acquire);
+      }
+    }
+
+    void release() {
+      if(state.fetch_sub(1, std::memory_order_release) != 1) {
+        state.store(0, std::memory_order_release);
+        futex_wake(&state, 1);
+      }
+    }
+
+    void enter() {
+      if(owned()) { ++count; return; }
+      acquire();
+      owner.store(self(), std::memory_order_relaxed);
+    }
+
+    void exit() {
+      if(count) { --count; return; }
+      owner.store(0, std::memory_order_relaxed);
+      release();
+    }
+
+    void wait(int64_t millis) {
+      auto st = this_thread();
+      check_interrupt(st);
+
+      stats.waits++;
+      auto saved = count;
+
+      // An interrupt bumps seq after looking at waiting, so it can't be missed
+      st->waiting.store(&seq);
+      auto s = seq.load();
+      count = 0;
+      owner.store(0, std::memory_order_relaxed);
+      release();
+
+      if(!st->interrupted.load()) {
+        if(millis > 0) {
+          timespec ts { static_cast<time_t>(millis / 1000), static_cast<long>(millis % 1000) * 1000000 };
+          futex_wait(&seq, s, &ts);
+        } else {
+          futex_wait(&seq, s);
+        }
+      }
+
+      st->waiting.store(nullptr);
+      acquire();
+      owner.store(self(), std::memory_order_relaxed);
+      count = saved;
+      check_interrupt(st);
+    }
+
+    void notify(bool all) {
+      stats.notifies++;
+      seq.fetch_add(1, std::memory_order_release);
+      futex_wake(&seq, all ? INT_MAX : 1);
+    }
+  };
+
+  const size_t inflation_futexes = 64;
+
+  /** What thin lock waiters of o sleep on until the owner inflates */
+  std::atomic<uint32_t> *inflations(Object *o) {
+    static std::atomic<uint32_t> futexes[inflation_futexes];
+    return &futexes[(reinterpret_cast<uintptr_t>(o) >> 4) % inflation_futexes];
+  }
+
+  Monitor *new_monitor() {
+#ifdef J2C_GC
+    // Only the tagged word points here - init_jvm tells the collector
+    auto p = GC_MALLOC(sizeof(Monitor));
+    if(!p) throw std::bad_alloc();
+    return new (p) Monitor();
+#else
+    return new Monitor();
+#endif
+  }
+
+  Monitor *fat(uintptr_t v) {
+    return reinterpret_cast<Monitor*>(v & ~inflated_bit);
+  }
+
+  /** Replace the thin word v by a fat monitor, keeping the owner and count if held */
+  Monitor *inflate(Object *o, uintptr_t v, bool held) {
+    auto m = new_monitor();
+    if(held) {
+      m->state.store(1, std::memory_order_relaxed);
+      m->owner.store(self(), std::memory_order_relaxed);
+      m->count = (v & count_mask) >> count_shift;
+    }
+
+    // Only the owner changes a held thin word, others may only add waiters_bit
+    auto old = o->monitor_.exchange(reinterpret_cast<uintptr_t>(m) | inflated_bit);
+    stats.inflated++;
+    if(old & waiters_bit) {
+      auto f = inflations(o);
+      f->fetch_add(1);
+      futex_wake(f, INT_MAX);
+    }
+
+    return m;
+  }
+
+  /** The monitor of o, which must be held, or null if thin and inflate is false */
+  Monitor *owned_monitor(Object *o, bool inflate_thin) {
+    auto v = o->monitor_.load(std::memory_order_relaxed);
+    if(v & inflated_bit) {
+      auto m = fat(v);
+      if(m->owned()) return m;
+    } else if(v && (v & owner_mask) == self() << owner_shift) {
+      return inflate_thin ? inflate(o, v, true) : nullptr;
+    }
+
+    throw new IllegalMonitorStateException();
+  }
+}
+
+const monitor_stats_t &monitor_stats() {
+  return stats;
+}
+
+void lock(Object *o) {
+  auto &word = o->monitor_;
+  auto me = self() << owner_shift;
+  uintptr_t v = 0;
+  if(word.compare_exchange_strong(v, me, std::memory_order_acquire, std::memory_order_relaxed)) return;
+
+  for(;;) {
+    if(v & inflated_bit) {
+      fat(v)->enter();
+      return;
+    }
+
+    if(v == 0) {
+      if(word.compare_exchange_weak(v, me, std::memory_order_acquire, std::memory_order_relaxed)) return;
+      continue;
+    }
+
+    if((v & owner_mask) == me) {
+      if((v & count_mask) != count_mask) {
+        word.fetch_add(count_one, std::memory_order_relaxed);
+      } else {
+        inflate(o, v, true)->enter();
+      }
+      return;
+    }
+
+    // Held by someone else - ask the owner to inflate on unlock, then sleep
+    stats.contended++;
+    auto f = inflations(o);
+    auto s = f->load();
+    auto cur = word.load();
+    if(cur != v) { v = cur; continue; }
+    if(!(v & waiters_bit) && !word.compare_exchange_weak(v, v | waiters_bit)) continue;
+
+    futex_wait(f, s);
+    v = word.load(std::memory_order_acquire);
+  }
+}
 
-void unlock(Object*) { }
+void unlock(Object *o) {
+  auto &word = o->monitor_;
+  auto v = word.load(std::memory_order_relaxed);
+  if(v & inflated_bit) {
+    fat(v)->exit();
+    return;
+  }
+
+  if(v & count_mask) {
+    word.fetch_sub(count_one, std::memory_order_relaxed);
+    return;
+  }
+
+  if(!(v & waiters_bit) && word.compare_exchange_strong(v, 0, std::memory_order_release, std::memory_order_relaxed)) return;
+
+  // Contended - hand over to a fat monitor that the waiters can sleep on
+  inflate(o, v, false);
+}
+
+void free_monitor_(Object *o) {
+#ifdef J2C_GC
+  // The collector has it once o is gone
+  (void)o;
+#else
+  auto v = o->monitor_.load(std::memory_order_relaxed);
+  if(v & inflated_bit) delete fat(v);
+#endif
+}
+
+void monitor_wait(Object *o, int64_t millis) {
+  if(millis < 0) throw new IllegalArgumentException();
+  owned_monitor(o, true)->wait(millis);
+}
+
+void monitor_notify(Object *o, bool all) {
+  // Nobody can be waiting on a thin lock since waiting inflates
+  auto m = owned_monitor(o, false);
+  if(m) m->notify(all);
+}
 
 String *java::lang::operator "" _j(const char16_t* p, size_t n) {
   auto x = new char16_tArray(p, n);
@@ -19,8 +448,788 @@ String *java::lang::operator "" _j(const char16_t* p, size_t n) {
   return s->intern();
 }
 
-Class *class_(const char16_t *s, int n) {
-  return Class::forName(operator "" _j(s, n));
+// Classes
+//
+// The translator writes a constant-initialized class_info for every class and
+// a perfect hash table of them (class_table.cpp) for Class.forName. The ones
+// of primitives and arrays are here, array ones in memory the collector scans
+// since they hold their Class. Class objects are made the first time they are
+// asked for and point back to their descriptor, which is what the natives of
+// Class - bodies from ClassSnippet - work from.
+
+namespace
+{
+  const class_info *const array_interfaces[] = {
+    &Cloneable::class_info_, &java::io::Serializable::class_info_, nullptr
+  };
+
+  const uint64_t array_interface_bits =
+    interface_bit_(u"java.lang.Cloneable") | interface_bit_(u"java.io.Serializable");
+
+  // The displays of arrays, as those of classes, end with the array itself
+  const class_info *const boolean_array_display[] = { &Object::class_info_, &boolean_array_info_ };
+  const class_info *const char_array_display[] = { &Object::class_info_, &char_array_info_ };
+  const class_info *const byte_array_display[] = { &Object::class_info_, &byte_array_info_ };
+  const class_info *const short_array_display[] = { &Object::class_info_, &short_array_info_ };
+  const class_info *const int_array_display[] = { &Object::class_info_, &int_array_info_ };
+  const class_info *const long_array_display[] = { &Object::class_info_, &long_array_info_ };
+  const class_info *const float_array_display[] = { &Object::class_info_, &float_array_info_ };
+  const class_info *const double_array_display[] = { &Object::class_info_, &double_array_info_ };
+
+  // In the order of primitive_codes
+  const class_info primitives[] = {
+    { u"boolean", 7, nullptr, nullptr, nullptr, false, 0, 0, nullptr, 0, nullptr, nullptr, { &boolean_array_info_ } },
+    { u"char", 4, nullptr, nullptr, nullptr, false, 0, 0, nullptr, 0, nullptr, nullptr, { &char_array_info_ } },
+    { u"byte", 4, nullptr, nullptr, nullptr, false, 0, 0, nullptr, 0, nullptr, nullptr, { &byte_array_info_ } },
+    { u"short", 5, nullptr, nullptr, nullptr, false, 0, 0, nullptr, 0, nullptr, nullptr, { &short_array_info_ } },
+    { u"int", 3, nullptr, nullptr, nullptr, false, 0, 0, nullptr, 0, nullptr, nullptr, { &int_array_info_ } },
+    { u"long", 4, nullptr, nullptr, nullptr, false, 0, 0, nullptr, 0, nullptr, nullptr, { &long_array_info_ } },
+    { u"float", 5, nullptr, nullptr, nullptr, false, 0, 0, nullptr, 0, nullptr, nullptr, { &float_array_info_ } },
+    { u"double", 6, nullptr, nullptr, nullptr, false, 0, 0, nullptr, 0, nullptr, nullptr, { &double_array_info_ } },
+    { u"void", 4, nullptr, nullptr, nullptr, false }
+  };
+
+  const char16_t primitive_codes[] = u"ZCBSIJFDV";
+  const int primitive_count = sizeof(primitives) / sizeof(primitives[0]);
+
+  std::recursive_mutex classes_lock;
+
+  std::u16string chars(String *s) {
+    std::u16string ret;
+    for(int32_t i = 0, n = s->length(); i < n; ++i) ret += s->charAt(i);
+    return ret;
+  }
+
+  const class_info *find_class(const char16_t *s, int32_t n) {
+    if(n > 1 && s[0] == u'[') {
+      const class_info *component = nullptr;
+      if(s[1] == u'[') {
+        component = find_class(s + 1, n - 1);
+      } else if(s[1] == u'L' && s[n - 1] == u';') {
+        component = find_class(s + 2, n - 3);
+      } else if(n == 2) {
+        auto p = std::char_traits<char16_t>::find(primitive_codes, primitive_count - 1, s[1]);
+        component = p ? &primitives[p - primitive_codes] : nullptr;
+      }
+
+      return component ? array_info_(component) : nullptr;
+    }
+
+    auto &t = class_table_;
+    auto seed = t.seeds[class_hash_(0, s, n) % t.seed_count];
+    auto info = t.slots[class_hash_(seed, s, n) % t.slot_count];
+    return info && info->length == n && std::equal(s, s + n, info->name) ? info : nullptr;
+  }
+
+  bool is_primitive(const class_info *info) {
+    return info >= primitives && info < primitives + primitive_count;
+  }
+
+  /** The type that the member tables call name */
+  const class_info *type_info(const char16_t *name) {
+    auto n = static_cast<int32_t>(std::char_traits<char16_t>::length(name));
+    for(auto &p : primitives) {
+      if(p.length == n && std::equal(name, name + n, p.name)) return &p;
+    }
+
+    return find_class(name, n);
+  }
+}
+
+const class_info boolean_array_info_ = { u"[Z", 2, &Object::class_info_, array_interfaces, &primitives[0], false, 0,
+  1, boolean_array_display, array_interface_bits, array_interfaces };
+const class_info char_array_info_ = { u"[C", 2, &Object::class_info_, array_interfaces, &primitives[1], false, 0,
+  1, char_array_display, array_interface_bits, array_interfaces };
+const class_info byte_array_info_ = { u"[B", 2, &Object::class_info_, array_interfaces, &primitives[2], false, 0,
+  1, byte_array_display, array_interface_bits, array_interfaces };
+const class_info short_array_info_ = { u"[S", 2, &Object::class_info_, array_interfaces, &primitives[3], false, 0,
+  1, short_array_display, array_interface_bits, array_interfaces };
+const class_info int_array_info_ = { u"[I", 2, &Object::class_info_, array_interfaces, &primitives[4], false, 0,
+  1, int_array_display, array_interface_bits, array_interfaces };
+const class_info long_array_info_ = { u"[J", 2, &Object::class_info_, array_interfaces, &primitives[5], false, 0,
+  1, long_array_display, array_interface_bits, array_interfaces };
+const class_info float_array_info_ = { u"[F", 2, &Object::class_info_, array_interfaces, &primitives[6], false, 0,
+  1, float_array_display, array_interface_bits, array_interfaces };
+const class_info double_array_info_ = { u"[D", 2, &Object::class_info_, array_interfaces, &primitives[7], false, 0,
+  1, double_array_display, array_interface_bits, array_interfaces };
+
+Class *make_class_(const class_info *info) {
+  // Recursive since making a Class may initialize it, which can use literals
+  std::lock_guard<std::recursive_mutex> guard(classes_lock);
+  auto ret = info->cls.load(std::memory_order_relaxed);
+  if(ret) return ret;
+
+  ret = new Class(*static_cast<default_init_tag*>(0));
+  ret->descriptor_ = info;
+  info->cls.store(ret, std::memory_order_release);
+  return ret;
+}
+
+const class_info *class_info_of_(Class *c) {
+  return c ? c->descriptor_ : nullptr;
+}
+
+const class_info *array_info_(const class_info *component) {
+  auto ret = component->array.load(std::memory_order_acquire);
+  if(ret) return ret;
+
+  // As Class.getName() has it: [[I, [Ljava.lang.String;
+  auto name = new std::u16string(u"[");
+  if(component->name[0] == u'[') {
+    name->append(component->name, component->length);
+  } else {
+    name->append(u"L").append(component->name, component->length).append(u";");
+  }
+
+  // The collector must see the Class that the descriptor will hold
+  auto display = new const class_info*[2] { &Object::class_info_, nullptr };
+  auto info = new (alloc_root(sizeof(class_info))) class_info { name->c_str(),
+    static_cast<int32_t>(name->size()), &Object::class_info_, array_interfaces, component, false, 0,
+    1, display, array_interface_bits, array_interfaces };
+  display[1] = info;
+  if(component->array.compare_exchange_strong(ret, info, std::memory_order_acq_rel)) return info;
+
+  free_root(info);
+  delete[] display;
+  delete name;
+  return ret;
+}
+
+const class_info *find_class_info_(String *name) {
+  auto s = chars(name);
+  return find_class(s.data(), static_cast<int32_t>(s.size()));
+}
+
+const class_info *primitive_info_(String *name) {
+  auto s = chars(name);
+  for(auto &p : primitives) {
+    if(s.size() == size_t(p.length) && std::equal(s.begin(), s.end(), p.name)) return &p;
+  }
+
+  return nullptr;
+}
+
+bool is_primitive_(const class_info *info) {
+  return is_primitive(info);
+}
+
+// Reflection
+//
+// Classes configured for reflection list their members in their class_info,
+// each with a thunk that does the access. Field, Method and Constructor
+// objects are made from the tables with the index as slot, which the copies
+// that the JDK makes keep, so an access is a look at the table of the
+// declaring class. The thunks unbox arguments here, widening as Java does.
+
+namespace
+{
+  template<typename T>
+  T unbox(Object *o, int rank, bool is_char) {
+    // byte < short < int < long < float < double, char only widens to int
+    if(!is_char) {
+      if(auto v = dynamic_cast<Byte*>(o)) return v->byteValue();
+      if(auto v = rank > 0 ? dynamic_cast<Short*>(o) : nullptr) return v->shortValue();
+    }
+
+    if(auto v = is_char || rank > 1 ? dynamic_cast<Character*>(o) : nullptr) return v->charValue();
+    if(auto v = rank > 1 ? dynamic_cast<Integer*>(o) : nullptr) return v->intValue();
+    if(auto v = rank > 2 ? dynamic_cast<Long*>(o) : nullptr) return v->longValue();
+    if(auto v = rank > 3 ? dynamic_cast<Float*>(o) : nullptr) return v->floatValue();
+    if(auto v = rank > 4 ? dynamic_cast<Double*>(o) : nullptr) return v->doubleValue();
+
+    // Including null
+    throw new IllegalArgumentException();
+  }
+}
+
+Class *type_class_(const char16_t *name) {
+  auto info = type_info(name);
+  return info ? class_(info) : nullptr;
+}
+
+String *member_name_(const char16_t *name) {
+  return operator "" _j(name, std::char_traits<char16_t>::length(name));
+}
+
+const method_info *method_info_(Class *declaring, int32_t slot, bool constructor) {
+  auto members = class_info_of_(declaring)->members;
+  if(!members) return nullptr;
+
+  auto count = constructor ? members->constructor_count : members->method_count;
+  if(slot < 0 || slot >= count) return nullptr;
+
+  return &(constructor ? members->constructors : members->methods)[slot];
+}
+
+const field_info *field_info_(Class *declaring, int32_t slot) {
+  auto members = class_info_of_(declaring)->members;
+  return members && slot >= 0 && slot < members->field_count ? &members->fields[slot] : nullptr;
+}
+
+void illegal_argument_() {
+  throw new IllegalArgumentException();
+}
+
+bool unbox_boolean_(Object *o) {
+  auto v = dynamic_cast<Boolean*>(o);
+  if(!v) throw new IllegalArgumentException();
+  return v->booleanValue();
+}
+
+char16_t unbox_char_(Object *o) { return unbox<char16_t>(o, 1, true); }
+int8_t unbox_byte_(Object *o) { return unbox<int8_t>(o, 0, false); }
+int16_t unbox_short_(Object *o) { return unbox<int16_t>(o, 1, false); }
+int32_t unbox_int_(Object *o) { return unbox<int32_t>(o, 2, false); }
+int64_t unbox_long_(Object *o) { return unbox<int64_t>(o, 3, false); }
+float unbox_float_(Object *o) { return unbox<float>(o, 4, false); }
+double unbox_double_(Object *o) { return unbox<double>(o, 5, false); }
+
+void check_invoke_(const method_info *m, Class *declaring, Object *o, ObjectArray *args) {
+  // Not in the tables, or abstract
+  if(!m || !m->invoke) throw new IllegalArgumentException();
+
+  int32_t n = 0;
+  while(m->parameter_types[n]) ++n;
+  if(n != (args ? args->length : 0)) throw new IllegalArgumentException();
+
+  const int32_t static_ = 8;
+  if(m->name && !(m->modifiers & static_)) {
+    if(!o) throw new NullPointerException();
+    if(!is_assignable_(class_info_of_(declaring), class_info_of_(o->getClass()))) {
+      throw new IllegalArgumentException();
+    }
+  }
+}
+
+void check_field_(const field_info *f, Class *declaring, Object *o) {
+  // Not in the tables
+  if(!f) throw new IllegalArgumentException();
+
+  const int32_t static_ = 8;
+  if(!(f->modifiers & static_)) {
+    if(!o) throw new NullPointerException();
+    if(!is_assignable_(class_info_of_(declaring), class_info_of_(o->getClass()))) {
+      throw new IllegalArgumentException();
+    }
+  }
+}
+
+bool is_assignable_(const class_info *to, const class_info *from) {
+  if(to == from) return true;
+  if(is_primitive(to) || is_primitive(from)) return false;
+  if(to->component && from->component) return is_assignable_(to->component, from->component);
+
+  for(auto i = from->interfaces; i && *i; ++i) {
+    if(is_assignable_(to, *i)) return true;
+  }
+
+  // Interfaces are assignable to Object too
+  return from->super ? is_assignable_(to, from->super) : to == &Object::class_info_;
+}
+
+// Natives
+//
+// The hot natives of java.lang - RuntimeSnippet points the stubs of System and
+// Object here.
+
+namespace
+{
+  void check_range(int32_t array_length, int32_t pos, int32_t length) {
+    if(pos < 0 || length < 0 || pos > array_length - length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+  }
+
+  template<typename T>
+  bool copy_primitives(Object *src, int32_t src_pos, Object *dest, int32_t dest_pos, int32_t length) {
+    auto s = dynamic_cast<Array<T>*>(src);
+    if(!s) return false;
+
+    auto d = dynamic_cast<Array<T>*>(dest);
+    if(!d) throw new ArrayStoreException();
+
+    check_range(s->length, src_pos, length);
+    check_range(d->length, dest_pos, length);
+
+    // memmove since src and dest may be the same array
+    if(length > 0) memmove(d->p + dest_pos, s->p + src_pos, length * sizeof(T));
+    return true;
+  }
+}
+
+void array_copy_(Object *src, int32_t src_pos, Object *dest, int32_t dest_pos, int32_t length) {
+  if(!src || !dest) throw new NullPointerException();
+
+  auto s = dynamic_cast<ObjectArray*>(src);
+  if(!s) {
+    if(copy_primitives<char16_t>(src, src_pos, dest, dest_pos, length)
+      || copy_primitives<int8_t>(src, src_pos, dest, dest_pos, length)
+      || copy_primitives<int32_t>(src, src_pos, dest, dest_pos, length)
+      || copy_primitives<int64_t>(src, src_pos, dest, dest_pos, length)
+      || copy_primitives<double>(src, src_pos, dest, dest_pos, length)
+      || copy_primitives<float>(src, src_pos, dest, dest_pos, length)
+      || copy_primitives<int16_t>(src, src_pos, dest, dest_pos, length)
+      || copy_primitives<bool>(src, src_pos, dest, dest_pos, length)) return;
+
+    throw new ArrayStoreException();
+  }
+
+  auto d = dynamic_cast<ObjectArray*>(dest);
+  if(!d) throw new ArrayStoreException();
+
+  check_range(s->length, src_pos, length);
+  check_range(d->length, dest_pos, length);
+  if(length == 0) return;
+
+  // When every element of src fits in dest (always the case within an array)
+  // the references can be moved as a block
+  auto src_class = src->getClass(), dest_class = dest->getClass();
+  if(src_class == dest_class || is_assignable_(class_info_of_(dest_class), class_info_of_(src_class))) {
+    memmove(d->p + dest_pos, s->p + src_pos, length * sizeof(Object*));
+    return;
+  }
+
+  // Otherwise the store check of dest stops the copy at the first misfit
+  for(int32_t i = 0; i < length; ++i) {
+    d->set(dest_pos + i, s->p[src_pos + i]);
+  }
+}
+
+int32_t identity_hash_(Object *o) {
+  // Objects never move, so the address will do - without the alignment bits
+  // and mixed so that the low bits that hash tables use spread well
+  auto x = static_cast<uint64_t>(reinterpret_cast<uintptr_t>(o)) >> 3;
+  x ^= x >> 33;
+  x *= 0xff51afd7ed558ccdull;
+  x ^= x >> 33;
+  return static_cast<int32_t>(x);
+}
+
+Object *clone_(Object *o) {
+  auto info = class_info_of_(o->getClass());
+  if(!info->size || !is_assignable_(&Cloneable::class_info_, info)) {
+    throw new CloneNotSupportedException();
+  }
+
+  // A shallow copy of the whole object, wherever in it the Object part is -
+  // vtable pointers and fields as in the original and no constructor run, as
+  // in Java. Arrays know their own size and override clone.
+  auto start = dynamic_cast<void*>(o);
+  auto offset = reinterpret_cast<char*>(o) - static_cast<char*>(start);
+  auto ret = static_cast<char*>(alloc_object(info->size));
+  memcpy(ret, start, info->size);
+
+  // The copy is not locked by anyone
+  auto copy = reinterpret_cast<Object*>(ret + offset);
+  copy->monitor_.store(0, std::memory_order_relaxed);
+  return copy;
+}
+
+// glibc answers both clocks from the vDSO, without entering the kernel
+
+int64_t current_time_millis_() {
+  timespec ts;
+  clock_gettime(CLOCK_REALTIME, &ts);
+  return int64_t(ts.tv_sec) * 1000 + ts.tv_nsec / 1000000;
+}
+
+int64_t nano_time_() {
+  timespec ts;
+  clock_gettime(CLOCK_MONOTONIC, &ts);
+  return int64_t(ts.tv_sec) * 1000000000 + ts.tv_nsec;
+}
+
+// Stack traces
+//
+// Throwable.fillInStackTrace only records return addresses, in a long[] that
+// Throwable.backtrace holds. The first element is how many frames belong to
+// the making of the exception, -1 until the trace is looked at. Only then
+// (getStackTrace, printStackTrace) are frames named, from the symbols the
+// program exports - link with -rdynamic. Functions of classes in the class
+// table become Java frames, the rest are native frames named after their
+// library. There are no line tables, so Java frames have no file and line.
+
+namespace
+{
+  const int max_stack_depth = 1024;
+
+  struct stack_walk
+  {
+    uintptr_t pcs[max_stack_depth];
+    int32_t n;
+  };
+
+  _Unwind_Reason_Code walk_frame(_Unwind_Context *context, void *arg) {
+    auto w = static_cast<stack_walk*>(arg);
+    auto pc = _Unwind_GetIP(context);
+    if(!pc || w->n == max_stack_depth) return _URC_END_OF_STACK;
+
+    w->pcs[w->n++] = pc;
+    return _URC_NO_REASON;
+  }
+
+  struct frame
+  {
+    std::u16string cls;
+    std::u16string method;
+    const class_info *info;       // null for native frames
+  };
+
+  std::u16string widen(const std::string &s) {
+    return std::u16string(s.begin(), s.end());
+  }
+
+  /** Map java::lang::Integer::parseInt(java::lang::String*, int) to Java */
+  bool java_frame(const std::string &name, frame &f) {
+    auto end = name.find('(');
+    if(end == std::string::npos || end == 0 || name.find('<') < end) return false;
+
+    auto qualified = name.substr(0, end);
+    auto sep = qualified.rfind("::");
+    if(sep == std::string::npos) return false;
+
+    auto cls = qualified.substr(0, sep);
+    auto method = qualified.substr(sep + 2);
+    auto simple = cls.substr(cls.rfind("::") == std::string::npos ? 0 : cls.rfind("::") + 2);
+
+    // Nested classes are Outer_Inner in C++
+    auto nested = simple;
+    std::replace(nested.begin(), nested.end(), '_', '$');
+    for(auto c : { cls, cls.substr(0, cls.size() - simple.size()) + nested }) {
+      std::string dotted;
+      for(size_t i = 0; i < c.size(); ++i) {
+        if(c.compare(i, 2, "::") == 0) {
+          dotted += '.';
+          ++i;
+        } else {
+          dotted += c[i];
+        }
+      }
+
+      auto s = widen(dotted);
+      f.info = find_class(s.data(), static_cast<int32_t>(s.size()));
+      if(f.info) break;
+    }
+
+    if(!f.info) return false;
+
+    if(method == simple || method == "ctor") {
+      method = "<init>";
+    } else if(method == "clinit") {
+      method = "<clinit>";
+    } else {
+      // Names that clash with C++ keywords or other members get underscores
+      while(method.size() > 1 && method.back() == '_') method.pop_back();
+    }
+
+    f.cls.assign(f.info->name, f.info->length);
+    f.method = widen(method);
+    return true;
+  }
+
+  frame symbolize(uintptr_t pc) {
+    frame f { u"", u"", nullptr };
+
+    // A return address - the call is the instruction before it
+    Dl_info dl;
+    if(!dladdr(reinterpret_cast<void*>(pc - 1), &dl)) dl = Dl_info { nullptr, nullptr, nullptr, nullptr };
+
+    if(dl.dli_sname) {
+      int status = 0;
+      auto demangled = abi::__cxa_demangle(dl.dli_sname, nullptr, nullptr, &status);
+      std::string name = status == 0 ? demangled : dl.dli_sname;
+      free(demangled);
+
+      if(java_frame(name, f)) return f;
+      f.method = widen(name);
+    } else {
+      auto offset = pc - reinterpret_cast<uintptr_t>(dl.dli_fbase);
+      f.method = widen("0x" + [](uintptr_t x) {
+        std::string ret;
+        do ret.insert(ret.begin(), "0123456789abcdef"[x % 16]); while(x /= 16);
+        return ret;
+      }(offset));
+    }
+
+    std::string file = dl.dli_fname ? dl.dli_fname : "";
+    f.cls = widen(file.substr(file.rfind('/') + 1));
+    return f;
+  }
+
+  /** The trace in backtrace, with the frames that made t counted */
+  int64_tArray *trace(Object *t, Object *backtrace) {
+    auto pcs = dynamic_cast<int64_tArray*>(backtrace);
+    if(!pcs || pcs->p[0] >= 0) return pcs;
+
+    // fillInStackTrace and the constructors of t are left out, as in the JVM
+    auto info = class_info_of_(t->getClass());
+    int32_t n = 1;
+    for(; n < pcs->length; ++n) {
+      auto f = symbolize(pcs->p[n]);
+      if(!f.info || !is_assignable_(f.info, info)
+        || (f.method != u"fillInStackTrace" && f.method != u"<init>")) break;
+    }
+
+    pcs->p[0] = n - 1;
+    return pcs;
+  }
+}
+
+Object *capture_stack_() {
+  stack_walk w;
+  w.n = 0;
+  _Unwind_Backtrace(&walk_frame, &w);
+
+  // The first frame is this function, its place holds the count
+  auto ret = new int64_tArray(std::max(w.n, 1));
+  ret->p[0] = -1;
+  for(int32_t i = 1; i < w.n; ++i) ret->p[i] = w.pcs[i];
+  return ret;
+}
+
+int32_t stack_depth_(Object *t, Object *backtrace) {
+  auto pcs = trace(t, backtrace);
+  return pcs ? pcs->length - 1 - pcs->p[0] : 0;
+}
+
+StackTraceElement *stack_element_(Object *t, Object *backtrace, int32_t index) {
+  if(index < 0 || index >= stack_depth_(t, backtrace)) throw new ArrayIndexOutOfBoundsException();
+
+  auto pcs = trace(t, backtrace);
+  auto f = symbolize(pcs->p[1 + pcs->p[0] + index]);
+  return new StackTraceElement(operator "" _j(f.cls.data(), f.cls.size()),
+    operator "" _j(f.method.data(), f.method.size()), nullptr, f.info ? -1 : -2);
+}
+
+// Threads
+//
+// A java.lang.Thread runs on a pthread of its own - pthread_create rather
+// than std::thread since it takes the stack size Thread asks for and gc.h
+// hands it to the collector. A thread_state, found through the fat monitor of
+// the Thread, holds the interrupt flag and what park, sleep and wait sleep on
+// - interrupting wakes all of them. The state lives as long as the Thread,
+// so a new Thread at the same address starts afresh. Threads that Java didn't
+// start, like main, get their Thread from Thread.currentThread when first
+// asked.
+
+namespace
+{
+  thread_state *state_of(Object *t) {
+    auto v = t->monitor_.load(std::memory_order_acquire);
+    return v & inflated_bit ? fat(v)->thread.load(std::memory_order_acquire) : nullptr;
+  }
+
+  void attach(Object *t, thread_state *st) {
+    st->thread = t;
+
+    // Locking inflates, and a fat word stays fat
+    lock(t);
+    owned_monitor(t, true)->thread.store(st, std::memory_order_release);
+    unlock(t);
+  }
+
+  struct start_args
+  {
+    Object *thread;
+    thread_state *state;
+    void (*run)(Object *thread);
+  };
+
+  void *thread_main(void *arg) {
+    // From here on the stack of the thread holds on to the Thread
+    auto a = *static_cast<start_args*>(arg);
+    free_root(arg);
+
+    current_state.set(a.state);
+    a.run(a.thread);
+
+    // Thread.join waits on the Thread for this, as in the JVM
+    lock(a.thread);
+    a.state->alive.store(0);
+    monitor_notify(a.thread, true);
+    unlock(a.thread);
+    return nullptr;
+  }
+
+  /** Sleep on f while it is v, for at most nanos - 0 or less is forever */
+  void futex_sleep(std::atomic<uint32_t> *f, uint32_t v, int64_t nanos) {
+    if(nanos > 0) {
+      timespec ts { static_cast<time_t>(nanos / 1000000000), static_cast<long>(nanos % 1000000000) };
+      futex_wait(f, v, &ts);
+    } else {
+      futex_wait(f, v);
+    }
+  }
+}
+
+Object *current_thread_() {
+  auto st = current_state.get();
+  return st ? st->thread : nullptr;
+}
+
+void attach_thread_(Object *t) {
+  auto st = this_thread();
+  st->alive.store(1);
+  attach(t, st);
+}
+
+void start_thread_(Object *t, int64_t stack_size, void (*run)(Object *t)) {
+  if(state_of(t)) throw new IllegalThreadStateException();
+
+  auto st = new_thread_state();
+  st->alive.store(1);
+  attach(t, st);
+
+  pthread_attr_t attr;
+  pthread_attr_init(&attr);
+  pthread_attr_setdetachstate(&attr, PTHREAD_CREATE_DETACHED);
+  if(stack_size > 0) {
+    pthread_attr_setstacksize(&attr, std::max<int64_t>(stack_size, PTHREAD_STACK_MIN));
+  }
+
+  pthread_t id;
+  // Until the thread has copied them, only the arguments know the Thread
+  auto args = new (alloc_root(sizeof(start_args))) start_args { t, st, run };
+  auto err = pthread_create(&id, &attr, &thread_main, args);
+  pthread_attr_destroy(&attr);
+  if(err) {
+    free_root(args);
+    st->alive.store(0);
+    throw new OutOfMemoryError(u"unable to create native thread"_j);
+  }
+}
+
+bool thread_alive_(Object *t) {
+  auto st = state_of(t);
+  return st && st->alive.load();
+}
+
+void interrupt_thread_(Object *t) {
+  auto st = state_of(t);
+  if(!st) return;
+
+  st->interrupted.store(true);
+  if(st->permit.exchange(1) == 0) futex_wake(&st->permit, 1);
+
+  st->sleeps++;
+  futex_wake(&st->sleeps, 1);
+
+  // Others waiting on the same monitor may wake too, which Java allows
+  auto w = st->waiting.load();
+  if(w) {
+    w->fetch_add(1);
+    futex_wake(w, INT_MAX);
+  }
+}
+
+bool thread_interrupted_(Object *t, bool clear) {
+  auto st = state_of(t);
+  if(!st) return false;
+  return clear ? st->interrupted.exchange(false) : st->interrupted.load();
+}
+
+void yield_thread_() {
+  sched_yield();
+}
+
+void sleep_thread_(int64_t millis) {
+  if(millis < 0) throw new IllegalArgumentException();
+
+  auto st = this_thread();
+  // So far off that the deadline would overflow is forever
+  auto forever = millis > INT64_MAX / 2000000;
+  auto deadline = forever ? 0 : nano_time_() + millis * 1000000;
+  for(;;) {
+    // Read before looking at the flag, so that an interrupt can't be missed
+    auto s = st->sleeps.load();
+    check_interrupt(st);
+
+    auto left = forever ? 0 : deadline - nano_time_();
+    if(!forever && left <= 0) return;
+
+    futex_sleep(&st->sleeps, s, left);
+  }
+}
+
+void park_(bool absolute, int64_t time) {
+  auto st = this_thread();
+
+  // A permit from unpark or an interrupt lets one park through
+  if(st->permit.exchange(0, std::memory_order_acquire) || st->interrupted.load()) return;
+
+  if(absolute) {
+    time = (time - current_time_millis_()) * 1000000;
+    if(time <= 0) return;
+  } else if(time < 0) {
+    return;
+  }
+
+  // Spurious returns are fine - callers of park check their condition again
+  futex_sleep(&st->permit, 0, time);
+  st->permit.store(0, std::memory_order_release);
+}
+
+void unpark_(Object *t) {
+  auto st = t ? state_of(t) : nullptr;
+  if(st && st->permit.exchange(1, std::memory_order_release) == 0) {
+    futex_wake(&st->permit, 1);
+  }
+}
+
+bool holds_lock_(Object *o) {
+  if(!o) throw new NullPointerException();
+
+  auto v = o->monitor_.load(std::memory_order_relaxed);
+  if(v & inflated_bit) return fat(v)->owned();
+  return v && (v & owner_mask) == self() << owner_shift;
+}
+
+// Thread locals
+//
+// ThreadLocals in private static final fields keep their value in a
+// thread_local slot of the class (see thread_local.hpp). The collector doesn't
+// scan thread-local storage, so the values themselves sit in cells handed out
+// from chunks of root memory, one run of them per thread, which go away when
+// the thread ends. That's one root per 63 slots, not one for each.
+
+namespace
+{
+  struct cell_chunk
+  {
+    cell_chunk *next;
+    Object *cells[63];
+  };
+
+  struct thread_cells
+  {
+    cell_chunk *chunks = nullptr;
+    int used = 63;
+
+    Object **get() {
+      if(used == 63) {
+        auto c = static_cast<cell_chunk*>(alloc_root(sizeof(cell_chunk)));
+        c->next = chunks;
+        chunks = c;
+        used = 0;
+      }
+
+      return &chunks->cells[used++];
+    }
+
+    ~thread_cells() {
+      while(chunks) {
+        auto next = chunks->next;
+        free_root(chunks);
+        chunks = next;
+      }
+    }
+  };
+
+  thread_local thread_cells cells;
+}
+
+Object **thread_local_cell_() {
+  return cells.get();
 }
 
 void unimplemented_(const char16_t *name) {
@@ -31,6 +1240,11 @@ void unimplemented_(const char16_t *name) {
 }
 
 void init_jvm() {
+#ifdef J2C_GC
+  GC_INIT();
+  // Lock words point one past the start of their fat monitor
+  GC_register_displacement(inflated_bit);
+#endif
   // This will be called by the generated main file before running any java code
   // Use it to initialize system properties and other stuff the JVM should provide
 }
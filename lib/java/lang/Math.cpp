@@ -0,0 +1,263 @@
+// Hand written replacement for java.lang.Math (see Replacements.java)
+//
+// Java allows Math to differ from StrictMath by an ulp, so the transcendental
+// functions map straight to the C library instead of the translated fdlibm
+// port. Where the C library and Java disagree on special values (NaN, signed
+// zeros, overflow on conversion), the Java rules are implemented here.
+// Written against the methods of the OpenJDK 8 class.
+
+#include <java/lang/Math.hpp>
+
+#include <java/lang/ArithmeticException.hpp>
+#include <java/lang/String.hpp>
+#include <java/util/Random.hpp>
+
+#include <cmath>
+#include <cstring>
+#include <limits>
+#include <type_traits>
+
+namespace java { namespace lang { String* operator "" _j(const char16_t* p, size_t n); } }
+using java::lang::operator "" _j;
+
+using java::lang::Math;
+
+namespace
+{
+  template<typename T, typename F>
+  T to_integral(F f) {
+    // Java narrowing: NaN is 0, out of range values saturate
+    if(f != f) return 0;
+    if(f >= F(std::numeric_limits<T>::max())) return std::numeric_limits<T>::max();
+    if(f <= F(std::numeric_limits<T>::min())) return std::numeric_limits<T>::min();
+    return static_cast<T>(f);
+  }
+
+  template<typename T>
+  T java_max(T a, T b) {
+    if(a != a) return a;
+    if(a == 0 && b == 0) return std::signbit(a) ? b : a;
+    return a >= b ? a : b;
+  }
+
+  template<typename T>
+  T java_min(T a, T b) {
+    if(a != a) return a;
+    if(a == 0 && b == 0) return std::signbit(a) ? a : b;
+    return a <= b ? a : b;
+  }
+
+  template<typename T>
+  T java_signum(T d) {
+    return d == 0 || d != d ? d : std::copysign(T(1), d);
+  }
+
+  // The exact arithmetic of Java 8 - wrapping is done unsigned, where it is
+  // defined, and an overflow is when the sign comes out wrong
+  template<typename T>
+  T overflow() {
+    using namespace java::lang;
+    throw new ArithmeticException(sizeof(T) == 4 ? u"integer overflow"_j : u"long overflow"_j);
+  }
+
+  template<typename T, typename U>
+  T add_exact(T x, T y) {
+    T r = T(U(x) + U(y));
+    return ((x ^ r) & (y ^ r)) < 0 ? overflow<T>() : r;
+  }
+
+  template<typename T, typename U>
+  T subtract_exact(T x, T y) {
+    T r = T(U(x) - U(y));
+    return ((x ^ y) & (x ^ r)) < 0 ? overflow<T>() : r;
+  }
+
+  template<typename T>
+  T floor_div(T x, T y) {
+    using namespace java::lang;
+    if(y == 0) throw new ArithmeticException(u"/ by zero"_j);
+
+    // MIN_VALUE / -1 overflows in C++, Java gives MIN_VALUE back
+    if(y == -1) return T(-typename std::make_unsigned<T>::type(x));
+
+    T q = x / y;
+    return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+  }
+
+  template<typename T>
+  T floor_mod(T x, T y) {
+    return T(typename std::make_unsigned<T>::type(x)
+      - typename std::make_unsigned<T>::type(floor_div(x, y))
+      * typename std::make_unsigned<T>::type(y));
+  }
+}
+
+double Math::sin(double a) { return std::sin(a); }
+double Math::cos(double a) { return std::cos(a); }
+double Math::tan(double a) { return std::tan(a); }
+double Math::asin(double a) { return std::asin(a); }
+double Math::acos(double a) { return std::acos(a); }
+double Math::atan(double a) { return std::atan(a); }
+double Math::toRadians(double angdeg) { return angdeg / 180.0 * M_PI; }
+double Math::toDegrees(double angrad) { return angrad * 180.0 / M_PI; }
+double Math::exp(double a) { return std::exp(a); }
+double Math::log(double a) { return std::log(a); }
+double Math::log10(double a) { return std::log10(a); }
+double Math::sqrt(double a) { return std::sqrt(a); }
+double Math::cbrt(double a) { return std::cbrt(a); }
+double Math::IEEEremainder(double f1, double f2) { return std::remainder(f1, f2); }
+double Math::ceil(double a) { return std::ceil(a); }
+double Math::floor(double a) { return std::floor(a); }
+double Math::rint(double a) { return std::nearbyint(a); }
+double Math::atan2(double y, double x) { return std::atan2(y, x); }
+
+double Math::pow(double a, double b) {
+  // C has pow(1, NaN) == 1 and pow(-1, inf) == 1, Java says NaN
+  if(b != b || (std::fabs(a) == 1 && std::isinf(b))) {
+    return std::numeric_limits<double>::quiet_NaN();
+  }
+
+  return std::pow(a, b);
+}
+
+namespace
+{
+  // Java 8 rounding: floor(a + 0.5) rounds 0.49999999999999994 up and loses
+  // the low bit of odd values past 2^52 (2^23), so round the fraction instead
+  template<typename T, typename F>
+  T java_round(F a, F integral) {
+    if(!(std::fabs(a) < integral)) return to_integral<T>(a);
+    F f = std::floor(a);
+    return to_integral<T>(a - f >= F(0.5) ? f + 1 : f);
+  }
+}
+
+int32_t Math::round(float a) {
+  return java_round<int32_t>(a, 0x1p23f);
+}
+
+int64_t Math::round(double a) {
+  return java_round<int64_t>(a, 0x1p52);
+}
+
+double Math::random() {
+  static auto rng = new ::java::util::Random();
+  return rng->nextDouble();
+}
+
+int32_t Math::abs(int32_t a) { return a < 0 ? int32_t(-uint32_t(a)) : a; }
+int64_t Math::abs(int64_t a) { return a < 0 ? int64_t(-uint64_t(a)) : a; }
+float Math::abs(float a) { return std::fabs(a); }
+double Math::abs(double a) { return std::fabs(a); }
+
+int32_t Math::max(int32_t a, int32_t b) { return a >= b ? a : b; }
+int64_t Math::max(int64_t a, int64_t b) { return a >= b ? a : b; }
+float Math::max(float a, float b) { return java_max(a, b); }
+double Math::max(double a, double b) { return java_max(a, b); }
+
+int32_t Math::min(int32_t a, int32_t b) { return a <= b ? a : b; }
+int64_t Math::min(int64_t a, int64_t b) { return a <= b ? a : b; }
+float Math::min(float a, float b) { return java_min(a, b); }
+double Math::min(double a, double b) { return java_min(a, b); }
+
+double Math::ulp(double d) {
+  auto e = getExponent(d);
+  if(e == 1024) return std::fabs(d);
+  return std::ldexp(1.0, (e == -1023 ? -1022 : e) - 52);
+}
+
+float Math::ulp(float f) {
+  auto e = getExponent(f);
+  if(e == 128) return std::fabs(f);
+  return std::ldexp(1.0f, (e == -127 ? -126 : e) - 23);
+}
+
+double Math::signum(double d) { return java_signum(d); }
+float Math::signum(float f) { return java_signum(f); }
+double Math::sinh(double x) { return std::sinh(x); }
+double Math::cosh(double x) { return std::cosh(x); }
+double Math::tanh(double x) { return std::tanh(x); }
+double Math::hypot(double x, double y) { return std::hypot(x, y); }
+double Math::expm1(double x) { return std::expm1(x); }
+double Math::log1p(double x) { return std::log1p(x); }
+double Math::copySign(double magnitude, double sign) { return std::copysign(magnitude, sign); }
+float Math::copySign(float magnitude, float sign) { return std::copysign(magnitude, sign); }
+
+int32_t Math::getExponent(float f) {
+  uint32_t bits;
+  std::memcpy(&bits, &f, sizeof(bits));
+  return int32_t((bits >> 23) & 0xff) - 127;
+}
+
+int32_t Math::getExponent(double d) {
+  uint64_t bits;
+  std::memcpy(&bits, &d, sizeof(bits));
+  return int32_t((bits >> 52) & 0x7ff) - 1023;
+}
+
+double Math::nextAfter(double start, double direction) {
+  return std::nextafter(start, direction);
+}
+
+float Math::nextAfter(float start, double direction) {
+  // Comparing as doubles - direction may not survive conversion to float
+  if(start > direction) return std::nextafter(start, -std::numeric_limits<float>::infinity());
+  if(start < direction) return std::nextafter(start, std::numeric_limits<float>::infinity());
+  if(start == direction) return float(direction);
+  return start + float(direction);
+}
+
+double Math::nextUp(double d) { return std::nextafter(d, std::numeric_limits<double>::infinity()); }
+float Math::nextUp(float f) { return std::nextafter(f, std::numeric_limits<float>::infinity()); }
+double Math::scalb(double d, int32_t scaleFactor) { return std::scalbn(d, scaleFactor); }
+float Math::scalb(float f, int32_t scaleFactor) { return std::scalbn(f, scaleFactor); }
+
+// Java 8
+
+int32_t Math::addExact(int32_t x, int32_t y) { return add_exact<int32_t, uint32_t>(x, y); }
+int64_t Math::addExact(int64_t x, int64_t y) { return add_exact<int64_t, uint64_t>(x, y); }
+int32_t Math::subtractExact(int32_t x, int32_t y) { return subtract_exact<int32_t, uint32_t>(x, y); }
+int64_t Math::subtractExact(int64_t x, int64_t y) { return subtract_exact<int64_t, uint64_t>(x, y); }
+
+int32_t Math::multiplyExact(int32_t x, int32_t y) {
+  int64_t r = int64_t(x) * int64_t(y);
+  return int32_t(r) != r ? overflow<int32_t>() : int32_t(r);
+}
+
+int64_t Math::multiplyExact(int64_t x, int64_t y) {
+  int64_t r = int64_t(uint64_t(x) * uint64_t(y));
+  uint64_t ax = x < 0 ? -uint64_t(x) : uint64_t(x);
+  uint64_t ay = y < 0 ? -uint64_t(y) : uint64_t(y);
+
+  // Factors below 2^31 can't overflow, else divide back - MIN_VALUE * -1
+  // first, since that division overflows too
+  if((ax | ay) >> 31 != 0
+    && ((x == std::numeric_limits<int64_t>::min() && y == -1) || (y != 0 && r / y != x))) {
+    return overflow<int64_t>();
+  }
+
+  return r;
+}
+
+int32_t Math::incrementExact(int32_t a) { return addExact(a, int32_t(1)); }
+int64_t Math::incrementExact(int64_t a) { return addExact(a, int64_t(1)); }
+int32_t Math::decrementExact(int32_t a) { return subtractExact(a, int32_t(1)); }
+int64_t Math::decrementExact(int64_t a) { return subtractExact(a, int64_t(1)); }
+int32_t Math::negateExact(int32_t a) { return subtractExact(int32_t(0), a); }
+int64_t Math::negateExact(int64_t a) { return subtractExact(int64_t(0), a); }
+
+int32_t Math::toIntExact(int64_t value) {
+  return int32_t(value) != value ? overflow<int32_t>() : int32_t(value);
+}
+
+int32_t Math::floorDiv(int32_t x, int32_t y) { return floor_div(x, y); }
+int64_t Math::floorDiv(int64_t x, int64_t y) { return floor_div(x, y); }
+int32_t Math::floorMod(int32_t x, int32_t y) { return floor_mod(x, y); }
+int64_t Math::floorMod(int64_t x, int64_t y) { return floor_mod(x, y); }
+
+double Math::nextDown(double d) { return std::nextafter(d, -std::numeric_limits<double>::infinity()); }
+float Math::nextDown(float f) { return std::nextafter(f, -std::numeric_limits<float>::infinity()); }
+
+// Package private, for scalb in the Java version
+double Math::powerOfTwoD(int32_t n) { return std::ldexp(1.0, n); }
+float Math::powerOfTwoF(int32_t n) { return std::ldexp(1.0f, n); }
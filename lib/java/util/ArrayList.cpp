@@ -0,0 +1,849 @@
+// Hand written replacement for java.util.ArrayList (see Replacements.java)
+//
+// The translated class goes through npc() and a checked array access for
+// every element and System.arraycopy for every shift. Here the list keeps its
+// own bounds, so elements are read and moved straight in the backing Object[].
+// Exceptions, including the ConcurrentModificationException checks, are those
+// of the OpenJDK 8 class, which this was written against. The nested classes
+// are part of the replacement - except the anonymous SubList iterator, which
+// is left to AbstractList's, over the checked SubList accessors.
+
+#include <java/util/ArrayList.hpp>
+#include <java/util/ArrayList_ArrayListSpliterator.hpp>
+#include <java/util/ArrayList_Itr.hpp>
+#include <java/util/ArrayList_ListItr.hpp>
+#include <java/util/ArrayList_SubList.hpp>
+
+#include <java/lang/ArrayIndexOutOfBoundsException.hpp>
+#include <java/lang/Class.hpp>
+#include <java/lang/IllegalArgumentException.hpp>
+#include <java/lang/IllegalStateException.hpp>
+#include <java/lang/IndexOutOfBoundsException.hpp>
+#include <java/lang/NullPointerException.hpp>
+#include <java/lang/OutOfMemoryError.hpp>
+#include <java/lang/String.hpp>
+#include <java/lang/StringBuilder.hpp>
+#include <java/lang/System.hpp>
+#include <java/util/AbstractList.hpp>
+#include <java/util/Arrays.hpp>
+#include <java/util/Collection.hpp>
+#include <java/util/ConcurrentModificationException.hpp>
+#include <java/util/NoSuchElementException.hpp>
+#include <java/util/Spliterator.hpp>
+#include <java/util/function/Consumer.hpp>
+#include <java/util/function/Predicate.hpp>
+#include <java/util/function/UnaryOperator.hpp>
+
+#include <ObjectArray.hpp>
+#include <finally.hpp>
+
+#include <climits>
+#include <cstring>
+#include <vector>
+
+namespace java { namespace lang { String* operator "" _j(const char16_t* p, size_t n); } }
+using java::lang::operator "" _j;
+
+using java::lang::ArrayIndexOutOfBoundsException;
+using java::lang::IllegalArgumentException;
+using java::lang::IllegalStateException;
+using java::lang::IndexOutOfBoundsException;
+using java::lang::NullPointerException;
+using java::lang::Object;
+using java::lang::ObjectArray;
+using java::lang::String;
+using java::lang::StringBuilder;
+using java::util::ArrayList;
+using java::util::ArrayList_ArrayListSpliterator;
+using java::util::ArrayList_Itr;
+using java::util::ArrayList_ListItr;
+using java::util::ArrayList_SubList;
+using java::util::ConcurrentModificationException;
+using java::util::NoSuchElementException;
+
+namespace
+{
+  const int32_t DEFAULT_CAPACITY = 10;
+  const int32_t MAX_ARRAY_SIZE = INT_MAX - 8;
+
+  // The private EMPTY_ELEMENTDATA and DEFAULTCAPACITY_EMPTY_ELEMENTDATA - the
+  // stub declares them but has no initializer to run
+  ObjectArray *empty_elementdata() {
+    static auto empty = new ObjectArray();
+    return empty;
+  }
+
+  ObjectArray *defaultcapacity_empty_elementdata() {
+    static auto empty = new ObjectArray();
+    return empty;
+  }
+
+  // Java int arithmetic, which wraps - the capacity checks rely on it
+  int32_t jadd(int32_t a, int32_t b) { return int32_t(uint32_t(a) + uint32_t(b)); }
+  int32_t jsub(int32_t a, int32_t b) { return int32_t(uint32_t(a) - uint32_t(b)); }
+
+  ObjectArray *copy_of(ObjectArray *a, int32_t n) {
+    auto ret = new ObjectArray(n);
+    auto m = n < a->length ? n : a->length;
+    if(m > 0) memcpy(ret->p, a->p, m * sizeof(Object*));
+    return ret;
+  }
+
+  void shift(ObjectArray *a, int32_t from, int32_t to, int32_t n) {
+    if(n > 0) memmove(a->p + to, a->p + from, n * sizeof(Object*));
+  }
+
+  void clear_range(ObjectArray *a, int32_t from, int32_t to) {
+    for(auto i = from; i < to; ++i) a->p[i] = nullptr;
+  }
+
+  // grow and hugeCapacity
+  ObjectArray *grow(ObjectArray *a, int32_t minCapacity) {
+    auto newCapacity = jadd(a->length, a->length >> 1);
+    if(jsub(newCapacity, minCapacity) < 0) newCapacity = minCapacity;
+    if(jsub(newCapacity, MAX_ARRAY_SIZE) > 0) {
+      if(minCapacity < 0) throw new ::java::lang::OutOfMemoryError();
+      newCapacity = minCapacity > MAX_ARRAY_SIZE ? INT_MAX : MAX_ARRAY_SIZE;
+    }
+
+    return copy_of(a, newCapacity);
+  }
+
+  // ensureExplicitCapacity
+  void ensure_capacity(ObjectArray *&a, int32_t &modCount, int32_t minCapacity) {
+    modCount++;
+    if(jsub(minCapacity, a->length) > 0) a = grow(a, minCapacity);
+  }
+
+  // ensureCapacityInternal
+  void ensure_capacity_internal(ObjectArray *&a, int32_t &modCount, int32_t minCapacity) {
+    if(a == defaultcapacity_empty_elementdata() && minCapacity < DEFAULT_CAPACITY) {
+      minCapacity = DEFAULT_CAPACITY;
+    }
+
+    ensure_capacity(a, modCount, minCapacity);
+  }
+
+  // outOfBoundsMsg
+  String *out_of_bounds_msg(int32_t index, int32_t size) {
+    return StringBuilder().append(u"Index: "_j)->append(index)
+      ->append(u", Size: "_j)->append(size)->toString();
+  }
+
+  // rangeCheck - a negative index fails on the array access in Java
+  void range_check(int32_t index, int32_t size) {
+    if(index >= size) throw new IndexOutOfBoundsException(out_of_bounds_msg(index, size));
+    if(index < 0) throw new ArrayIndexOutOfBoundsException(index);
+  }
+
+  // rangeCheckForAdd
+  void range_check_for_add(int32_t index, int32_t size) {
+    if(index > size || index < 0) throw new IndexOutOfBoundsException(out_of_bounds_msg(index, size));
+  }
+
+  // A fresh Object[] with the contents of a, which Collection.toArray may
+  // have given as a subtype array or kept a reference to
+  ObjectArray *object_array(ObjectArray *a) {
+    return new ObjectArray(a->p, a->length);
+  }
+
+  template<typename T>
+  T *require_non_null(T *t) {
+    if(!t) throw new NullPointerException();
+    return t;
+  }
+}
+
+// ArrayList
+//
+// elementData is never null - the empty lists share the two empty arrays,
+// which differ only in how far the first add grows them.
+
+void ArrayList::ctor(int32_t initialCapacity) {
+  super::ctor();
+  if(initialCapacity > 0) {
+    elementData_ = new ObjectArray(initialCapacity);
+  } else if(initialCapacity == 0) {
+    elementData_ = empty_elementdata();
+  } else {
+    throw new IllegalArgumentException(StringBuilder().append(u"Illegal Capacity: "_j)
+      ->append(initialCapacity)->toString());
+  }
+}
+
+void ArrayList::ctor() {
+  super::ctor();
+  elementData_ = defaultcapacity_empty_elementdata();
+}
+
+void ArrayList::ctor(::java::util::Collection *c) {
+  super::ctor();
+  auto a = require_non_null(c)->toArray();
+  if((size_ = a->length) != 0) {
+    elementData_ = c->getClass() == class_() ? a : object_array(a);
+  } else {
+    elementData_ = empty_elementdata();
+  }
+}
+
+void ArrayList::trimToSize() {
+  modCount++;
+  if(size_ < elementData_->length) {
+    elementData_ = size_ == 0 ? empty_elementdata() : copy_of(elementData_, size_);
+  }
+}
+
+void ArrayList::ensureCapacity(int32_t minCapacity) {
+  auto minExpand = elementData_ != defaultcapacity_empty_elementdata() ? 0 : DEFAULT_CAPACITY;
+  if(minCapacity > minExpand) {
+    ensure_capacity(elementData_, modCount, minCapacity);
+  }
+}
+
+int32_t ArrayList::size() {
+  return size_;
+}
+
+bool ArrayList::isEmpty() {
+  return size_ == 0;
+}
+
+bool ArrayList::contains(Object *o) {
+  return indexOf(o) >= 0;
+}
+
+int32_t ArrayList::indexOf(Object *o) {
+  auto p = elementData_->p;
+  if(o == nullptr) {
+    for(int32_t i = 0; i < size_; ++i) {
+      if(p[i] == nullptr) return i;
+    }
+  } else {
+    for(int32_t i = 0; i < size_; ++i) {
+      if(o->equals(p[i])) return i;
+    }
+  }
+
+  return -1;
+}
+
+int32_t ArrayList::lastIndexOf(Object *o) {
+  auto p = elementData_->p;
+  if(o == nullptr) {
+    for(auto i = size_ - 1; i >= 0; --i) {
+      if(p[i] == nullptr) return i;
+    }
+  } else {
+    for(auto i = size_ - 1; i >= 0; --i) {
+      if(o->equals(p[i])) return i;
+    }
+  }
+
+  return -1;
+}
+
+Object *ArrayList::clone() {
+  // Cloneable, so Object.clone cannot throw
+  auto v = dynamic_cast<ArrayList*>(super::clone());
+  v->elementData_ = copy_of(elementData_, size_);
+  v->modCount = 0;
+  return v;
+}
+
+ObjectArray *ArrayList::toArray() {
+  return copy_of(elementData_, size_);
+}
+
+ObjectArray *ArrayList::toArray(ObjectArray *a) {
+  if(require_non_null(a)->length < size_) {
+    return ::java::util::Arrays::copyOf(elementData_, size_, a->getClass());
+  }
+
+  // a may be an array of a subtype, which needs the store checks
+  ::java::lang::System::arraycopy(elementData_, 0, a, 0, size_);
+  if(a->length > size_) {
+    a->p[size_] = nullptr;
+  }
+
+  return a;
+}
+
+Object *ArrayList::elementData(int32_t index) {
+  return elementData_->p[index];
+}
+
+Object *ArrayList::get(int32_t index) {
+  range_check(index, size_);
+  return elementData_->p[index];
+}
+
+Object *ArrayList::set(int32_t index, Object *element) {
+  range_check(index, size_);
+  auto oldValue = elementData_->p[index];
+  elementData_->p[index] = element;
+  return oldValue;
+}
+
+bool ArrayList::add(Object *e) {
+  ensure_capacity_internal(elementData_, modCount, jadd(size_, 1));
+  elementData_->p[size_++] = e;
+  return true;
+}
+
+void ArrayList::add(int32_t index, Object *element) {
+  range_check_for_add(index, size_);
+  ensure_capacity_internal(elementData_, modCount, jadd(size_, 1));
+  shift(elementData_, index, index + 1, size_ - index);
+  elementData_->p[index] = element;
+  size_++;
+}
+
+Object *ArrayList::remove(int32_t index) {
+  range_check(index, size_);
+  modCount++;
+  auto oldValue = elementData_->p[index];
+  shift(elementData_, index + 1, index, size_ - index - 1);
+  elementData_->p[--size_] = nullptr;
+  return oldValue;
+}
+
+bool ArrayList::remove(Object *o) {
+  auto index = ArrayList::indexOf(o);
+  if(index < 0) return false;
+
+  // fastRemove
+  modCount++;
+  shift(elementData_, index + 1, index, size_ - index - 1);
+  elementData_->p[--size_] = nullptr;
+  return true;
+}
+
+void ArrayList::clear() {
+  modCount++;
+  clear_range(elementData_, 0, size_);
+  size_ = 0;
+}
+
+bool ArrayList::addAll(::java::util::Collection *c) {
+  auto a = require_non_null(c)->toArray();
+  auto numNew = a->length;
+  ensure_capacity_internal(elementData_, modCount, jadd(size_, numNew));
+  if(numNew > 0) memcpy(elementData_->p + size_, a->p, numNew * sizeof(Object*));
+  size_ += numNew;
+  return numNew != 0;
+}
+
+bool ArrayList::addAll(int32_t index, ::java::util::Collection *c) {
+  range_check_for_add(index, size_);
+  auto a = require_non_null(c)->toArray();
+  auto numNew = a->length;
+  ensure_capacity_internal(elementData_, modCount, jadd(size_, numNew));
+  shift(elementData_, index, index + numNew, size_ - index);
+  if(numNew > 0) memcpy(elementData_->p + index, a->p, numNew * sizeof(Object*));
+  size_ += numNew;
+  return numNew != 0;
+}
+
+void ArrayList::removeRange(int32_t fromIndex, int32_t toIndex) {
+  modCount++;
+  // Where System.arraycopy would fail
+  if(fromIndex < 0 || toIndex > size_ || fromIndex > toIndex) {
+    throw new ArrayIndexOutOfBoundsException();
+  }
+
+  shift(elementData_, toIndex, fromIndex, size_ - toIndex);
+  auto newSize = size_ - (toIndex - fromIndex);
+  clear_range(elementData_, newSize, size_);
+  size_ = newSize;
+}
+
+namespace
+{
+  // batchRemove - if c.contains throws, what was not yet looked at is kept
+  bool batch_remove(ObjectArray *a, int32_t &size, int32_t &modCount,
+                    ::java::util::Collection *c, bool complement) {
+    int32_t r = 0, w = 0;
+    bool modified = false;
+    {
+      auto done = finally([&] {
+        if(r != size) {
+          shift(a, r, w, size - r);
+          w += size - r;
+        }
+
+        if(w != size) {
+          clear_range(a, w, size);
+          modCount += size - w;
+          size = w;
+          modified = true;
+        }
+      });
+
+      for(; r < size; r++) {
+        if(c->contains(a->p[r]) == complement) a->p[w++] = a->p[r];
+      }
+    }
+
+    return modified;
+  }
+}
+
+bool ArrayList::removeAll(::java::util::Collection *c) {
+  return batch_remove(elementData_, size_, modCount, require_non_null(c), false);
+}
+
+bool ArrayList::retainAll(::java::util::Collection *c) {
+  return batch_remove(elementData_, size_, modCount, require_non_null(c), true);
+}
+
+::java::util::ListIterator *ArrayList::listIterator(int32_t index) {
+  if(index < 0 || index > size_) {
+    throw new IndexOutOfBoundsException(StringBuilder().append(u"Index: "_j)
+      ->append(index)->toString());
+  }
+
+  return new ArrayList_ListItr(this, index);
+}
+
+::java::util::ListIterator *ArrayList::listIterator() {
+  return new ArrayList_ListItr(this, 0);
+}
+
+::java::util::Iterator *ArrayList::iterator() {
+  return new ArrayList_Itr(this);
+}
+
+::java::util::List *ArrayList::subList(int32_t fromIndex, int32_t toIndex) {
+  subListRangeCheck(fromIndex, toIndex, size_);
+  return new ArrayList_SubList(this, this, 0, fromIndex, toIndex);
+}
+
+void ArrayList::subListRangeCheck(int32_t fromIndex, int32_t toIndex, int32_t size) {
+  if(fromIndex < 0) {
+    throw new IndexOutOfBoundsException(StringBuilder().append(u"fromIndex = "_j)
+      ->append(fromIndex)->toString());
+  }
+
+  if(toIndex > size) {
+    throw new IndexOutOfBoundsException(StringBuilder().append(u"toIndex = "_j)
+      ->append(toIndex)->toString());
+  }
+
+  if(fromIndex > toIndex) {
+    throw new IllegalArgumentException(StringBuilder().append(u"fromIndex("_j)
+      ->append(fromIndex)->append(u") > toIndex("_j)->append(toIndex)
+      ->append(u")"_j)->toString());
+  }
+}
+
+void ArrayList::forEach(::java::util::function::Consumer *action) {
+  require_non_null(action);
+  auto expectedModCount = modCount;
+  auto p = elementData_->p;
+  auto size = size_;
+  for(int32_t i = 0; modCount == expectedModCount && i < size; i++) {
+    action->accept(p[i]);
+  }
+
+  if(modCount != expectedModCount) {
+    throw new ConcurrentModificationException();
+  }
+}
+
+::java::util::Spliterator *ArrayList::spliterator() {
+  return new ArrayList_ArrayListSpliterator(this, 0, -1, 0);
+}
+
+bool ArrayList::removeIf(::java::util::function::Predicate *filter) {
+  require_non_null(filter);
+  // The filter sees every element before any is removed, so if it throws the
+  // list is left as it was
+  std::vector<bool> removeSet(size_);
+  int32_t removeCount = 0;
+  auto expectedModCount = modCount;
+  auto size = size_;
+  for(int32_t i = 0; modCount == expectedModCount && i < size; i++) {
+    if(filter->test(elementData_->p[i])) {
+      removeSet[i] = true;
+      removeCount++;
+    }
+  }
+
+  if(modCount != expectedModCount) {
+    throw new ConcurrentModificationException();
+  }
+
+  if(removeCount == 0) return false;
+
+  auto p = elementData_->p;
+  int32_t j = 0;
+  for(int32_t i = 0; i < size; i++) {
+    if(!removeSet[i]) p[j++] = p[i];
+  }
+
+  clear_range(elementData_, j, size);
+  size_ = j;
+  if(modCount != expectedModCount) {
+    throw new ConcurrentModificationException();
+  }
+
+  modCount++;
+  return true;
+}
+
+void ArrayList::replaceAll(::java::util::function::UnaryOperator *operator_) {
+  require_non_null(operator_);
+  auto expectedModCount = modCount;
+  auto size = size_;
+  for(int32_t i = 0; modCount == expectedModCount && i < size; i++) {
+    elementData_->p[i] = operator_->apply(elementData_->p[i]);
+  }
+
+  if(modCount != expectedModCount) {
+    throw new ConcurrentModificationException();
+  }
+
+  modCount++;
+}
+
+void ArrayList::sort(::java::util::Comparator *c) {
+  auto expectedModCount = modCount;
+  ::java::util::Arrays::sort(elementData_, 0, size_, c);
+  if(modCount != expectedModCount) {
+    throw new ConcurrentModificationException();
+  }
+
+  modCount++;
+}
+
+// ArrayList.Itr
+//
+// size is private to ArrayList, so the nested classes read it through a
+// non-virtual call of size() instead.
+
+void ArrayList_Itr::ctor() {
+  super::ctor();
+  // The field initializers
+  lastRet = -1;
+  expectedModCount = ArrayList_this->modCount;
+}
+
+bool ArrayList_Itr::hasNext() {
+  return cursor != ArrayList_this->ArrayList::size();
+}
+
+Object *ArrayList_Itr::next() {
+  checkForComodification();
+  auto i = cursor;
+  if(i >= ArrayList_this->ArrayList::size()) {
+    throw new NoSuchElementException();
+  }
+
+  auto elementData = ArrayList_this->elementData_;
+  if(i >= elementData->length) {
+    throw new ConcurrentModificationException();
+  }
+
+  cursor = i + 1;
+  return elementData->p[lastRet = i];
+}
+
+void ArrayList_Itr::remove() {
+  if(lastRet < 0) {
+    throw new IllegalStateException();
+  }
+
+  checkForComodification();
+  try {
+    ArrayList_this->remove(lastRet);
+    cursor = lastRet;
+    lastRet = -1;
+    expectedModCount = ArrayList_this->modCount;
+  } catch(IndexOutOfBoundsException *) {
+    throw new ConcurrentModificationException();
+  }
+}
+
+void ArrayList_Itr::forEachRemaining(::java::util::function::Consumer *consumer) {
+  require_non_null(consumer);
+  auto size = ArrayList_this->ArrayList::size();
+  auto i = cursor;
+  if(i >= size) return;
+
+  auto elementData = ArrayList_this->elementData_;
+  if(i >= elementData->length) {
+    throw new ConcurrentModificationException();
+  }
+
+  while(i != size && ArrayList_this->modCount == expectedModCount) {
+    consumer->accept(elementData->p[i++]);
+  }
+
+  cursor = i;
+  lastRet = i - 1;
+  checkForComodification();
+}
+
+void ArrayList_Itr::checkForComodification() {
+  if(ArrayList_this->modCount != expectedModCount) {
+    throw new ConcurrentModificationException();
+  }
+}
+
+// ArrayList.ListItr
+
+void ArrayList_ListItr::ctor(int32_t index) {
+  super::ctor();
+  cursor = index;
+}
+
+bool ArrayList_ListItr::hasPrevious() {
+  return cursor != 0;
+}
+
+int32_t ArrayList_ListItr::nextIndex() {
+  return cursor;
+}
+
+int32_t ArrayList_ListItr::previousIndex() {
+  return cursor - 1;
+}
+
+Object *ArrayList_ListItr::previous() {
+  checkForComodification();
+  auto i = cursor - 1;
+  if(i < 0) {
+    throw new NoSuchElementException();
+  }
+
+  auto elementData = ArrayList_this->elementData_;
+  if(i >= elementData->length) {
+    throw new ConcurrentModificationException();
+  }
+
+  cursor = i;
+  return elementData->p[lastRet = i];
+}
+
+void ArrayList_ListItr::set(Object *e) {
+  if(lastRet < 0) {
+    throw new IllegalStateException();
+  }
+
+  checkForComodification();
+  try {
+    ArrayList_this->set(lastRet, e);
+  } catch(IndexOutOfBoundsException *) {
+    throw new ConcurrentModificationException();
+  }
+}
+
+void ArrayList_ListItr::add(Object *e) {
+  checkForComodification();
+  try {
+    auto i = cursor;
+    ArrayList_this->add(i, e);
+    cursor = i + 1;
+    lastRet = -1;
+    expectedModCount = ArrayList_this->modCount;
+  } catch(IndexOutOfBoundsException *) {
+    throw new ConcurrentModificationException();
+  }
+}
+
+// ArrayList.SubList
+//
+// rangeCheck, rangeCheckForAdd and checkForComodification are private, so
+// not declared - the checks are spelled out in each method instead.
+
+namespace
+{
+  void check_for_comodification(int32_t modCount, int32_t expectedModCount) {
+    if(modCount != expectedModCount) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
+  void sub_range_check(int32_t index, int32_t size) {
+    if(index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(out_of_bounds_msg(index, size));
+    }
+  }
+}
+
+void ArrayList_SubList::ctor(::java::util::AbstractList *parent, int32_t offset,
+                             int32_t fromIndex, int32_t toIndex) {
+  super::ctor();
+  this->parent = parent;
+  this->parentOffset = fromIndex;
+  this->offset = offset + fromIndex;
+  this->size_ = toIndex - fromIndex;
+  this->modCount = ArrayList_this->modCount;
+}
+
+Object *ArrayList_SubList::set(int32_t index, Object *e) {
+  sub_range_check(index, size_);
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  auto p = ArrayList_this->elementData_->p;
+  auto oldValue = p[offset + index];
+  p[offset + index] = e;
+  return oldValue;
+}
+
+Object *ArrayList_SubList::get(int32_t index) {
+  sub_range_check(index, size_);
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  return ArrayList_this->elementData_->p[offset + index];
+}
+
+int32_t ArrayList_SubList::size() {
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  return size_;
+}
+
+void ArrayList_SubList::add(int32_t index, Object *e) {
+  range_check_for_add(index, size_);
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  parent->add(parentOffset + index, e);
+  modCount = parent->modCount;
+  size_++;
+}
+
+Object *ArrayList_SubList::remove(int32_t index) {
+  sub_range_check(index, size_);
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  auto result = parent->remove(parentOffset + index);
+  modCount = parent->modCount;
+  size_--;
+  return result;
+}
+
+void ArrayList_SubList::removeRange(int32_t fromIndex, int32_t toIndex) {
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  parent->removeRange(parentOffset + fromIndex, parentOffset + toIndex);
+  modCount = parent->modCount;
+  size_ -= toIndex - fromIndex;
+}
+
+bool ArrayList_SubList::addAll(::java::util::Collection *c) {
+  return addAll(size_, c);
+}
+
+bool ArrayList_SubList::addAll(int32_t index, ::java::util::Collection *c) {
+  range_check_for_add(index, size_);
+  auto cSize = require_non_null(c)->size();
+  if(cSize == 0) return false;
+
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  parent->addAll(parentOffset + index, c);
+  modCount = parent->modCount;
+  size_ += cSize;
+  return true;
+}
+
+::java::util::Iterator *ArrayList_SubList::iterator() {
+  return super::listIterator();
+}
+
+::java::util::ListIterator *ArrayList_SubList::listIterator(int32_t index) {
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  range_check_for_add(index, size_);
+  // AbstractList's iterator goes through get, set, add and remove above, so
+  // it sees the same bounds and modifications the anonymous one would
+  return super::listIterator(index);
+}
+
+::java::util::List *ArrayList_SubList::subList(int32_t fromIndex, int32_t toIndex) {
+  ArrayList::subListRangeCheck(fromIndex, toIndex, size_);
+  return new ArrayList_SubList(ArrayList_this, this, offset, fromIndex, toIndex);
+}
+
+::java::util::Spliterator *ArrayList_SubList::spliterator() {
+  check_for_comodification(ArrayList_this->modCount, modCount);
+  return new ArrayList_ArrayListSpliterator(ArrayList_this, offset, offset + size_, modCount);
+}
+
+// ArrayList.ArrayListSpliterator
+
+namespace
+{
+  // getFence, which is private and so not declared
+  int32_t get_fence(ArrayList *list, int32_t &fence, int32_t &expectedModCount) {
+    if(fence < 0) {
+      if(list == nullptr) {
+        fence = 0;
+      } else {
+        expectedModCount = list->modCount;
+        fence = list->ArrayList::size();
+      }
+    }
+
+    return fence;
+  }
+}
+
+void ArrayList_ArrayListSpliterator::ctor(ArrayList *list, int32_t origin,
+                                          int32_t fence, int32_t expectedModCount) {
+  super::ctor();
+  this->list = list;
+  this->index = origin;
+  this->fence = fence;
+  this->expectedModCount = expectedModCount;
+}
+
+ArrayList_ArrayListSpliterator *ArrayList_ArrayListSpliterator::trySplit() {
+  auto hi = get_fence(list, fence, expectedModCount), lo = index;
+  auto mid = int32_t((uint32_t(lo) + uint32_t(hi)) >> 1);
+  return lo >= mid ? nullptr
+    : new ArrayList_ArrayListSpliterator(list, lo, index = mid, expectedModCount);
+}
+
+bool ArrayList_ArrayListSpliterator::tryAdvance(::java::util::function::Consumer *action) {
+  require_non_null(action);
+  auto hi = get_fence(list, fence, expectedModCount), i = index;
+  if(i < hi) {
+    index = i + 1;
+    action->accept(list->elementData_->p[i]);
+    if(list->modCount != expectedModCount) {
+      throw new ConcurrentModificationException();
+    }
+
+    return true;
+  }
+
+  return false;
+}
+
+void ArrayList_ArrayListSpliterator::forEachRemaining(::java::util::function::Consumer *action) {
+  require_non_null(action);
+  ObjectArray *a;
+  if(list != nullptr && (a = list->elementData_) != nullptr) {
+    int32_t hi, mc;
+    if((hi = fence) < 0) {
+      mc = list->modCount;
+      hi = list->ArrayList::size();
+    } else {
+      mc = expectedModCount;
+    }
+
+    auto i = index;
+    if(i >= 0 && (index = hi) <= a->length) {
+      for(; i < hi; ++i) {
+        action->accept(a->p[i]);
+      }
+
+      if(list->modCount == mc) return;
+    }
+  }
+
+  throw new ConcurrentModificationException();
+}
+
+int64_t ArrayList_ArrayListSpliterator::estimateSize() {
+  return int64_t(get_fence(list, fence, expectedModCount) - index);
+}
+
+int32_t ArrayList_ArrayListSpliterator::characteristics() {
+  return ::java::util::Spliterator::ORDERED | ::java::util::Spliterator::SIZED
+    | ::java::util::Spliterator::SUBSIZED;
+}
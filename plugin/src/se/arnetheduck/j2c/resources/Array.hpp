@@ -2,12 +2,16 @@
 
 #include <initializer_list>
 #include <stdint.h>
+#include <type_traits>
 
 #include <java/lang/Object.hpp>
 #include <java/lang/Cloneable.hpp>
 #include <java/io/Serializable.hpp>
 
-extern java::lang::Class *class_(const char16_t *c, int n);
+#include <class_info.hpp>
+
+extern void *alloc_array_data(size_t size, bool scan);
+extern void free_array_data(void *p);
 
 template<typename T>
 class Array
@@ -17,6 +21,7 @@ class Array
 {
 public:
     static ::java::lang::Class *class_();
+    static const ::class_info *info_();
 
     typedef T value_type;
     typedef value_type *pointer_type;
@@ -26,20 +31,27 @@ public:
 
     typedef int size_type;
 
+    static pointer_type alloc_data(size_type n)
+    {
+        // Element storage only needs scanning by a collector if it holds references
+        return static_cast<pointer_type>(::alloc_array_data(n * sizeof(value_type),
+            !std::is_arithmetic<value_type>::value));
+    }
+
     Array() : length(0), p(nullptr) { }
-    Array(int n) : length(n), p(n == 0 ? nullptr : new value_type[n])
+    Array(int n) : length(n), p(n == 0 ? nullptr : alloc_data(n))
     {
     	for(auto x = p; x != p + length; ++x) *x = value_type();
     }
 
-    Array(const value_type *values, int n) : length(n), p(new value_type[n])
+    Array(const value_type *values, int n) : length(n), p(alloc_data(n))
     {
         auto x = p;
         for(auto v = values; v != values + n; ++v) *x++ = *v;
     }
 
     template<typename S>
-    Array(std::initializer_list<S> l) : length(l.size()), p(new value_type[l.size()])
+    Array(std::initializer_list<S> l) : length(l.size()), p(alloc_data(l.size()))
     {
         auto x = p;
         for(auto v : l) *x++ = v;
@@ -56,10 +68,10 @@ public:
     {
         if(&rhs != this) {
             if(length != rhs.length) {
-                delete p;
+                ::free_array_data(p);
                 const_cast<pointer_type&>(p) = 0;
                 const_cast<size_type&>(length) = rhs.length;
-                const_cast<pointer_type&>(p) = new value_type[length];
+                const_cast<pointer_type&>(p) = alloc_data(length);
             }
 
             auto x = p;
@@ -72,7 +84,7 @@ public:
     Array &operator=(Array &&rhs)
     {
         if(&rhs != this) {
-            delete p;
+            ::free_array_data(p);
             const_cast<size_type&>(length) = rhs.length;
             const_cast<pointer_type&>(p) = rhs.p;
             const_cast<pointer_type&>(rhs.p) = 0;
@@ -81,7 +93,7 @@ public:
     	return *this;
     }
 
-    virtual ~Array() { delete p; }
+    virtual ~Array() { ::free_array_data(p); }
 
     Array* clone() override { return new Array(*this); }
 
@@ -102,6 +114,8 @@ public:
     const size_type length;
     const pointer_type p;
 
+    const ::class_info *dynamic_info_() override { return info_(); }
+
 private:
     ::java::lang::Class *getClass0() override { return class_(); }
 };
@@ -115,43 +129,76 @@ typedef Array<int64_t> int64_tArray;
 typedef Array<double> doubleArray;
 typedef Array<float> floatArray;
 
+template<>
+inline const ::class_info *boolArray::info_() {
+    return &::boolean_array_info_;
+}
 template<>
 inline java::lang::Class* boolArray::class_() {
-    static ::java::lang::Class* c = ::class_(u"boolean[]", 9);
-    return c;
+    return ::class_(info_());
+}
+template<>
+inline const ::class_info *char16_tArray::info_() {
+    return &::char_array_info_;
 }
 template<>
 inline java::lang::Class* char16_tArray::class_() {
-    static ::java::lang::Class* c = ::class_(u"char[]", 9);
-    return c;
+    return ::class_(info_());
+}
+template<>
+inline const ::class_info *int8_tArray::info_() {
+    return &::byte_array_info_;
 }
 template<>
 inline java::lang::Class* int8_tArray::class_() {
-    static ::java::lang::Class* c = ::class_(u"byte[]", 9);
-    return c;
+    return ::class_(info_());
+}
+template<>
+inline const ::class_info *int16_tArray::info_() {
+    return &::short_array_info_;
 }
 template<>
 inline java::lang::Class* int16_tArray::class_() {
-    static ::java::lang::Class* c = ::class_(u"short[]", 9);
-    return c;
+    return ::class_(info_());
+}
+template<>
+inline const ::class_info *int32_tArray::info_() {
+    return &::int_array_info_;
 }
 template<>
 inline java::lang::Class* int32_tArray::class_() {
-    static ::java::lang::Class* c = ::class_(u"int[]", 9);
-    return c;
+    return ::class_(info_());
+}
+template<>
+inline const ::class_info *int64_tArray::info_() {
+    return &::long_array_info_;
 }
 template<>
 inline java::lang::Class* int64_tArray::class_() {
-    static ::java::lang::Class* c = ::class_(u"long[]", 9);
-    return c;
+    return ::class_(info_());
+}
+template<>
+inline const ::class_info *doubleArray::info_() {
+    return &::double_array_info_;
 }
 template<>
 inline java::lang::Class* doubleArray::class_() {
-    static ::java::lang::Class* c = ::class_(u"double[]", 9);
-    return c;
+    return ::class_(info_());
+}
+template<>
+inline const ::class_info *floatArray::info_() {
+    return &::float_array_info_;
 }
 template<>
 inline java::lang::Class* floatArray::class_() {
-    static ::java::lang::Class* c = ::class_(u"float[]", 9);
-    return c;
+    return ::class_(info_());
 }
+
+template<typename T>
+inline const ::class_info *info_of_(Array<T> *)
+{
+    return Array<T>::info_();
+}
+
+template<typename T>
+struct is_array_<Array<T> > { static const bool value = true; };
@@ -7,6 +7,8 @@
 #include <java/lang/Cloneable.hpp>
 #include <java/io/Serializable.hpp>
 
+#include <class_info.hpp>
+
 namespace java
 {
 	namespace lang
@@ -15,7 +17,8 @@ namespace java
 	}
 }
 
-extern java::lang::Class *class_(const char16_t *c, int n);
+extern void *alloc_array_data(size_t size, bool scan);
+extern void free_array_data(void *p);
 
 class java::lang::ObjectArray
     : public virtual ::java::lang::Object
@@ -23,9 +26,12 @@ class java::lang::ObjectArray
     , public virtual ::java::io::Serializable
 {
 public:
+    static const ::class_info *info_() {
+        return ::array_info_(&::java::lang::Object::class_info_);
+    }
+
     static ::java::lang::Class *class_() {
-        static ::java::lang::Class* c = ::class_(u"java.lang.Object[]", 31);
-        return c;
+        return ::class_(info_());
     }
 
     typedef ::java::lang::Object super;
@@ -38,20 +44,27 @@ public:
 
     typedef int size_type;
 
+    static pointer_type alloc_data(size_type n)
+    {
+        // Element storage only needs scanning by a collector if it holds references
+        return static_cast<pointer_type>(::alloc_array_data(n * sizeof(value_type),
+            !std::is_arithmetic<value_type>::value));
+    }
+
     ObjectArray() : length(0), p(nullptr) { }
-    ObjectArray(int n) : length(n), p(n == 0 ? nullptr : new value_type[n])
+    ObjectArray(int n) : length(n), p(n == 0 ? nullptr : alloc_data(n))
     {
     	for(auto x = p; x != p + length; ++x) *x = value_type();
     }
 
-    ObjectArray(const value_type *values, int n) : length(n), p(new value_type[n])
+    ObjectArray(const value_type *values, int n) : length(n), p(alloc_data(n))
     {
     	auto x = p;
     	for(auto v = values; v != values + n; ++v) *x++ = *v;
     }
 
     template<typename T>
-    ObjectArray(std::initializer_list<T> l) : length(l.size()), p(new value_type[l.size()])
+    ObjectArray(std::initializer_list<T> l) : length(l.size()), p(alloc_data(l.size()))
     {
     	auto x = p;
     	for(auto v : l) *x++ = v;
@@ -70,10 +83,10 @@ public:
     {
         if(&rhs != this) {
             if(length != rhs.length) {
-                delete p;
+                ::free_array_data(p);
                 const_cast<pointer_type&>(p) = 0;
                 const_cast<size_type&>(length) = rhs.length;
-                const_cast<pointer_type&>(p) = new value_type[length];
+                const_cast<pointer_type&>(p) = alloc_data(length);
             }
 
             auto x = p;
@@ -86,7 +99,7 @@ public:
     ObjectArray &operator=(ObjectArray &&rhs)
     {
         if(&rhs != this) {
-            delete p;
+            ::free_array_data(p);
             const_cast<size_type&>(length) = rhs.length;
             const_cast<pointer_type&>(p) = rhs.p;
             const_cast<pointer_type&>(rhs.p) = 0;
@@ -95,7 +108,7 @@ public:
         return *this;
     }
 
-    virtual ~ObjectArray() { delete p; }
+    virtual ~ObjectArray() { ::free_array_data(p); }
 
     ObjectArray* clone() override { return new ObjectArray(*this); }
 
@@ -116,12 +129,22 @@ public:
     const size_type length;
     const pointer_type p;
 
+    const ::class_info *dynamic_info_() override { return info_(); }
+
 private:
     ::java::lang::Class *getClass0() override { return class_(); }
 
      virtual void set0(size_type i, Object *x) { p[i] = x; }
 };
 
+inline const ::class_info *info_of_(java::lang::ObjectArray *)
+{
+    return java::lang::ObjectArray::info_();
+}
+
+template<>
+struct is_array_<java::lang::ObjectArray> { static const bool value = true; };
+
 template<typename ArrayType>
 ArrayType* __newMultiArray(int dim) {
 	return new ArrayType(dim);
@@ -8,9 +8,12 @@
 
 template<typename ComponentType, typename... Bases>
 struct SubArray : public virtual Bases... {
+    static const ::class_info *info_() {
+        return ::array_info_(info_of_(static_cast<ComponentType*>(nullptr)));
+    }
+
     static ::java::lang::Class *class_() {
-        static ::java::lang::Class* c = ::class_(u"TODO[]", 31);
-        return c;
+        return ::class_(info_());
     }
 
     typedef ComponentType* value_type;
@@ -80,6 +83,8 @@ struct SubArray : public virtual Bases... {
     iterator        begin() { return iterator(this->p); }
     iterator        end() { return iterator(this->p + this->length); }
 
+    const ::class_info *dynamic_info_() override { return info_(); }
+
 private:	
     ::java::lang::Class *getClass0() override { return class_(); }
 
@@ -92,3 +97,12 @@ private:
         this->p[i] = x;
     }
 };
+
+template<typename ComponentType, typename... Bases>
+inline const ::class_info *info_of_(SubArray<ComponentType, Bases...> *)
+{
+    return SubArray<ComponentType, Bases...>::info_();
+}
+
+template<typename ComponentType, typename... Bases>
+struct is_array_<SubArray<ComponentType, Bases...> > { static const bool value = true; };
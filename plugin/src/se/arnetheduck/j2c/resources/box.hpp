@@ -0,0 +1,25 @@
+#include <atomic>
+
+// Boxing conversion shares the boxes of -128..127 (0..127 for Character).
+// The cache is a static of an inline function, so all translation units see
+// the same one and boxing a small value always yields the same object.
+template<typename B>
+inline std::atomic<B*>* box_cache_()
+{
+    static std::atomic<B*> cache[256];
+    return cache;
+}
+
+template<typename B, typename T>
+inline B* box(T v)
+{
+    if(v < -128 || v > 127) return new B(v);
+
+    auto &slot = box_cache_<B>()[static_cast<int32_t>(v) + 128];
+    auto b = slot.load(std::memory_order_acquire);
+    if(!b) {
+        auto n = new B(v);
+        b = slot.compare_exchange_strong(b, n, std::memory_order_acq_rel) ? n : b;
+    }
+    return b;
+}
@@ -0,0 +1,185 @@
+#pragma once
+
+#include <atomic>
+#include <stddef.h>
+#include <stdint.h>
+
+namespace java
+{
+    namespace lang
+    {
+        class Class;
+        class Object;
+        class ObjectArray;
+        class String;
+    }
+}
+
+/** A field of a class configured for reflection (see Reflection.java) */
+struct field_info
+{
+    const char16_t *name;
+    const char16_t *type;                 // Class.getName() of the field type
+    int32_t modifiers;
+    // The field of o, boxed, and a store into it that unboxes v - o is ignored
+    // for statics, final fields can't be set
+    ::java::lang::Object *(*get)(::java::lang::Object *o);
+    void (*set)(::java::lang::Object *o, ::java::lang::Object *v);
+};
+
+/** A method or constructor of a class configured for reflection */
+struct method_info
+{
+    const char16_t *name;                 // null for constructors
+    const char16_t *return_type;
+    const char16_t *const *parameter_types; // null terminated
+    int32_t modifiers;
+    // Unboxes args and makes the call, boxing the result - null if abstract
+    ::java::lang::Object *(*invoke)(::java::lang::Object *o, ::java::lang::ObjectArray *args);
+};
+
+struct class_members
+{
+    const field_info *fields;
+    int32_t field_count;
+    const method_info *methods;
+    int32_t method_count;
+    const method_info *constructors;
+    int32_t constructor_count;
+};
+
+/**
+ * What the runtime knows about a type. The translator writes one for every
+ * class and interface, constant-initialized so that it costs nothing at
+ * startup - primitives, primitive arrays and arrays of these come from the
+ * runtime.
+ */
+struct class_info
+{
+    const char16_t *name;                 // as Class.getName() returns it
+    int32_t length;
+    const class_info *super;              // null for Object, interfaces and primitives
+    const class_info *const *interfaces;  // null terminated, or null if none
+    const class_info *component;          // the element type of an array
+    bool is_interface;
+    size_t size;                          // of the C++ class, for Object.clone - 0 for interfaces, primitives and arrays
+    // What the casts test: the superclasses from Object down to the class
+    // itself, depth + 1 of them, and the bits of every interface that it
+    // implements together with a null terminated list of them - interfaces
+    // have their own bit and no display, primitives neither
+    int32_t depth;
+    const class_info *const *display;
+    uint64_t interface_bits;
+    const class_info *const *all_interfaces;
+    const class_members *members;         // null unless configured for reflection
+    mutable std::atomic<const class_info*> array; // once the array type is used
+    mutable std::atomic< ::java::lang::Class*> cls; // once the class literal is used
+};
+
+/** Perfect hash of every class of the program, generated by the translator */
+struct class_table
+{
+    const uint32_t *seeds;
+    uint32_t seed_count;
+    const class_info *const *slots;
+    uint32_t slot_count;
+};
+
+extern const class_table class_table_;
+
+extern ::java::lang::Class *make_class_(const class_info *info);
+extern const class_info *array_info_(const class_info *component);
+extern const class_info *find_class_info_(::java::lang::String *name);
+extern const class_info *primitive_info_(::java::lang::String *name);
+extern const class_info *class_info_of_(::java::lang::Class *c);
+extern bool is_primitive_(const class_info *info);
+extern bool is_assignable_(const class_info *to, const class_info *from);
+
+extern ::java::lang::Class *type_class_(const char16_t *name);
+extern ::java::lang::String *member_name_(const char16_t *name);
+extern const method_info *method_info_(::java::lang::Class *declaring,
+    int32_t slot, bool constructor);
+extern const field_info *field_info_(::java::lang::Class *declaring,
+    int32_t slot);
+extern void check_invoke_(const method_info *m, ::java::lang::Class *declaring,
+    ::java::lang::Object *o, ::java::lang::ObjectArray *args);
+extern void check_field_(const field_info *f, ::java::lang::Class *declaring,
+    ::java::lang::Object *o);
+
+// Arguments of reflective calls and field stores - a box of the type or of
+// one that widens to it, else IllegalArgumentException
+extern void illegal_argument_();
+extern bool unbox_boolean_(::java::lang::Object *o);
+extern char16_t unbox_char_(::java::lang::Object *o);
+extern int8_t unbox_byte_(::java::lang::Object *o);
+extern int16_t unbox_short_(::java::lang::Object *o);
+extern int32_t unbox_int_(::java::lang::Object *o);
+extern int64_t unbox_long_(::java::lang::Object *o);
+extern float unbox_float_(::java::lang::Object *o);
+extern double unbox_double_(::java::lang::Object *o);
+
+extern const class_info boolean_array_info_, char_array_info_,
+    byte_array_info_, short_array_info_, int_array_info_, long_array_info_,
+    float_array_info_, double_array_info_;
+
+inline ::java::lang::Class *class_(const class_info *info)
+{
+    auto c = info->cls.load(std::memory_order_acquire);
+    return c ? c : make_class_(info);
+}
+
+/** The hash the class table is built with - ClassTableWriter must agree */
+inline uint32_t class_hash_(uint32_t seed, const char16_t *s, int32_t n)
+{
+    uint32_t h = 2166136261u ^ seed;
+    for(int32_t i = 0; i < n; ++i) {
+        h ^= s[i];
+        h *= 16777619u;
+    }
+
+    h ^= h >> 16;
+    h *= 0x85ebca6bu;
+    h ^= h >> 13;
+    return h;
+}
+
+/** The bit of interface_bits that stands for the interface called s */
+constexpr uint64_t interface_bit_(const char16_t *s, uint32_t h = 2166136261u)
+{
+    return *s ? interface_bit_(s + 1, (h ^ *s) * 16777619u) : uint64_t(1) << (h % 64);
+}
+
+/** True if an object of the class from is an instance of the class or interface to */
+inline bool is_instance_(const class_info *from, const class_info *to)
+{
+    if(!to->is_interface) {
+        return from->depth >= to->depth && from->display[to->depth] == to;
+    }
+
+    if(!(from->interface_bits & to->interface_bits)) return false;
+    for(auto i = from->all_interfaces; i && *i; ++i) {
+        if(*i == to) return true;
+    }
+
+    return false;
+}
+
+/** Arrays, which are cast covariantly - Array.hpp and friends specialize it */
+template<typename T>
+struct is_array_ { static const bool value = false; };
+
+/** o as the reference type T - null passes, other types don't */
+template<typename T>
+inline T argument_(::java::lang::Object *o)
+{
+    auto ret = dynamic_cast<T>(o);
+    if(o && !ret) ::illegal_argument_();
+    return ret;
+}
+
+/** The descriptor of T - arrays overload this */
+template<typename T>
+inline const class_info *info_of_(T *)
+{
+    return &T::class_info_;
+}
@@ -0,0 +1,18 @@
+#pragma once
+
+#include <atomic>
+#include <stdint.h>
+
+// What the runtime (j2c.cpp) offers besides what the generated code calls
+
+/** How often the monitors of the program had to do more than a CAS */
+struct monitor_stats_t
+{
+    std::atomic<uint64_t> contended;     // thin lock wanted by another thread
+    std::atomic<uint64_t> inflated;      // fat monitors created
+    std::atomic<uint64_t> fat_contended; // fat monitor enter had to sleep
+    std::atomic<uint64_t> waits;
+    std::atomic<uint64_t> notifies;
+};
+
+extern const monitor_stats_t &monitor_stats();
@@ -1,9 +1,60 @@
+#include <type_traits>
+
+// Checked casts test the descriptor of the dynamic type against that of the
+// target (see is_instance_ in class_info.hpp), which is a load and a compare
+// for classes - dynamic_cast only finds the subobject once the test passes.
+// Arrays are cast covariantly, so dynamic_cast tests them.
+template<typename X, typename U>
+static bool is_(U* u, std::false_type)
+{
+    return ::is_instance_(u->dynamic_info_(), &X::class_info_);
+}
+
+template<typename X, typename U>
+static bool is_(U* u, std::true_type)
+{
+    return dynamic_cast<X*>(u);
+}
+
+template<typename T, typename U>
+static T cast_(U* u, std::false_type)
+{
+    typedef typename std::remove_pointer<T>::type X;
+    return is_<X>(u, std::false_type()) ? dynamic_cast<T>(u) : nullptr;
+}
+
+template<typename T, typename U>
+static T cast_(U* u, std::true_type)
+{
+    return dynamic_cast<T>(u);
+}
+
+template<typename T, typename U>
+static T cast_(U* u)
+{
+    typedef typename std::remove_pointer<T>::type X;
+    return cast_<T>(u, std::integral_constant<bool, ::is_array_<X>::value>());
+}
+
 template<typename T, typename U>
 static T java_cast(U* u)
 {
     if(!u) return static_cast<T>(nullptr);
-    auto t = dynamic_cast<T>(u);
+    auto t = cast_<T>(u);
     if(!t) throw new ::java::lang::ClassCastException();
     return t;
 }
 
+template<typename T, typename U>
+static bool instanceof(U* u)
+{
+    typedef typename std::remove_pointer<T>::type X;
+    return u && is_<X>(u, std::integral_constant<bool, ::is_array_<X>::value>());
+}
+
+// Casts that are known to succeed, and instanceof tests fused with a cast
+template<typename T, typename U>
+static T instance_cast(U* u)
+{
+    return u ? cast_<T>(u) : static_cast<T>(nullptr);
+}
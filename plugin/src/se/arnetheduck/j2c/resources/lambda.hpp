@@ -0,0 +1,17 @@
+// Lambdas and method references are C++ closures - see Lambdas.java. A is the
+// adapter template that implements the functional interface I by calling the
+// closure.
+template<typename I, template<typename> class A, typename F>
+static I *lambda_(F f)
+{
+    return new A<F>(f);
+}
+
+// A closure that captures nothing behaves the same every time, so each such
+// lambda makes its adapter once
+template<typename I, template<typename> class A, typename F>
+static I *lambda_singleton_(F f)
+{
+    static I *instance = new A<F>(f);
+    return instance;
+}
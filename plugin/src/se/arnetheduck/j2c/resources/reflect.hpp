@@ -0,0 +1,102 @@
+#pragma once
+
+#include <type_traits>
+
+#include <class_info.hpp>
+
+// Reflection objects made from the member tables of class_info - the array
+// types come from the generated code, which knows how they are declared
+
+template<typename T>
+int32_t listed_(const T *table, int32_t count, bool public_only)
+{
+    int32_t ret = 0;
+    for(int32_t i = 0; i < count; ++i) {
+        if(!public_only || (table[i].modifiers & 1)) ++ret;
+    }
+
+    return ret;
+}
+
+template<typename ClassArray>
+ClassArray *parameter_classes_(const char16_t *const *names)
+{
+    int32_t n = 0;
+    while(names[n]) ++n;
+
+    auto ret = new ClassArray(n);
+    for(int32_t i = 0; i < n; ++i) {
+        ret->set(i, ::type_class_(names[i]));
+    }
+
+    return ret;
+}
+
+template<typename FieldArray>
+FieldArray *declared_fields_(::java::lang::Class *c, bool public_only)
+{
+    typedef typename std::remove_pointer<typename FieldArray::value_type>::type Field;
+
+    auto members = ::class_info_of_(c)->members;
+    auto table = members ? members->fields : nullptr;
+    auto count = members ? members->field_count : 0;
+
+    auto ret = new FieldArray(listed_(table, count, public_only));
+    for(int32_t i = 0, j = 0; i < count; ++i) {
+        auto &f = table[i];
+        if(public_only && !(f.modifiers & 1)) continue;
+
+        auto field = new Field(c, ::member_name_(f.name), ::type_class_(f.type),
+            f.modifiers, i, nullptr, nullptr);
+        ret->set(j++, field);
+    }
+
+    return ret;
+}
+
+template<typename MethodArray, typename ClassArray>
+MethodArray *declared_methods_(::java::lang::Class *c, bool public_only)
+{
+    typedef typename std::remove_pointer<typename MethodArray::value_type>::type Method;
+
+    auto members = ::class_info_of_(c)->members;
+    auto table = members ? members->methods : nullptr;
+    auto count = members ? members->method_count : 0;
+
+    auto ret = new MethodArray(listed_(table, count, public_only));
+    for(int32_t i = 0, j = 0; i < count; ++i) {
+        auto &m = table[i];
+        if(public_only && !(m.modifiers & 1)) continue;
+
+        auto method = new Method(c, ::member_name_(m.name),
+            parameter_classes_<ClassArray>(m.parameter_types),
+            ::type_class_(m.return_type), new ClassArray(0), m.modifiers, i,
+            nullptr, nullptr, nullptr, nullptr);
+        ret->set(j++, method);
+    }
+
+    return ret;
+}
+
+template<typename ConstructorArray, typename ClassArray>
+ConstructorArray *declared_constructors_(::java::lang::Class *c, bool public_only)
+{
+    typedef typename std::remove_pointer<typename ConstructorArray::value_type>::type Constructor;
+
+    auto members = ::class_info_of_(c)->members;
+    auto table = members ? members->constructors : nullptr;
+    auto count = members ? members->constructor_count : 0;
+
+    auto ret = new ConstructorArray(listed_(table, count, public_only));
+    for(int32_t i = 0, j = 0; i < count; ++i) {
+        auto &m = table[i];
+        if(public_only && !(m.modifiers & 1)) continue;
+
+        auto ctor = new Constructor(c,
+            parameter_classes_<ClassArray>(m.parameter_types),
+            new ClassArray(0), m.modifiers, i, nullptr, nullptr, nullptr);
+        ret->set(j++, ctor);
+    }
+
+    return ret;
+}
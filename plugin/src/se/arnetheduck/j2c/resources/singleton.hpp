@@ -0,0 +1,8 @@
+// The one instance of an anonymous class whose instances are all alike - see
+// Singletons.java. make creates it the first time through.
+template<typename T, typename F>
+static T *singleton_(F make)
+{
+    static T *instance = make();
+    return instance;
+}
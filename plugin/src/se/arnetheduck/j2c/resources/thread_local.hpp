@@ -0,0 +1,49 @@
+#pragma once
+
+namespace java
+{
+    namespace lang
+    {
+        class Object;
+    }
+}
+
+/**
+ * The value of a ThreadLocal on this thread, for ThreadLocals in private
+ * static final fields that are only ever used through get, set and remove -
+ * see ThreadLocals.java. The slot replaces the lookup in the ThreadLocalMap
+ * of the current Thread.
+ */
+struct thread_local_slot_
+{
+    ::java::lang::Object **value; // a cell the collector scans, once set
+    bool set;
+};
+
+/** A cell for a slot of this thread, until the thread ends - see j2c.cpp */
+extern ::java::lang::Object **thread_local_cell_();
+
+inline void thread_local_set_(thread_local_slot_ &s, ::java::lang::Object *value)
+{
+    if(!s.value) s.value = ::thread_local_cell_();
+    *s.value = value;
+    s.set = true;
+}
+
+/** initial calls ThreadLocal.initialValue, which may call back into get */
+template<typename F>
+inline ::java::lang::Object *thread_local_get_(thread_local_slot_ &s, F initial)
+{
+    if(!s.set) {
+        ::java::lang::Object *value = initial();
+        ::thread_local_set_(s, value);
+    }
+
+    return *s.value;
+}
+
+inline void thread_local_remove_(thread_local_slot_ &s)
+{
+    if(s.value) *s.value = nullptr;
+    s.set = false;
+}
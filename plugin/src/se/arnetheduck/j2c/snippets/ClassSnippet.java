@@ -0,0 +1,96 @@
+package se.arnetheduck.j2c.snippets;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+
+import se.arnetheduck.j2c.transform.EmptySnippet;
+import se.arnetheduck.j2c.transform.StubWriter;
+import se.arnetheduck.j2c.transform.TransformUtil;
+import se.arnetheduck.j2c.transform.Transformer;
+
+/** The natives of Class that the runtime class descriptors can answer */
+public class ClassSnippet extends EmptySnippet {
+	private static final String i1 = TransformUtil.indent(1);
+
+	@Override
+	public boolean body(Transformer ctx, StubWriter w, IMethodBinding mb) {
+		if (!TransformUtil.same(mb.getDeclaringClass(), Class.class)) {
+			return true;
+		}
+
+		String name = mb.getName();
+		int params = mb.getParameterTypes().length;
+		if (name.equals("forName0") && params > 0) {
+			w.hardDep(ctx.resolve(ClassNotFoundException.class));
+			String n = TransformUtil.paramName(mb, 0);
+			w.println(i1 + "auto info = ::find_class_info_(" + n + ");");
+			w.println(i1 + "if(!info) {");
+			w.println(i1 + i1
+					+ "throw new ::java::lang::ClassNotFoundException(" + n
+					+ ");");
+			w.println(i1 + "}");
+			w.println();
+			w.println(i1 + "return ::class_(info);");
+			return false;
+		}
+
+		if (name.equals("getPrimitiveClass") && params == 1) {
+			w.println(i1 + "auto info = ::primitive_info_("
+					+ TransformUtil.paramName(mb, 0) + ");");
+			w.println(i1 + "return info ? ::class_(info) : nullptr;");
+			return false;
+		}
+
+		if (params == 1
+				&& (name.equals("isAssignableFrom") || name
+						.equals("isInstance"))) {
+			String p = TransformUtil.paramName(mb, 0);
+			if (name.equals("isAssignableFrom")) {
+				w.hardDep(ctx.resolve(NullPointerException.class));
+				w.println(i1 + "if(!" + p + ") {");
+				w.println(i1 + i1
+						+ "throw new ::java::lang::NullPointerException();");
+				w.println(i1 + "}");
+				w.println();
+			} else {
+				w.hardDep(ctx.resolve(Object.class));
+				w.println(i1 + "if(!" + p + ") {");
+				w.println(i1 + i1 + "return false;");
+				w.println(i1 + "}");
+				w.println();
+				p = p + "->getClass()";
+			}
+
+			w.println(i1
+					+ "return ::is_assignable_(::class_info_of_(this), ::class_info_of_("
+					+ p + "));");
+			return false;
+		}
+
+		if (params != 0) {
+			return true;
+		}
+
+		if (name.equals("getName0")) {
+			w.hardDep(ctx.resolve(String.class));
+			w.println(i1 + "auto info = ::class_info_of_(this);");
+			w.println(i1
+					+ "return ::java::lang::operator \"\" _j(info->name, info->length);");
+		} else if (name.equals("getSuperclass")) {
+			w.println(i1 + "auto info = ::class_info_of_(this)->super;");
+			w.println(i1 + "return info ? ::class_(info) : nullptr;");
+		} else if (name.equals("getComponentType")) {
+			w.println(i1 + "auto info = ::class_info_of_(this)->component;");
+			w.println(i1 + "return info ? ::class_(info) : nullptr;");
+		} else if (name.equals("isInterface")) {
+			w.println(i1 + "return ::class_info_of_(this)->is_interface;");
+		} else if (name.equals("isArray")) {
+			w.println(i1 + "return ::class_info_of_(this)->component != nullptr;");
+		} else if (name.equals("isPrimitive")) {
+			w.println(i1 + "return ::is_primitive_(::class_info_of_(this));");
+		} else {
+			return true;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,60 @@
+package se.arnetheduck.j2c.snippets;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+
+import se.arnetheduck.j2c.transform.EmptySnippet;
+import se.arnetheduck.j2c.transform.StubWriter;
+import se.arnetheduck.j2c.transform.TransformUtil;
+import se.arnetheduck.j2c.transform.Transformer;
+
+/** Object.wait / notify / notifyAll on top of the runtime monitors */
+public class MonitorSnippet extends EmptySnippet {
+	private static final String i1 = TransformUtil.indent(1);
+
+	@Override
+	public boolean prefix(Transformer ctx, StubWriter w, boolean natives) {
+		if (TransformUtil.same(w.type(), Object.class)) {
+			w.println("extern void monitor_wait(::java::lang::Object *o, int64_t millis);");
+			w.println("extern void monitor_notify(::java::lang::Object *o, bool all);");
+			w.println();
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean body(Transformer ctx, StubWriter w, IMethodBinding mb) {
+		if (!TransformUtil.same(mb.getDeclaringClass(), Object.class)) {
+			return true;
+		}
+
+		String name = mb.getName();
+		int params = mb.getParameterTypes().length;
+		if (name.equals("wait")) {
+			if (params == 0) {
+				w.println(i1 + "::monitor_wait(this, 0);");
+			} else if (params == 1) {
+				w.println(i1 + "::monitor_wait(this, "
+						+ TransformUtil.paramName(mb, 0) + ");");
+			} else {
+				w.println(i1 + "::monitor_wait(this, "
+						+ TransformUtil.paramName(mb, 0) + " + ("
+						+ TransformUtil.paramName(mb, 1) + " > 0 ? 1 : 0));");
+			}
+
+			return false;
+		}
+
+		if (params == 0 && name.equals("notify")) {
+			w.println(i1 + "::monitor_notify(this, false);");
+			return false;
+		}
+
+		if (params == 0 && name.equals("notifyAll")) {
+			w.println(i1 + "::monitor_notify(this, true);");
+			return false;
+		}
+
+		return true;
+	}
+}
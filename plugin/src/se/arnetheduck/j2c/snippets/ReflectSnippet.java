@@ -0,0 +1,204 @@
+package se.arnetheduck.j2c.snippets;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+import se.arnetheduck.j2c.transform.BoxAnalysis;
+import se.arnetheduck.j2c.transform.CName;
+import se.arnetheduck.j2c.transform.EmptySnippet;
+import se.arnetheduck.j2c.transform.StubWriter;
+import se.arnetheduck.j2c.transform.TransformUtil;
+import se.arnetheduck.j2c.transform.Transformer;
+
+/**
+ * The natives behind Class.getDeclaredFields and friends and behind
+ * Method.invoke and Constructor.newInstance, and the get and set methods of
+ * Field, on top of the member tables of the class descriptors
+ */
+public class ReflectSnippet extends EmptySnippet {
+	private static final String i1 = TransformUtil.indent(1);
+
+	private static final String METHOD_ACCESSOR = "sun.reflect.NativeMethodAccessorImpl";
+	private static final String CONSTRUCTOR_ACCESSOR = "sun.reflect.NativeConstructorAccessorImpl";
+
+	@Override
+	public boolean prefix(Transformer ctx, StubWriter w, boolean natives) {
+		ITypeBinding tb = w.type();
+		if (natives
+				&& (TransformUtil.same(tb, Class.class)
+						|| tb.getQualifiedName().equals(METHOD_ACCESSOR) || tb
+						.getQualifiedName().equals(CONSTRUCTOR_ACCESSOR))) {
+			w.println("#include <reflect.hpp>");
+			w.println();
+		} else if (!natives && TransformUtil.same(tb, Field.class)) {
+			w.println("#include <class_info.hpp>");
+			w.println();
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean body(Transformer ctx, StubWriter w, IMethodBinding mb) {
+		ITypeBinding tb = mb.getDeclaringClass();
+		String name = mb.getName();
+		int params = mb.getParameterTypes().length;
+
+		if (TransformUtil.same(tb, Class.class) && params == 1) {
+			String p = TransformUtil.paramName(mb, 0);
+			if (name.equals("getDeclaredFields0")) {
+				w.println(i1 + "return ::declared_fields_< " + array(ctx, w, Field.class)
+						+ " >(this, " + p + ");");
+				return false;
+			}
+
+			if (name.equals("getDeclaredMethods0")) {
+				w.println(i1 + "return ::declared_methods_< "
+						+ array(ctx, w, Method.class) + ", "
+						+ array(ctx, w, Class.class) + " >(this, " + p + ");");
+				return false;
+			}
+
+			if (name.equals("getDeclaredConstructors0")) {
+				w.println(i1 + "return ::declared_constructors_< "
+						+ array(ctx, w, Constructor.class) + ", "
+						+ array(ctx, w, Class.class) + " >(this, " + p + ");");
+				return false;
+			}
+
+			return true;
+		}
+
+		if (TransformUtil.same(tb, Field.class)) {
+			return fieldBody(ctx, w, mb);
+		}
+
+		if (tb.getQualifiedName().equals(METHOD_ACCESSOR)
+				&& name.equals("invoke0") && params == 3) {
+			String m = TransformUtil.paramName(mb, 0);
+			String o = TransformUtil.paramName(mb, 1);
+			String args = TransformUtil.paramName(mb, 2);
+			w.hardDep(ctx.resolve(Method.class));
+			printInvoke(ctx, w, m, false, o, args, "info->invoke(" + o + ", "
+					+ args + ")");
+			return false;
+		}
+
+		if (tb.getQualifiedName().equals(CONSTRUCTOR_ACCESSOR)
+				&& name.equals("newInstance0") && params == 2) {
+			String c = TransformUtil.paramName(mb, 0);
+			String args = TransformUtil.paramName(mb, 1);
+			w.hardDep(ctx.resolve(Constructor.class));
+			printInvoke(ctx, w, c, true, "nullptr", args,
+					"info->invoke(nullptr, " + args + ")");
+			return false;
+		}
+
+		return true;
+	}
+
+	/** Field.get and set, and the typed variants that go through them */
+	private static boolean fieldBody(Transformer ctx, StubWriter w,
+			IMethodBinding mb) {
+		String name = mb.getName();
+		ITypeBinding[] pts = mb.getParameterTypes();
+		if (pts.length == 0 || !TransformUtil.same(pts[0], Object.class)) {
+			return true;
+		}
+
+		String o = TransformUtil.paramName(mb, 0);
+		if (name.equals("get") && pts.length == 1) {
+			printField(w, o);
+			w.println(i1 + "return info->get(" + o + ");");
+			return false;
+		}
+
+		if (name.equals("set") && pts.length == 2) {
+			w.hardDep(ctx.resolve(IllegalAccessException.class));
+			printField(w, o);
+			w.println(i1 + "if(!info->set) {");
+			w.println(i1 + i1
+					+ "throw new ::java::lang::IllegalAccessException();");
+			w.println(i1 + "}");
+			w.println();
+			w.println(i1 + "info->set(" + o + ", "
+					+ TransformUtil.paramName(mb, 1) + ");");
+			return false;
+		}
+
+		// getInt, setLong and so on - the unboxing throws or widens as needed
+		String type = name.length() > 3 ? name.substring(3).toLowerCase()
+				: "";
+		String box = TransformUtil.primitives.get(type);
+		if (box == null) {
+			return true;
+		}
+
+		if (name.startsWith("get") && pts.length == 1) {
+			w.println(i1 + "return ::" + CName.UNBOX + type + "_(get(" + o
+					+ "));");
+			return false;
+		}
+
+		if (name.startsWith("set") && pts.length == 2 && pts[1].isPrimitive()) {
+			ITypeBinding btb = ctx.resolve(box);
+			w.hardDep(btb);
+			String value = TransformUtil.paramName(mb, 1);
+			if (BoxAnalysis.isCached(btb)) {
+				w.setBox();
+				value = "::" + CName.BOX + "< "
+						+ CName.qualified(btb, true) + " >(" + value + ")";
+			} else {
+				value = CName.qualified(btb, true) + "::valueOf(" + value
+						+ ")";
+			}
+
+			w.println(i1 + "set(" + o + ", " + value + ");");
+			return false;
+		}
+
+		return true;
+	}
+
+	private static void printField(StubWriter w, String o) {
+		w.println(i1 + "auto declaring = getDeclaringClass();");
+		w.println(i1 + "auto info = ::field_info_(declaring, " + CName.SLOT
+				+ "());");
+		w.println(i1 + "::check_field_(info, declaring, " + o + ");");
+		w.println();
+	}
+
+	private static void printInvoke(Transformer ctx, StubWriter w,
+			String member, boolean constructor, String o, String args,
+			String call) {
+		w.hardDep(ctx.resolve(Throwable.class));
+		w.hardDep(ctx.resolve(InvocationTargetException.class));
+
+		w.println(i1 + "auto declaring = " + member + "->getDeclaringClass();");
+		w.println(i1 + "auto info = ::method_info_(declaring, " + member
+				+ "->" + CName.SLOT + "(), " + constructor + ");");
+		w.println(i1 + "::check_invoke_(info, declaring, " + o + ", " + args
+				+ ");");
+		w.println();
+		w.println(i1 + "try {");
+		w.println(i1 + i1 + "return " + call + ";");
+		w.println(i1 + "} catch(::java::lang::Throwable *t) {");
+		w.println(i1 + i1
+				+ "throw new ::java::lang::reflect::InvocationTargetException(t);");
+		w.println(i1 + "}");
+	}
+
+	/** The C++ type of an array of c, declared for the stub */
+	private static String array(Transformer ctx, StubWriter w, Class<?> c) {
+		ITypeBinding tb = ctx.resolve(c);
+		w.hardDep(tb);
+		tb = tb.createArrayType(1);
+		w.hardDep(tb);
+		return CName.qualified(tb, true);
+	}
+}
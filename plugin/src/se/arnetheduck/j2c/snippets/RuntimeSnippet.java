@@ -0,0 +1,104 @@
+package se.arnetheduck.j2c.snippets;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+import se.arnetheduck.j2c.transform.EmptySnippet;
+import se.arnetheduck.j2c.transform.StubWriter;
+import se.arnetheduck.j2c.transform.TransformUtil;
+import se.arnetheduck.j2c.transform.Transformer;
+
+/**
+ * The hot natives of System, Object, Float and Double - the runtime has
+ * arraycopy, identity hashes, clone and the clocks, the bit conversions are
+ * done in place
+ */
+public class RuntimeSnippet extends EmptySnippet {
+	private static final String i1 = TransformUtil.indent(1);
+
+	@Override
+	public boolean prefix(Transformer ctx, StubWriter w, boolean natives) {
+		if (!natives) {
+			return true;
+		}
+
+		ITypeBinding tb = w.type();
+		if (TransformUtil.same(tb, System.class)) {
+			w.println("extern void array_copy_(::java::lang::Object *src, int32_t src_pos, ::java::lang::Object *dest, int32_t dest_pos, int32_t length);");
+			w.println("extern int32_t identity_hash_(::java::lang::Object *o);");
+			w.println("extern int64_t current_time_millis_();");
+			w.println("extern int64_t nano_time_();");
+			w.println();
+		} else if (TransformUtil.same(tb, Object.class)) {
+			w.println("extern int32_t identity_hash_(::java::lang::Object *o);");
+			w.println("extern ::java::lang::Object *clone_(::java::lang::Object *o);");
+			w.println();
+		} else if (TransformUtil.same(tb, Float.class)
+				|| TransformUtil.same(tb, Double.class)) {
+			w.println("#include <cstring>");
+			w.println();
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean body(Transformer ctx, StubWriter w, IMethodBinding mb) {
+		ITypeBinding tb = mb.getDeclaringClass();
+		String name = mb.getName();
+		int params = mb.getParameterTypes().length;
+
+		if (TransformUtil.same(tb, System.class)) {
+			if (name.equals("arraycopy") && params == 5) {
+				w.println(i1 + "::array_copy_(" + TransformUtil.paramName(mb, 0)
+						+ ", " + TransformUtil.paramName(mb, 1) + ", "
+						+ TransformUtil.paramName(mb, 2) + ", "
+						+ TransformUtil.paramName(mb, 3) + ", "
+						+ TransformUtil.paramName(mb, 4) + ");");
+			} else if (name.equals("identityHashCode") && params == 1) {
+				w.println(i1 + "return ::identity_hash_("
+						+ TransformUtil.paramName(mb, 0) + ");");
+			} else if (name.equals("currentTimeMillis") && params == 0) {
+				w.println(i1 + "return ::current_time_millis_();");
+			} else if (name.equals("nanoTime") && params == 0) {
+				w.println(i1 + "return ::nano_time_();");
+			} else {
+				return true;
+			}
+
+			return false;
+		}
+
+		if (TransformUtil.same(tb, Object.class) && params == 0) {
+			if (name.equals("hashCode")) {
+				w.println(i1 + "return ::identity_hash_(this);");
+			} else if (name.equals("clone")) {
+				w.println(i1 + "return ::clone_(this);");
+			} else {
+				return true;
+			}
+
+			return false;
+		}
+
+		if (params == 1
+				&& (TransformUtil.same(tb, Float.class)
+						&& (name.equals("floatToRawIntBits") || name
+								.equals("intBitsToFloat")) || TransformUtil
+						.same(tb, Double.class)
+						&& (name.equals("doubleToRawLongBits") || name
+								.equals("longBitsToDouble")))) {
+			// memcpy is how C++ reinterprets bits without aliasing trouble -
+			// compilers turn it into a register move
+			String p = TransformUtil.paramName(mb, 0);
+			w.println(i1 + TransformUtil.primitive(mb.getReturnType()
+					.getName())
+					+ " ret;");
+			w.println(i1 + "std::memcpy(&ret, &" + p + ", sizeof ret);");
+			w.println(i1 + "return ret;");
+			return false;
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,72 @@
+package se.arnetheduck.j2c.snippets;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+
+import se.arnetheduck.j2c.transform.CName;
+import se.arnetheduck.j2c.transform.EmptySnippet;
+import se.arnetheduck.j2c.transform.StubWriter;
+import se.arnetheduck.j2c.transform.TransformUtil;
+import se.arnetheduck.j2c.transform.Transformer;
+
+/**
+ * Throwable records return addresses in its backtrace field when made and
+ * the runtime names the frames when the trace is asked for
+ */
+public class StackTraceSnippet extends EmptySnippet {
+	private static final String i1 = TransformUtil.indent(1);
+
+	@Override
+	public boolean prefix(Transformer ctx, StubWriter w, boolean natives) {
+		if (TransformUtil.same(w.type(), Throwable.class)) {
+			w.hardDep(ctx.resolve(StackTraceElement.class));
+			w.println("extern ::java::lang::Object *capture_stack_();");
+			w.println("extern int32_t stack_depth_(::java::lang::Object *t, ::java::lang::Object *backtrace);");
+			w.println("extern ::java::lang::StackTraceElement *stack_element_(::java::lang::Object *t, ::java::lang::Object *backtrace, int32_t index);");
+			w.println();
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean body(Transformer ctx, StubWriter w, IMethodBinding mb) {
+		ITypeBinding tb = mb.getDeclaringClass();
+		if (!TransformUtil.same(tb, Throwable.class)) {
+			return true;
+		}
+
+		String backtrace = backtrace(tb);
+		if (backtrace == null) {
+			return true;
+		}
+
+		String name = mb.getName();
+		int params = mb.getParameterTypes().length;
+		if (name.equals("fillInStackTrace") && params <= 1) {
+			// The native one of the JDK takes a dummy int
+			w.println(i1 + backtrace + " = ::capture_stack_();");
+			w.println(i1 + "return this;");
+		} else if (name.equals("getStackTraceDepth") && params == 0) {
+			w.println(i1 + "return ::stack_depth_(this, " + backtrace + ");");
+		} else if (name.equals("getStackTraceElement") && params == 1) {
+			w.println(i1 + "return ::stack_element_(this, " + backtrace + ", "
+					+ TransformUtil.paramName(mb, 0) + ");");
+		} else {
+			return true;
+		}
+
+		return false;
+	}
+
+	private static String backtrace(ITypeBinding tb) {
+		for (IVariableBinding vb : tb.getDeclaredFields()) {
+			if (vb.getName().equals("backtrace")) {
+				return CName.of(vb);
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,236 @@
+package se.arnetheduck.j2c.snippets;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+
+import se.arnetheduck.j2c.transform.CName;
+import se.arnetheduck.j2c.transform.EmptySnippet;
+import se.arnetheduck.j2c.transform.StubWriter;
+import se.arnetheduck.j2c.transform.TransformUtil;
+import se.arnetheduck.j2c.transform.Transformer;
+
+/**
+ * The natives of Thread and the park / unpark of Unsafe on top of the runtime
+ * threads
+ */
+public class ThreadSnippet extends EmptySnippet {
+	private static final String i1 = TransformUtil.indent(1);
+	private static final String i2 = TransformUtil.indent(2);
+
+	private static final String UNSAFE = "sun.misc.Unsafe";
+
+	/** The JVMTI thread states that Thread.getState decodes */
+	private static final int RUNNABLE = 5;
+	private static final int TERMINATED = 2;
+
+	@Override
+	public boolean prefix(Transformer ctx, StubWriter w, boolean natives) {
+		if (!natives) {
+			return true;
+		}
+
+		ITypeBinding tb = w.type();
+		if (TransformUtil.same(tb, Thread.class)) {
+			w.println("extern ::java::lang::Object *current_thread_();");
+			w.println("extern void attach_thread_(::java::lang::Object *t);");
+			w.println("extern void start_thread_(::java::lang::Object *t, int64_t stack_size, void (*run)(::java::lang::Object *t));");
+			w.println("extern bool thread_alive_(::java::lang::Object *t);");
+			w.println("extern void interrupt_thread_(::java::lang::Object *t);");
+			w.println("extern bool thread_interrupted_(::java::lang::Object *t, bool clear);");
+			w.println("extern void yield_thread_();");
+			w.println("extern void sleep_thread_(int64_t millis);");
+			w.println("extern bool holds_lock_(::java::lang::Object *o);");
+			w.println();
+		} else if (tb.getQualifiedName().equals(UNSAFE)) {
+			w.println("extern void park_(bool absolute, int64_t time);");
+			w.println("extern void unpark_(::java::lang::Object *t);");
+			w.println();
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean body(Transformer ctx, StubWriter w, IMethodBinding mb) {
+		ITypeBinding tb = mb.getDeclaringClass();
+		String name = mb.getName();
+		int params = mb.getParameterTypes().length;
+		String p0 = params > 0 ? TransformUtil.paramName(mb, 0) : null;
+
+		if (tb.getQualifiedName().equals(UNSAFE)) {
+			if (name.equals("park") && params == 2) {
+				w.println(i1 + "::park_(" + p0 + ", "
+						+ TransformUtil.paramName(mb, 1) + ");");
+			} else if (name.equals("unpark") && params == 1) {
+				w.println(i1 + "::unpark_(" + p0 + ");");
+			} else {
+				return true;
+			}
+
+			return false;
+		}
+
+		if (!TransformUtil.same(tb, Thread.class)) {
+			return true;
+		}
+
+		if (params == 0 && name.equals("currentThread")) {
+			printCurrentThread(ctx, w, tb);
+		} else if (params == 0 && name.equals("start0")) {
+			printStart(ctx, w, tb);
+		} else if (params == 0 && name.equals("isAlive")) {
+			w.println(i1 + "return ::thread_alive_(this);");
+		} else if (params == 0 && name.equals("interrupt0")) {
+			w.println(i1 + "::interrupt_thread_(this);");
+		} else if (params == 1 && name.equals("isInterrupted")) {
+			w.println(i1 + "return ::thread_interrupted_(this, " + p0 + ");");
+		} else if (params == 0 && name.equals("yield")) {
+			w.println(i1 + "::yield_thread_();");
+		} else if (params == 1 && name.equals("sleep")) {
+			w.println(i1 + "::sleep_thread_(" + p0 + ");");
+		} else if (params == 1 && name.equals("holdsLock")) {
+			w.println(i1 + "return ::holds_lock_(" + p0 + ");");
+		} else if (params == 0 && name.equals("registerNatives")) {
+			w.println(i1 + "// Linked statically");
+		} else if (params == 1
+				&& (name.equals("setPriority0") || name
+						.equals("setNativeName"))) {
+			w.println(i1 + "// Left to the OS");
+		} else {
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Threads that weren't started from Java get their Thread the way the
+	 * JVM makes the one of main - attached before its constructor runs since
+	 * that asks for the current thread, in a "main" group
+	 */
+	private static void printCurrentThread(Transformer ctx, StubWriter w,
+			ITypeBinding tb) {
+		String self = CName.qualified(tb, true);
+		w.println(i1 + "auto t = dynamic_cast< " + self
+				+ "* >(::current_thread_());");
+		w.println(i1 + "if(t) {");
+		w.println(i2 + "return t;");
+		w.println(i1 + "}");
+		w.println();
+
+		ITypeBinding group = ctx.resolve(ThreadGroup.class);
+		boolean init = tb.isFromSource() && group.isFromSource()
+				&& hasConstructor(tb, ThreadGroup.class, String.class)
+				&& hasConstructor(group);
+		if (init) {
+			w.hardDep(group);
+			w.hardDep(ctx.resolve(String.class));
+			String qgroup = CName.qualified(group, true);
+			w.println(i1 + "static auto group = new " + qgroup + "(new "
+					+ qgroup + "(), u\"main\"_j);");
+		}
+
+		w.println(i1 + "t = new " + self + "("
+				+ TransformUtil.makeDefaultInitTag() + ");");
+		w.println(i1 + "::attach_thread_(t);");
+
+		String priority = field(tb, "priority");
+		if (priority != null) {
+			w.println(i1 + "t->" + priority + " = " + Thread.NORM_PRIORITY
+					+ ";");
+		}
+
+		String status = field(tb, "threadStatus");
+		if (status != null) {
+			w.println(i1 + "t->" + status + " = " + RUNNABLE + ";");
+		}
+
+		if (init) {
+			w.println(i1 + "t->" + CName.CTOR + "(group, u\"main\"_j);");
+		}
+
+		w.println(i1 + "return t;");
+	}
+
+	private static void printStart(Transformer ctx, StubWriter w,
+			ITypeBinding tb) {
+		String self = CName.qualified(tb, true);
+		String stackSize = field(tb, "stackSize");
+		String status = field(tb, "threadStatus");
+		IMethodBinding dispatch = method(tb, "dispatchUncaughtException", 1);
+		IMethodBinding exit = method(tb, "exit", 0);
+
+		if (status != null) {
+			w.println(i1 + status + " = " + RUNNABLE + ";");
+		}
+
+		w.println(i1 + "::start_thread_(this, "
+				+ (stackSize == null ? "0" : stackSize)
+				+ ", [](::java::lang::Object *o) {");
+		w.println(i2 + "auto t = dynamic_cast< " + self + "* >(o);");
+		if (dispatch != null) {
+			w.hardDep(ctx.resolve(Throwable.class));
+			w.println(i2 + "try {");
+			w.println(i2 + i1 + "t->run();");
+			w.println(i2 + "} catch(::java::lang::Throwable *e) {");
+			w.println(i2 + i1 + "t->" + CName.of(dispatch) + "(e);");
+			w.println(i2 + "}");
+		} else {
+			w.println(i2 + "t->run();");
+		}
+
+		if (exit != null) {
+			w.println();
+			w.println(i2 + "t->" + CName.of(exit) + "();");
+		}
+
+		if (status != null) {
+			w.println(i2 + "t->" + status + " = " + TERMINATED + ";");
+		}
+
+		w.println(i1 + "});");
+	}
+
+	private static String field(ITypeBinding tb, String name) {
+		for (IVariableBinding vb : tb.getDeclaredFields()) {
+			if (vb.getName().equals(name)) {
+				return CName.of(vb);
+			}
+		}
+
+		return null;
+	}
+
+	private static IMethodBinding method(ITypeBinding tb, String name,
+			int params) {
+		for (IMethodBinding mb : tb.getDeclaredMethods()) {
+			if (mb.getName().equals(name)
+					&& mb.getParameterTypes().length == params) {
+				return mb;
+			}
+		}
+
+		return null;
+	}
+
+	private static boolean hasConstructor(ITypeBinding tb, Class<?>... params) {
+		for (IMethodBinding mb : tb.getDeclaredMethods()) {
+			ITypeBinding[] pts = mb.getParameterTypes();
+			if (!mb.isConstructor() || pts.length != params.length) {
+				continue;
+			}
+
+			boolean same = true;
+			for (int i = 0; i < pts.length && same; ++i) {
+				same = TransformUtil.same(pts[i].getErasure(), params[i]);
+			}
+
+			if (same) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,295 @@
+package se.arnetheduck.j2c.transform;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SwitchStatement;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+
+/**
+ * Finds boxing conversions that can be left out.
+ *
+ * A box that is unboxed right away, such as Integer.valueOf(i).intValue(),
+ * is replaced by the primitive it was made from. A local of box type that is
+ * only ever assigned boxed primitives, and is otherwise only used where it
+ * gets unboxed, is kept as the primitive - it can never be null and its
+ * identity is never observed.
+ */
+public class BoxAnalysis {
+	/** Box types whose values -128..127 are shared by boxing conversion */
+	private static final Set<String> cached = new HashSet<String>(
+			Arrays.asList("java.lang.Byte", "java.lang.Character",
+					"java.lang.Short", "java.lang.Integer", "java.lang.Long"));
+
+	/** True if boxing to tb should go through the small value cache */
+	public static boolean isCached(ITypeBinding tb) {
+		return cached.contains(tb.getErasure().getQualifiedName());
+	}
+
+	/** The primitive type that boxes to tb, or null if tb isn't a box type */
+	public static ITypeBinding primitive(ASTNode node, ITypeBinding tb) {
+		String name = TransformUtil.reverses.get(tb.getErasure()
+				.getQualifiedName());
+		return name == null ? null : node.getAST().resolveWellKnownType(name);
+	}
+
+	/** True if mb is the static valueOf that boxes its own primitive */
+	public static boolean isValueOf(IMethodBinding mb) {
+		if (!mb.getName().equals("valueOf")
+				|| !Modifier.isStatic(mb.getModifiers())
+				|| mb.getParameterTypes().length != 1) {
+			return false;
+		}
+
+		ITypeBinding p = mb.getParameterTypes()[0];
+		return p.isPrimitive()
+				&& p.getName().equals(
+						TransformUtil.reverses.get(mb.getDeclaringClass()
+								.getQualifiedName()));
+	}
+
+	/** The local variable that expr names, if any */
+	public static IVariableBinding local(Expression expr) {
+		expr = unparenthesize(expr);
+		if (!(expr instanceof SimpleName)) {
+			return null;
+		}
+
+		IBinding b = ((SimpleName) expr).resolveBinding();
+		if (!(b instanceof IVariableBinding)) {
+			return null;
+		}
+
+		IVariableBinding vb = (IVariableBinding) b;
+		return vb.isField() ? null : vb.getVariableDeclaration();
+	}
+
+	/**
+	 * The primitive expression that expr can be replaced with because expr
+	 * boxes it only to unbox it again, or null
+	 */
+	public static Expression cancelled(Expression expr) {
+		Expression e = unparenthesize(expr);
+
+		if (expr.resolveUnboxing()) {
+			Expression ret = boxed(e, expr.resolveTypeBinding());
+			if (ret != null) {
+				return ret;
+			}
+		}
+
+		if (!(e instanceof MethodInvocation)) {
+			return null;
+		}
+
+		MethodInvocation mi = (MethodInvocation) e;
+		Expression receiver = mi.getExpression();
+		if (receiver == null || !mi.arguments().isEmpty()) {
+			return null;
+		}
+
+		ITypeBinding rtb = receiver.resolveTypeBinding();
+		ITypeBinding ptb = primitive(mi, rtb);
+		if (ptb == null
+				|| !mi.getName().getIdentifier()
+						.equals(ptb.getName() + "Value")) {
+			return null;
+		}
+
+		return boxed(unparenthesize(receiver), rtb);
+	}
+
+	/** The primitive that e boxes to the box type tb, or null */
+	private static Expression boxed(Expression e, ITypeBinding tb) {
+		if (e instanceof CastExpression) {
+			CastExpression ce = (CastExpression) e;
+			if (ce.getExpression().resolveBoxing()
+					&& ce.resolveTypeBinding().isEqualTo(tb)) {
+				return ce.getExpression();
+			}
+		}
+
+		if (e instanceof MethodInvocation) {
+			MethodInvocation mi = (MethodInvocation) e;
+			IMethodBinding mb = mi.resolveMethodBinding();
+			if (mb != null && isValueOf(mb)
+					&& mb.getDeclaringClass().isEqualTo(tb.getErasure())) {
+				return (Expression) mi.arguments().get(0);
+			}
+		}
+
+		return null;
+	}
+
+	/** True if the local declared by node can be kept as a primitive */
+	public static boolean isUnboxable(VariableDeclarationFragment node) {
+		if (!(node.getParent() instanceof VariableDeclarationStatement)
+				|| node.getParent().getParent() instanceof SwitchStatement
+				|| node.getExtraDimensions() != 0) {
+			return false;
+		}
+
+		IVariableBinding vb = node.resolveBinding();
+		if (vb == null || vb.isField() || primitive(node, vb.getType()) == null) {
+			return false;
+		}
+
+		if (node.getInitializer() != null
+				&& !node.getInitializer().resolveBoxing()) {
+			return false;
+		}
+
+		ASTNode body = EscapeAnalysis.body(node);
+		return body != null && !isBoxUsed(vb, body);
+	}
+
+	private static boolean isBoxUsed(final IVariableBinding vb, ASTNode body) {
+		final boolean[] ret = { false };
+		body.accept(new ASTVisitor() {
+			private int nested;
+
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				nested++;
+				return true;
+			}
+
+			@Override
+			public void endVisit(AnonymousClassDeclaration node) {
+				nested--;
+			}
+
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				nested++;
+				return true;
+			}
+
+			@Override
+			public void endVisit(TypeDeclarationStatement node) {
+				nested--;
+			}
+
+			@Override
+			public boolean visit(SimpleName node) {
+				IBinding b = node.resolveBinding();
+				if (b instanceof IVariableBinding
+						&& ((IVariableBinding) b).getVariableDeclaration()
+								.isEqualTo(vb.getVariableDeclaration())) {
+					if (nested > 0 || isBoxUse(node)) {
+						ret[0] = true;
+					}
+				}
+
+				return false;
+			}
+		});
+
+		return ret[0];
+	}
+
+	/** True if this use of the variable needs it to be a box */
+	private static boolean isBoxUse(SimpleName node) {
+		ASTNode parent = node.getParent();
+
+		if (parent instanceof VariableDeclarationFragment
+				&& ((VariableDeclarationFragment) parent).getName() == node) {
+			return false;
+		}
+
+		if (parent instanceof Assignment
+				&& ((Assignment) parent).getLeftHandSide() == node) {
+			Assignment a = (Assignment) parent;
+			if (!isStatement(a)) {
+				// The value would be the primitive instead of the box
+				return true;
+			}
+
+			if (a.getOperator() == Assignment.Operator.ASSIGN) {
+				return !a.getRightHandSide().resolveBoxing();
+			}
+
+			// These are written out for primitive left hand sides only
+			return a.getOperator() == Assignment.Operator.RIGHT_SHIFT_UNSIGNED_ASSIGN
+					|| a.getOperator() == Assignment.Operator.REMAINDER_ASSIGN;
+		}
+
+		if (parent instanceof PostfixExpression
+				|| parent instanceof PrefixExpression
+				&& isIncDec(((PrefixExpression) parent).getOperator())) {
+			return !isStatement(parent);
+		}
+
+		Expression e = node;
+		while (e.getParent() instanceof ParenthesizedExpression) {
+			e = (Expression) e.getParent();
+		}
+
+		return !e.resolveUnboxing();
+	}
+
+	private static boolean isStatement(ASTNode node) {
+		ASTNode parent = node.getParent();
+		return parent instanceof ExpressionStatement
+				|| parent instanceof ForStatement
+				&& ((ForStatement) parent).updaters().contains(node);
+	}
+
+	private static boolean isIncDec(PrefixExpression.Operator op) {
+		return op == PrefixExpression.Operator.INCREMENT
+				|| op == PrefixExpression.Operator.DECREMENT;
+	}
+
+	/**
+	 * True if the boxing of expr can be left out because it is stored in one
+	 * of the given primitive locals
+	 */
+	public static boolean isStoredUnboxed(Expression expr,
+			Set<IVariableBinding> unboxed) {
+		ASTNode parent = expr.getParent();
+		if (parent instanceof VariableDeclarationFragment) {
+			VariableDeclarationFragment vdf = (VariableDeclarationFragment) parent;
+			return vdf.getInitializer() == expr
+					&& unboxed.contains(vdf.resolveBinding()
+							.getVariableDeclaration());
+		}
+
+		if (parent instanceof Assignment) {
+			Assignment a = (Assignment) parent;
+			IVariableBinding vb = local(a.getLeftHandSide());
+			return a.getRightHandSide() == expr && vb != null
+					&& unboxed.contains(vb);
+		}
+
+		return false;
+	}
+
+	private static Expression unparenthesize(Expression expr) {
+		while (expr instanceof ParenthesizedExpression) {
+			expr = ((ParenthesizedExpression) expr).getExpression();
+		}
+
+		return expr;
+	}
+}
@@ -37,6 +37,9 @@ public class CName {
 	/** Virtual method that returns the dynamic class of the current object */
 	public static final String GET_CLASS = "getClass0";
 
+	/** Virtual method that returns the descriptor of the dynamic class */
+	public static final String DYNAMIC_INFO = "dynamic_info_";
+
 	/**
 	 * The default-init constructor takes care of the first phase of Java object
 	 * initialization, namely of calling clinit to make sure the class and all
@@ -46,11 +49,59 @@ public class CName {
 	 */
 	public static final String DEFAULT_INIT_TAG = "default_init_tag";
 
+	/** Type of the compile time class descriptors */
+	public static final String CLASS_INFO = "class_info";
+
+	/** Static member holding the descriptor of a class */
+	public static final String CLASS_INFO_ = "class_info_";
+
+	/** Nested class holding the reflection thunks of a class */
+	public static final String REFLECT = "reflect_";
+
+	/** Lock word that the runtime keeps in every Object */
+	public static final String MONITOR = "monitor_";
+
+	/** Descriptor of the type that a Class stands for */
+	public static final String DESCRIPTOR = "descriptor_";
+
+	/** Prefix of the padding around @Contended fields */
+	public static final String PADDING = "padding_";
+
+	/** Index of a Field, Method or Constructor in the member tables */
+	public static final String SLOT = "slot_";
+
+	/** Reference argument of a reflective call, checked against its type */
+	public static final String ARGUMENT = "argument_";
+
+	/** Prefix of the runtime functions that unbox reflective arguments */
+	public static final String UNBOX = "unbox_";
+
 	/**
 	 * Cast function that throws an appropriate exception if a cast fails
 	 */
 	public static final String JAVA_CAST = "java_cast";
 
+	/**
+	 * Type test function - true if the passed pointer is non-null and of the
+	 * given type
+	 */
+	public static final String INSTANCE_OF = "instanceof";
+
+	/**
+	 * Cast function for casts known to succeed and for instanceof tests fused
+	 * with a cast - null if the pointer is null or not of the given type
+	 */
+	public static final String INSTANCE_CAST = "instance_cast";
+
+	/** Boxing function that shares the boxes of small values */
+	public static final String BOX = "box";
+
+	/** Shared array of enum constants backing values() */
+	public static final String VALUES = "values_";
+
+	/** Struct holding the ordinals of enum constants as constexpr:s */
+	public static final String ORDINALS = "ordinal_";
+
 	/**
 	 * Null pointer check function - throws NPE if the passed pointer is null
 	 */
@@ -67,7 +118,10 @@ public class CName {
 			"static_assert", "static_cast", "struct", "template",
 			"thread_local", "typedef", "typeid", "typename", "union",
 			"unsigned", "using", "virtual", "wchar_t", "xor", "xor_eq", CTOR,
-			INSTANCE_INIT, STATIC_INIT, GET_CLASS, DEFAULT_INIT_TAG, JAVA_CAST,
+			INSTANCE_INIT, STATIC_INIT, GET_CLASS, DYNAMIC_INFO,
+			DEFAULT_INIT_TAG, CLASS_INFO,
+			CLASS_INFO_, REFLECT, MONITOR, DESCRIPTOR, SLOT, ARGUMENT, JAVA_CAST,
+			INSTANCE_CAST, BOX,
 			"int8_t", "int16_t", "int32_t", "int64_t", "char16_t", "NULL",
 			"npc", "EOF", "LITTLE_ENDIAN", "BIG_ENDIAN");
 
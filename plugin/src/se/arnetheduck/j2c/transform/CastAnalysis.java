@@ -0,0 +1,420 @@
+package se.arnetheduck.j2c.transform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BreakStatement;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.ContinueStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.InstanceofExpression;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.ReturnStatement;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.ThrowStatement;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+
+/**
+ * Finds reference casts whose outcome is known at translation time.
+ *
+ * Upcasts can never fail. Downcasts of a local that is never reassigned are
+ * proven when the cast is guarded by an instanceof test of the local, or
+ * follows an earlier unconditional cast of it in the same or an enclosing
+ * block.
+ *
+ * An instanceof test followed by a cast to the same type can be done as a
+ * single conversion that yields null on failure.
+ */
+public class CastAnalysis {
+	/** True if every source is also a target */
+	public static boolean isUpcast(ITypeBinding source, ITypeBinding target) {
+		// Array classes don't follow the element hierarchy in C++
+		return !source.isPrimitive() && !target.isPrimitive()
+				&& !source.isArray() && !target.isArray()
+				&& !source.isNullType()
+				&& source.getErasure().isSubTypeCompatible(target.getErasure());
+	}
+
+	/**
+	 * True if target derives from source through classes only, so that
+	 * static_cast can go from one to the other
+	 */
+	public static boolean isClassChain(ITypeBinding source, ITypeBinding target) {
+		if (!source.isClass() || !target.isClass()
+				|| TransformUtil.same(source, Object.class)) {
+			return false;
+		}
+
+		for (ITypeBinding tb = target.getErasure(); tb != null; tb = tb
+				.getSuperclass()) {
+			if (tb.getErasure().isEqualTo(source.getErasure())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/** True if node can't fail since its operand is known to be a target */
+	public static boolean isProven(CastExpression node) {
+		IVariableBinding vb = local(node.getExpression());
+		if (vb == null) {
+			return false;
+		}
+
+		ASTNode body = EscapeAnalysis.body(node);
+		if (body == null || isAssigned(vb, body)) {
+			return false;
+		}
+
+		ITypeBinding target = node.getType().resolveBinding();
+
+		ASTNode n = node;
+		for (ASTNode parent = n.getParent(); parent != null && n != body; n = parent, parent = parent
+				.getParent()) {
+			if (parent instanceof IfStatement) {
+				IfStatement is = (IfStatement) parent;
+				if (is.getThenStatement() == n
+						&& implies(is.getExpression(), vb, target)) {
+					return true;
+				}
+			} else if (parent instanceof ConditionalExpression) {
+				ConditionalExpression ce = (ConditionalExpression) parent;
+				if (ce.getThenExpression() == n
+						&& implies(ce.getExpression(), vb, target)) {
+					return true;
+				}
+			} else if (parent instanceof InfixExpression) {
+				InfixExpression ie = (InfixExpression) parent;
+				if (ie.getOperator() == InfixExpression.Operator.CONDITIONAL_AND) {
+					// Operands before this one have been true
+					for (Expression e : operands(ie)) {
+						if (e == n) {
+							break;
+						}
+
+						if (implies(e, vb, target)) {
+							return true;
+						}
+					}
+				}
+			} else if (parent instanceof Block) {
+				for (Statement s : (List<Statement>) ((Block) parent)
+						.statements()) {
+					if (s == n) {
+						break;
+					}
+
+					if (isGuard(s, vb, target) || casts(s, vb, target)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * The declaration that starts the then block of an if (x instanceof T) {
+	 * T y = (T) x; ... } idiom, so that test and cast can be done as one, or
+	 * null if node is not of that shape
+	 */
+	public static VariableDeclarationStatement fusedCast(IfStatement node) {
+		Expression expr = unparen(node.getExpression());
+		if (!(expr instanceof InstanceofExpression)) {
+			return null;
+		}
+
+		InstanceofExpression ie = (InstanceofExpression) expr;
+		IVariableBinding vb = local(ie.getLeftOperand());
+		if (vb == null || !(node.getThenStatement() instanceof Block)) {
+			return null;
+		}
+
+		List<Statement> statements = ((Block) node.getThenStatement())
+				.statements();
+		if (statements.isEmpty()
+				|| !(statements.get(0) instanceof VariableDeclarationStatement)) {
+			return null;
+		}
+
+		VariableDeclarationStatement vds = (VariableDeclarationStatement) statements
+				.get(0);
+		if (vds.fragments().size() != 1) {
+			return null;
+		}
+
+		VariableDeclarationFragment fragment = (VariableDeclarationFragment) vds
+				.fragments().get(0);
+		Expression init = unparen(fragment.getInitializer());
+		if (fragment.getExtraDimensions() != 0
+				|| !(init instanceof CastExpression)
+				|| !isLocal(((CastExpression) init).getExpression(), vb)) {
+			return null;
+		}
+
+		ITypeBinding target = ie.getRightOperand().resolveBinding()
+				.getErasure();
+		if (!((CastExpression) init).getType().resolveBinding().getErasure()
+				.isEqualTo(target)
+				|| !fragment.resolveBinding().getType().getErasure()
+						.isEqualTo(target)) {
+			return null;
+		}
+
+		// The C++ condition variable is also in scope in the else branch
+		if (declares(node.getElseStatement(), fragment.getName()
+				.getIdentifier())) {
+			return null;
+		}
+
+		return vds;
+	}
+
+	private static boolean declares(Statement s, String identifier) {
+		if (!(s instanceof Block)) {
+			return false;
+		}
+
+		for (Statement x : (List<Statement>) ((Block) s).statements()) {
+			if (x instanceof VariableDeclarationStatement) {
+				for (VariableDeclarationFragment f : (List<VariableDeclarationFragment>) ((VariableDeclarationStatement) x)
+						.fragments()) {
+					if (f.getName().getIdentifier().equals(identifier)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private static Expression unparen(Expression expr) {
+		while (expr instanceof ParenthesizedExpression) {
+			expr = ((ParenthesizedExpression) expr).getExpression();
+		}
+
+		return expr;
+	}
+
+	private static List<Expression> operands(InfixExpression ie) {
+		List<Expression> ret = new ArrayList<Expression>();
+		ret.add(ie.getLeftOperand());
+		ret.add(ie.getRightOperand());
+		ret.addAll(ie.extendedOperands());
+		return ret;
+	}
+
+	private static IVariableBinding local(Expression expr) {
+		expr = unparen(expr);
+		if (!(expr instanceof SimpleName)) {
+			return null;
+		}
+
+		IBinding b = ((SimpleName) expr).resolveBinding();
+		if (!(b instanceof IVariableBinding) || ((IVariableBinding) b).isField()) {
+			return null;
+		}
+
+		return (IVariableBinding) b;
+	}
+
+	private static boolean isLocal(Expression expr, IVariableBinding vb) {
+		IVariableBinding b = local(expr);
+		return b != null
+				&& b.getVariableDeclaration().isEqualTo(
+						vb.getVariableDeclaration());
+	}
+
+	private static boolean isAssigned(final IVariableBinding vb, ASTNode body) {
+		final boolean[] ret = { false };
+		body.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(Assignment node) {
+				ret[0] |= isLocal(node.getLeftHandSide(), vb);
+				return true;
+			}
+
+			@Override
+			public boolean visit(PrefixExpression node) {
+				ret[0] |= (node.getOperator() == PrefixExpression.Operator.INCREMENT || node
+						.getOperator() == PrefixExpression.Operator.DECREMENT)
+						&& isLocal(node.getOperand(), vb);
+				return true;
+			}
+
+			@Override
+			public boolean visit(PostfixExpression node) {
+				ret[0] |= isLocal(node.getOperand(), vb);
+				return true;
+			}
+		});
+
+		return ret[0];
+	}
+
+	/** True if expr being true means that vb is a target */
+	private static boolean implies(Expression expr, IVariableBinding vb,
+			ITypeBinding target) {
+		expr = unparen(expr);
+		if (expr instanceof InstanceofExpression) {
+			InstanceofExpression ie = (InstanceofExpression) expr;
+			return isLocal(ie.getLeftOperand(), vb)
+					&& ie.getRightOperand().resolveBinding().getErasure()
+							.isSubTypeCompatible(target.getErasure());
+		}
+
+		if (expr instanceof InfixExpression) {
+			InfixExpression ie = (InfixExpression) expr;
+			if (ie.getOperator() != InfixExpression.Operator.CONDITIONAL_AND) {
+				return false;
+			}
+
+			for (Expression e : operands(ie)) {
+				if (implies(e, vb, target)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/** True if expr being false means that vb is a target */
+	private static boolean impliesNot(Expression expr, IVariableBinding vb,
+			ITypeBinding target) {
+		expr = unparen(expr);
+		if (expr instanceof PrefixExpression) {
+			PrefixExpression pe = (PrefixExpression) expr;
+			return pe.getOperator() == PrefixExpression.Operator.NOT
+					&& implies(pe.getOperand(), vb, target);
+		}
+
+		if (expr instanceof InfixExpression) {
+			InfixExpression ie = (InfixExpression) expr;
+			if (ie.getOperator() != InfixExpression.Operator.CONDITIONAL_OR) {
+				return false;
+			}
+
+			for (Expression e : operands(ie)) {
+				if (impliesNot(e, vb, target)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/** if (!(x instanceof T)) return; and similar */
+	private static boolean isGuard(Statement s, IVariableBinding vb,
+			ITypeBinding target) {
+		if (!(s instanceof IfStatement)) {
+			return false;
+		}
+
+		IfStatement is = (IfStatement) s;
+		return is.getElseStatement() == null
+				&& isAbrupt(is.getThenStatement())
+				&& impliesNot(is.getExpression(), vb, target);
+	}
+
+	private static boolean isAbrupt(Statement s) {
+		if (s instanceof Block) {
+			List<Statement> statements = ((Block) s).statements();
+			return !statements.isEmpty()
+					&& isAbrupt(statements.get(statements.size() - 1));
+		}
+
+		return s instanceof ReturnStatement || s instanceof ThrowStatement
+				|| s instanceof BreakStatement
+				|| s instanceof ContinueStatement;
+	}
+
+	/** True if s always casts vb to a target before completing normally */
+	private static boolean casts(final Statement s, final IVariableBinding vb,
+			final ITypeBinding target) {
+		if (!(s instanceof ExpressionStatement)
+				&& !(s instanceof VariableDeclarationStatement)) {
+			return false;
+		}
+
+		final boolean[] ret = { false };
+		s.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				return false;
+			}
+
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				return false;
+			}
+
+			@Override
+			public boolean visit(LambdaExpression node) {
+				// The body might not have run yet
+				return false;
+			}
+
+			@Override
+			public boolean visit(CastExpression node) {
+				if (isLocal(node.getExpression(), vb)
+						&& node.getType().resolveBinding().getErasure()
+								.isSubTypeCompatible(target.getErasure())
+						&& isUnconditional(node, s)) {
+					ret[0] = true;
+				}
+
+				return true;
+			}
+		});
+
+		return ret[0];
+	}
+
+	private static boolean isUnconditional(ASTNode node, Statement s) {
+		for (ASTNode n = node, parent = n.getParent(); n != s; n = parent, parent = parent
+				.getParent()) {
+			if (parent instanceof LambdaExpression) {
+				return false;
+			}
+
+			if (parent instanceof ConditionalExpression
+					&& ((ConditionalExpression) parent).getExpression() != n) {
+				return false;
+			}
+
+			if (parent instanceof InfixExpression) {
+				InfixExpression ie = (InfixExpression) parent;
+				if ((ie.getOperator() == InfixExpression.Operator.CONDITIONAL_AND || ie
+						.getOperator() == InfixExpression.Operator.CONDITIONAL_OR)
+						&& ie.getLeftOperand() != n) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+}
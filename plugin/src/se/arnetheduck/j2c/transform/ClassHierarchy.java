@@ -0,0 +1,357 @@
+package se.arnetheduck.j2c.transform;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IRegion;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+/**
+ * Class hierarchy analysis over the project being translated.
+ *
+ * Only the project and its class path can contribute types to the translated
+ * program, so a class that has no subtypes there is a leaf, and a method that
+ * no subtype redeclares (or forwards to, on behalf of an interface) never
+ * needs to be dispatched through the vtable. Likewise, a base that no
+ * subtype reaches along more than one path can be inherited non-virtually,
+ * and a call whose receiver can only be of classes that share one version of
+ * the method can name that version. Classes without source are assumed to be
+ * extended.
+ *
+ * The hierarchy of the whole project, class path included, is built once and
+ * answers all queries.
+ */
+public class ClassHierarchy {
+	private static class Info {
+		boolean leaf;
+
+		/** The class itself followed by all its subtypes */
+		IType[] types;
+
+		/** Method names that subtypes declare or get from their interfaces */
+		final Set<String> names = new HashSet<String>();
+	}
+
+	private static final Map<IJavaProject, ITypeHierarchy> hierarchies = new HashMap<IJavaProject, ITypeHierarchy>();
+	private static final Map<String, Info> infos = new HashMap<String, Info>();
+	private static final Map<String, Set<String>> subtypeNames = new HashMap<String, Set<String>>();
+	private static final Map<String, IType> implementations = new HashMap<String, IType>();
+
+	/** Forget previous results - the project may have changed */
+	public static void clear() {
+		hierarchies.clear();
+		infos.clear();
+		subtypeNames.clear();
+		implementations.clear();
+	}
+
+	/**
+	 * True if a subtype of tb in the project, or on its class path, might
+	 * declare a method called name. Unlike the other queries, this one also
+	 * works for classes without source.
+	 */
+	public static boolean isRedeclared(ITypeBinding tb, String name) {
+		tb = tb.getErasure();
+		String key = tb.getKey();
+		if (!subtypeNames.containsKey(key)) {
+			Set<String> names = null;
+			IJavaElement je = tb.getJavaElement();
+			if (je instanceof IType) {
+				try {
+					IType type = (IType) je;
+					ITypeHierarchy th = hierarchy(type);
+					names = new HashSet<String>();
+					for (IType subtype : th.getAllSubtypes(type)) {
+						addNames(subtype, names);
+					}
+				} catch (JavaModelException e) {
+					e.printStackTrace();
+					names = null;
+				}
+			}
+
+			subtypeNames.put(key, names);
+		}
+
+		Set<String> names = subtypeNames.get(key);
+		return names == null || names.contains(name);
+	}
+
+	/** True if no class in the project extends tb */
+	public static boolean isLeaf(ITypeBinding tb) {
+		Info info = info(tb);
+		return info != null && info.leaf;
+	}
+
+	/**
+	 * True if no subtype of the declaring class can end up with its own
+	 * version of mb
+	 */
+	public static boolean isLeaf(IMethodBinding mb) {
+		int modifiers = mb.getModifiers();
+		if (mb.isConstructor() || Modifier.isStatic(modifiers)
+				|| Modifier.isPrivate(modifiers)
+				|| Modifier.isAbstract(modifiers)) {
+			return false;
+		}
+
+		Info info = info(mb.getDeclaringClass());
+		return info != null && !info.names.contains(mb.getName());
+	}
+
+	/**
+	 * True if base is reached along a single path in type and every subtype
+	 * of it, so that type can inherit base non-virtually. Interfaces count as
+	 * deriving from Object, as they do in C++.
+	 */
+	public static boolean isSingleBase(ITypeBinding type, ITypeBinding base) {
+		Info info = info(type);
+		if (info == null) {
+			return false;
+		}
+
+		IJavaElement je = base.getErasure().getJavaElement();
+		if (!(je instanceof IType)) {
+			return false;
+		}
+
+		try {
+			ITypeHierarchy th = hierarchy((IType) je);
+			for (IType t : info.types) {
+				if (paths(th, t, (IType) je) != 1) {
+					return false;
+				}
+			}
+		} catch (JavaModelException e) {
+			e.printStackTrace();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * The class whose version of mb every receiver of static type tb runs,
+	 * or null if there may be more than one or it can't be named. Receivers
+	 * of an interface must all be of the class or its subclasses, and the
+	 * class must implement the interface itself, so that they can be cast to
+	 * it. The receivers must come from source, and a subinterface (that a
+	 * lambda might implement) rules out a call through an interface.
+	 */
+	public static IType implementation(ITypeBinding tb, IMethodBinding mb) {
+		int modifiers = mb.getModifiers();
+		if (mb.isConstructor() || Modifier.isStatic(modifiers)
+				|| Modifier.isPrivate(modifiers)) {
+			return null;
+		}
+
+		tb = tb.getErasure();
+		mb = mb.getMethodDeclaration();
+		String key = tb.getKey() + mb.getKey();
+		if (!implementations.containsKey(key)) {
+			IType ret = null;
+			try {
+				ret = computeImplementation(tb, mb);
+			} catch (JavaModelException e) {
+				e.printStackTrace();
+			}
+
+			implementations.put(key, ret);
+		}
+
+		return implementations.get(key);
+	}
+
+	private static IType computeImplementation(ITypeBinding tb,
+			IMethodBinding mb) throws JavaModelException {
+		if (tb.isInterface() && tb.getFunctionalInterfaceMethod() != null) {
+			return null;
+		}
+
+		IJavaElement je = tb.getJavaElement();
+		IJavaElement me = mb.getJavaElement();
+		if (!(je instanceof IType) || ((IType) je).isBinary()
+				|| !(me instanceof IMethod)) {
+			return null;
+		}
+
+		IType type = (IType) je;
+		ITypeHierarchy th = hierarchy(type);
+
+		List<IType> receivers = new ArrayList<IType>();
+		receivers.add(type);
+		receivers.addAll(Arrays.asList(th.getAllSubtypes(type)));
+
+		IType ret = null;
+		for (IType t : receivers) {
+			if (t.isBinary() || t.isInterface() && !t.equals(type)) {
+				return null;
+			}
+
+			if (t.isInterface() || Flags.isAbstract(t.getFlags())) {
+				continue;
+			}
+
+			IType impl = implementation(th, t, (IMethod) me);
+			if (impl == null || ret != null && !ret.equals(impl)) {
+				return null;
+			}
+
+			ret = impl;
+		}
+
+		if (ret == null || ret.isAnonymous() || ret.isLocal()) {
+			return null;
+		}
+
+		if (type.isInterface()
+				&& !Arrays.asList(th.getSuperInterfaces(ret)).contains(type)) {
+			return null;
+		}
+
+		return ret;
+	}
+
+	/**
+	 * The class whose version of method instances of t run, or null if a
+	 * class on the way declares a method that might override it in a way
+	 * that the names of the parameter types don't show (generics), or the
+	 * version is abstract or comes from an interface
+	 */
+	private static IType implementation(ITypeHierarchy th, IType t,
+			IMethod method) throws JavaModelException {
+		int n = method.getNumberOfParameters();
+		for (IType c = t; c != null; c = th.getSuperclass(c)) {
+			IMethod[] found = c.findMethods(method);
+			for (IMethod m : c.getMethods()) {
+				if (m.getElementName().equals(method.getElementName())
+						&& m.getNumberOfParameters() == n
+						&& (found == null || !Arrays.asList(found).contains(m))) {
+					return null;
+				}
+			}
+
+			if (found != null) {
+				return found.length == 1
+						&& !Flags.isAbstract(found[0].getFlags()) ? c : null;
+			}
+		}
+
+		return null;
+	}
+
+	/** The hierarchy of every type of the project and its class path */
+	private static ITypeHierarchy hierarchy(IType type)
+			throws JavaModelException {
+		IJavaProject project = type.getJavaProject();
+		ITypeHierarchy ret = hierarchies.get(project);
+		if (ret == null) {
+			IRegion region = JavaCore.newRegion();
+			region.add(project);
+			hierarchies.put(project,
+					ret = project.newTypeHierarchy(region, null));
+		}
+
+		return ret;
+	}
+
+	private static int paths(ITypeHierarchy th, IType t, IType base) {
+		if (t.equals(base)) {
+			return 1;
+		}
+
+		IType superclass = th.getSuperclass(t);
+		IType[] interfaces = th.getSuperInterfaces(t);
+
+		int ret = 0;
+		if (superclass != null) {
+			ret += paths(th, superclass, base);
+		} else if (interfaces.length == 0
+				&& !t.getFullyQualifiedName().equals(Object.class.getName())
+				&& base.getFullyQualifiedName().equals(
+						Object.class.getName())) {
+			ret += 1;
+		}
+
+		for (IType ib : interfaces) {
+			ret += paths(th, ib, base);
+		}
+
+		return ret;
+	}
+
+	private static Info info(ITypeBinding tb) {
+		if (tb == null || !tb.isClass()) {
+			return null;
+		}
+
+		tb = tb.getErasure();
+		String key = tb.getKey();
+		if (infos.containsKey(key)) {
+			return infos.get(key);
+		}
+
+		Info info = null;
+		try {
+			info = compute(tb);
+		} catch (JavaModelException e) {
+			e.printStackTrace();
+		}
+
+		infos.put(key, info);
+		return info;
+	}
+
+	private static Info compute(ITypeBinding tb) throws JavaModelException {
+		IJavaElement je = tb.getJavaElement();
+		if (!(je instanceof IType) || ((IType) je).isBinary()) {
+			return null;
+		}
+
+		IType type = (IType) je;
+		ITypeHierarchy th = hierarchy(type);
+
+		Info info = new Info();
+		IType[] subtypes = th.getAllSubtypes(type);
+		info.leaf = subtypes.length == 0;
+		info.types = new IType[subtypes.length + 1];
+		info.types[0] = type;
+		System.arraycopy(subtypes, 0, info.types, 1, subtypes.length);
+
+		for (IType subtype : subtypes) {
+			addNames(subtype, info.names);
+
+			if (subtype.getSuperInterfaceNames().length > 0) {
+				// Interface methods implemented by a super class get
+				// forwarders in the subtype
+				for (IType ib : th.getAllSuperInterfaces(subtype)) {
+					addNames(ib, info.names);
+				}
+			}
+		}
+
+		return info;
+	}
+
+	private static void addNames(IType type, Set<String> names)
+			throws JavaModelException {
+		for (IMethod m : type.getMethods()) {
+			names.add(m.getElementName());
+		}
+	}
+}
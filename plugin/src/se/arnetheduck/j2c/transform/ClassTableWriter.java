@@ -0,0 +1,181 @@
+package se.arnetheduck.j2c.transform;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+/**
+ * The table Class.forName finds class descriptors in.
+ *
+ * Classes are placed with a hash-and-displace perfect hash: names are first
+ * hashed into small buckets, and each bucket, largest first, gets the seed
+ * that makes a second hash put all its names in free slots. A lookup is two
+ * hashes of the name and one comparison. The hash is class_hash_ of
+ * class_info.hpp.
+ */
+public class ClassTableWriter {
+	public static final String NAME = "class_table.cpp";
+
+	/** Give up on a bucket and grow the table after this many seeds */
+	private static final int MAX_SEED = 1 << 16;
+
+	private static final String i1 = TransformUtil.indent(1);
+
+	public static class Info {
+		public final String name;
+		public final String qualified;
+		public final String include;
+
+		public Info(ITypeBinding tb) {
+			name = TransformUtil.className(tb);
+			qualified = CName.qualified(tb, true);
+			include = TransformUtil.include(tb);
+		}
+	}
+
+	private final IPath root;
+
+	public ClassTableWriter(IPath root) {
+		this.root = root;
+	}
+
+	public void write(Collection<Info> infos) throws IOException {
+		List<Info> classes = new ArrayList<Info>(infos);
+		int[] seeds = new int[Math.max(1, classes.size() / 4)];
+
+		Info[] slots;
+		int n = classes.size() + classes.size() / 4 + 1;
+		while (!place(classes, seeds, slots = new Info[n])) {
+			n *= 2;
+		}
+
+		PrintWriter pw = FileUtil.open(root.append("src").append(NAME)
+				.toFile());
+		try {
+			pw.println("// Generated - the classes Class.forName can find");
+			pw.println();
+			pw.println("#include <" + CName.CLASS_INFO + ".hpp>");
+			pw.println();
+
+			for (Info info : classes) {
+				pw.println(info.include);
+			}
+
+			pw.println();
+			pw.println("namespace");
+			pw.println("{");
+			pw.print(i1 + "const uint32_t seeds[] = {");
+			for (int i = 0; i < seeds.length; ++i) {
+				pw.print((i % 8 == 0 ? "\n" + i1 + i1 : " ") + seeds[i] + ",");
+			}
+
+			pw.println();
+			pw.println(i1 + "};");
+			pw.println();
+			pw.println(i1 + "const ::" + CName.CLASS_INFO
+					+ " *const slots[] = {");
+			for (Info info : slots) {
+				pw.println(i1
+						+ i1
+						+ (info == null ? "nullptr" : "&" + info.qualified
+								+ "::" + CName.CLASS_INFO_) + ",");
+			}
+
+			pw.println(i1 + "};");
+			pw.println("}");
+			pw.println();
+			pw.println("extern const ::class_table class_table_ = { seeds, "
+					+ seeds.length + ", slots, " + slots.length + " };");
+		} finally {
+			pw.close();
+		}
+	}
+
+	private static boolean place(List<Info> classes, int[] seeds, Info[] slots) {
+		List<List<Info>> buckets = new ArrayList<List<Info>>();
+		for (int i = 0; i < seeds.length; ++i) {
+			buckets.add(new ArrayList<Info>());
+		}
+
+		for (Info info : classes) {
+			buckets.get(index(hash(0, info.name), seeds.length)).add(info);
+		}
+
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < seeds.length; ++i) {
+			order.add(i);
+		}
+
+		final List<List<Info>> b = buckets;
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return b.get(o2).size() - b.get(o1).size();
+			}
+		});
+
+		for (int i : order) {
+			List<Info> bucket = buckets.get(i);
+			if (bucket.isEmpty()) {
+				break;
+			}
+
+			seeds[i] = seed(bucket, slots);
+			if (seeds[i] == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/** Find a seed that puts bucket in free slots and take them, or 0 */
+	private static int seed(List<Info> bucket, Info[] slots) {
+		int[] pos = new int[bucket.size()];
+		for (int seed = 1; seed < MAX_SEED; ++seed) {
+			boolean free = true;
+			for (int j = 0; j < pos.length && free; ++j) {
+				pos[j] = index(hash(seed, bucket.get(j).name), slots.length);
+				free = slots[pos[j]] == null;
+				for (int k = 0; k < j && free; ++k) {
+					free = pos[k] != pos[j];
+				}
+			}
+
+			if (free) {
+				for (int j = 0; j < pos.length; ++j) {
+					slots[pos[j]] = bucket.get(j);
+				}
+
+				return seed;
+			}
+		}
+
+		return 0;
+	}
+
+	/** Same as class_hash_ in class_info.hpp */
+	private static int hash(int seed, String s) {
+		int h = 0x811c9dc5 ^ seed;
+		for (int i = 0; i < s.length(); ++i) {
+			h ^= s.charAt(i);
+			h *= 0x01000193;
+		}
+
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	private static int index(int h, int n) {
+		return (int) ((h & 0xffffffffL) % n);
+	}
+}
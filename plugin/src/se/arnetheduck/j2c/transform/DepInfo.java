@@ -19,14 +19,21 @@ public class DepInfo {
 	private final Set<ITypeBinding> softDeps = new TreeSet<ITypeBinding>(
 			new BindingComparator());
 
+	/** Functional interfaces that lambdas are adapted to */
+	private final Set<ITypeBinding> lambdas = new TreeSet<ITypeBinding>(
+			new BindingComparator());
+
 	private boolean javaCast;
 	private boolean npc;
+	private boolean box;
 	private boolean atomic;
 
 	private boolean finally_;
 
 	private boolean synchronized_;
+	private boolean singleton;
 	private boolean fmod;
+	private boolean threadLocal;
 
 	public DepInfo(Transformer ctx) {
 		this.ctx = ctx;
@@ -108,6 +115,14 @@ public class DepInfo {
 		hard(ctx.resolve(NullPointerException.class));
 	}
 
+	public boolean needsBox() {
+		return box;
+	}
+
+	public void setBox() {
+		box = true;
+	}
+
 	public boolean needsAtomic() {
 		return atomic;
 	}
@@ -132,6 +147,14 @@ public class DepInfo {
 		synchronized_ = true;
 	}
 
+	public boolean needsSingleton() {
+		return singleton;
+	}
+
+	public void setNeedsSingleton() {
+		singleton = true;
+	}
+
 	public boolean needsFmod() {
 		return fmod;
 	}
@@ -140,6 +163,23 @@ public class DepInfo {
 		fmod = true;
 	}
 
+	public Set<ITypeBinding> getLambdas() {
+		return lambdas;
+	}
+
+	public void lambda(ITypeBinding fi) {
+		lambdas.add(fi.getErasure());
+		hard(fi);
+	}
+
+	public boolean needsThreadLocal() {
+		return threadLocal;
+	}
+
+	public void setNeedsThreadLocal() {
+		threadLocal = true;
+	}
+
 	public void printArrays(PrintWriter out) {
 		Set<ITypeBinding> done = new TreeSet<ITypeBinding>(
 				new BindingComparator());
@@ -0,0 +1,277 @@
+package se.arnetheduck.j2c.transform;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.NullLiteral;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SwitchStatement;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+
+/**
+ * Finds local variables whose objects never leave the method that allocates
+ * them.
+ *
+ * A local qualifies if it is only ever assigned fresh objects of a type whose
+ * constructors and methods are known not to leak this, and is otherwise only
+ * used as the receiver of calls whose result cannot alias it, or as the lock
+ * of a synchronized statement. Calling wait or notify on it counts as an
+ * escape, since they throw unless the lock is really taken.
+ */
+public class EscapeAnalysis {
+	/** Library types whose constructors and methods don't publish this */
+	private static final Set<String> nonLeaking = new HashSet<String>(
+			Arrays.asList("java.lang.StringBuffer",
+					"java.lang.StringBuilder", "java.util.ArrayList",
+					"java.util.HashMap", "java.util.Hashtable",
+					"java.util.Stack", "java.util.Vector"));
+
+	/** Methods of Object that must be called with the monitor held */
+	private static final Set<String> monitorMethods = new HashSet<String>(
+			Arrays.asList("wait", "notify", "notifyAll"));
+
+	/** True if expr is a local whose object cannot be seen by other threads */
+	public static boolean isThreadLocal(Expression expr) {
+		while (expr instanceof ParenthesizedExpression) {
+			expr = ((ParenthesizedExpression) expr).getExpression();
+		}
+
+		if (!(expr instanceof SimpleName)) {
+			return false;
+		}
+
+		IBinding b = ((SimpleName) expr).resolveBinding();
+		if (!(b instanceof IVariableBinding)) {
+			return false;
+		}
+
+		IVariableBinding vb = (IVariableBinding) b;
+		if (vb.isField() || vb.isParameter()) {
+			return false;
+		}
+
+		ASTNode body = body(expr);
+		return body != null && !escapes(vb, body, true);
+	}
+
+	/**
+	 * True if the object that node is initialized with can live on the stack
+	 * of the declaring method - the variable is never reassigned and the
+	 * object doesn't escape
+	 */
+	public static boolean isStackAllocatable(VariableDeclarationFragment node) {
+		if (!(node.getParent() instanceof VariableDeclarationStatement)
+				|| node.getParent().getParent() instanceof SwitchStatement
+				|| node.getExtraDimensions() != 0) {
+			return false;
+		}
+
+		Expression init = node.getInitializer();
+		while (init instanceof ParenthesizedExpression) {
+			init = ((ParenthesizedExpression) init).getExpression();
+		}
+
+		if (!(init instanceof ClassInstanceCreation)
+				|| !isNonLeaking((ClassInstanceCreation) init)) {
+			return false;
+		}
+
+		ASTNode body = body(node);
+		return body != null && !escapes(node.resolveBinding(), body, false);
+	}
+
+	/** True if ClassInstanceCreation creates an object that doesn't leak this */
+	public static boolean isNonLeaking(ClassInstanceCreation node) {
+		if (node.getAnonymousClassDeclaration() != null) {
+			return false;
+		}
+
+		ITypeBinding tb = node.resolveTypeBinding();
+		return tb != null
+				&& nonLeaking.contains(tb.getErasure().getQualifiedName());
+	}
+
+	/** The method or initializer body that node is in */
+	static ASTNode body(ASTNode node) {
+		for (ASTNode n = node.getParent(); n != null; n = n.getParent()) {
+			if (n instanceof MethodDeclaration) {
+				return ((MethodDeclaration) n).getBody();
+			}
+
+			if (n instanceof Initializer) {
+				return ((Initializer) n).getBody();
+			}
+
+			if (n instanceof AbstractTypeDeclaration
+					|| n instanceof AnonymousClassDeclaration) {
+				return null;
+			}
+		}
+
+		return null;
+	}
+
+	private static boolean escapes(final IVariableBinding vb, ASTNode body,
+			final boolean reassign) {
+		final boolean[] ret = { false };
+		body.accept(new ASTVisitor() {
+			private int nested;
+
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				nested++;
+				return true;
+			}
+
+			@Override
+			public void endVisit(AnonymousClassDeclaration node) {
+				nested--;
+			}
+
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				nested++;
+				return true;
+			}
+
+			@Override
+			public void endVisit(TypeDeclarationStatement node) {
+				nested--;
+			}
+
+			@Override
+			public boolean visit(LambdaExpression node) {
+				// Closures may outlive the scope of the local
+				nested++;
+				return true;
+			}
+
+			@Override
+			public void endVisit(LambdaExpression node) {
+				nested--;
+			}
+
+			@Override
+			public boolean visit(SimpleName node) {
+				IBinding b = node.resolveBinding();
+				if (b instanceof IVariableBinding
+						&& ((IVariableBinding) b).getVariableDeclaration()
+								.isEqualTo(vb.getVariableDeclaration())) {
+					if (nested > 0 || escapes(node, reassign)) {
+						ret[0] = true;
+					}
+				}
+
+				return false;
+			}
+		});
+
+		return ret[0];
+	}
+
+	private static boolean isFresh(Expression expr) {
+		while (expr instanceof ParenthesizedExpression) {
+			expr = ((ParenthesizedExpression) expr).getExpression();
+		}
+
+		return expr instanceof NullLiteral
+				|| expr instanceof ClassInstanceCreation
+				&& isNonLeaking((ClassInstanceCreation) expr);
+	}
+
+	/** True if this use of the variable might let its object escape */
+	private static boolean escapes(SimpleName node, boolean reassign) {
+		ASTNode parent = node.getParent();
+
+		if (parent instanceof VariableDeclarationFragment) {
+			VariableDeclarationFragment vdf = (VariableDeclarationFragment) parent;
+			if (vdf.getName() == node) {
+				return !(vdf.getParent() instanceof VariableDeclarationStatement)
+						|| vdf.getInitializer() != null
+						&& !isFresh(vdf.getInitializer());
+			}
+
+			return true;
+		}
+
+		if (parent instanceof Assignment) {
+			Assignment a = (Assignment) parent;
+			return !reassign || a.getLeftHandSide() != node
+					|| a.getOperator() != Assignment.Operator.ASSIGN
+					|| !(a.getParent() instanceof ExpressionStatement)
+					|| !isFresh(a.getRightHandSide());
+		}
+
+		if (parent instanceof SynchronizedStatement) {
+			return false;
+		}
+
+		if (parent instanceof MethodInvocation
+				&& ((MethodInvocation) parent).getExpression() == node) {
+			MethodInvocation mi = (MethodInvocation) parent;
+			return usesMonitor(mi) || aliases(mi);
+		}
+
+		return true;
+	}
+
+	/**
+	 * True if mi is a wait or notify, which need the monitor held - the lock
+	 * around them has to stay even if no other thread can see the object
+	 */
+	private static boolean usesMonitor(MethodInvocation mi) {
+		IMethodBinding mb = mi.resolveMethodBinding();
+		return mb == null || monitorMethods.contains(mb.getName())
+				&& TransformUtil.same(mb.getDeclaringClass(), Object.class);
+	}
+
+	/** True if the result of a call on the tracked object might refer to it */
+	private static boolean aliases(MethodInvocation mi) {
+		ITypeBinding rt = mi.resolveTypeBinding();
+		if (rt == null || rt.isPrimitive()
+				|| TransformUtil.same(rt, String.class)) {
+			return false;
+		}
+
+		// Elements that were put there - the object itself can't have been
+		IMethodBinding mb = mi.resolveMethodBinding();
+		if (mb != null
+				&& mb.getMethodDeclaration().getReturnType().isTypeVariable()) {
+			return false;
+		}
+
+		ASTNode parent = mi.getParent();
+		if (parent instanceof ExpressionStatement) {
+			return false;
+		}
+
+		// Chained calls such as sb.append(a).append(b)
+		if (parent instanceof MethodInvocation
+				&& ((MethodInvocation) parent).getExpression() == mi) {
+			return aliases((MethodInvocation) parent);
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,158 @@
+package se.arnetheduck.j2c.transform;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.IAnnotationBinding;
+import org.eclipse.jdt.core.dom.IMemberValuePairBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+
+/**
+ * Instance field order that wastes as little padding as possible.
+ *
+ * Fields are sorted by decreasing size, references before primitives of the
+ * same size, keeping declaration order otherwise. Fields annotated
+ * with @Contended are moved to the end and each group gets a cache line of
+ * padding on either side, so that no other field shares a line with it -
+ * objects are only aligned to 16 bytes, so aligning the fields themselves
+ * wouldn't do. Sizes are those of an LP64 target.
+ */
+public class FieldLayout {
+	public static final int CACHE_LINE = 64;
+
+	private static final int POINTER = 8;
+
+	/** Size (and alignment) of a field of type tb */
+	public static int size(ITypeBinding tb) {
+		if (!tb.isPrimitive()) {
+			return POINTER;
+		}
+
+		String name = tb.getName();
+		if (name.equals("boolean") || name.equals("byte")) {
+			return 1;
+		}
+
+		if (name.equals("char") || name.equals("short")) {
+			return 2;
+		}
+
+		if (name.equals("int") || name.equals("float")) {
+			return 4;
+		}
+
+		return 8;
+	}
+
+	/**
+	 * The @Contended group of vb, an empty string for a field that should be
+	 * alone on its line, or null if vb isn't contended
+	 */
+	public static String contendedGroup(IVariableBinding vb) {
+		for (IAnnotationBinding ab : vb.getAnnotations()) {
+			if (!ab.getAnnotationType().getName().equals("Contended")) {
+				continue;
+			}
+
+			for (IMemberValuePairBinding mvp : ab.getDeclaredMemberValuePairs()) {
+				if (mvp.getName().equals("value")
+						&& mvp.getValue() instanceof String) {
+					return (String) mvp.getValue();
+				}
+			}
+
+			return "";
+		}
+
+		return null;
+	}
+
+	/** True if a field of group should start a new cache line after prev */
+	public static boolean startsLine(String group, String prev) {
+		return group != null && (group.isEmpty() || !group.equals(prev));
+	}
+
+	/** fields in layout order */
+	public static List<IVariableBinding> pack(Collection<IVariableBinding> fields) {
+		List<IVariableBinding> ret = new ArrayList<IVariableBinding>();
+		Map<String, List<IVariableBinding>> groups = new LinkedHashMap<String, List<IVariableBinding>>();
+		List<IVariableBinding> isolated = new ArrayList<IVariableBinding>();
+
+		for (IVariableBinding vb : fields) {
+			String group = contendedGroup(vb);
+			if (group == null) {
+				ret.add(vb);
+			} else if (group.isEmpty()) {
+				isolated.add(vb);
+			} else {
+				List<IVariableBinding> l = groups.get(group);
+				if (l == null) {
+					groups.put(group, l = new ArrayList<IVariableBinding>());
+				}
+
+				l.add(vb);
+			}
+		}
+
+		Comparator<IVariableBinding> bySize = new Comparator<IVariableBinding>() {
+			@Override
+			public int compare(IVariableBinding o1, IVariableBinding o2) {
+				int s1 = size(o1.getType());
+				int s2 = size(o2.getType());
+				if (s1 != s2) {
+					return s2 - s1;
+				}
+
+				return (o1.getType().isPrimitive() ? 1 : 0)
+						- (o2.getType().isPrimitive() ? 1 : 0);
+			}
+		};
+
+		// Stable, so declaration order is kept among equals
+		Collections.sort(ret, bySize);
+		for (List<IVariableBinding> l : groups.values()) {
+			Collections.sort(l, bySize);
+			ret.addAll(l);
+		}
+
+		ret.addAll(isolated);
+		return ret;
+	}
+
+	/**
+	 * Bytes taken by fields laid out in the given order, padding included,
+	 * when they start at an aligned offset
+	 */
+	public static int size(List<IVariableBinding> fields, boolean contended) {
+		int offset = 0;
+		int align = 1;
+		String prev = null;
+		for (IVariableBinding vb : fields) {
+			int size = size(vb.getType());
+
+			if (contended) {
+				String group = contendedGroup(vb);
+				if (startsLine(group, prev)) {
+					offset += CACHE_LINE;
+				}
+
+				prev = group;
+			}
+
+			offset = (offset + size - 1) / size * size + size;
+			align = Math.max(align, size);
+		}
+
+		if (prev != null) {
+			offset += CACHE_LINE;
+		}
+
+		return (offset + align - 1) / align * align;
+	}
+}
@@ -3,11 +3,15 @@ package se.arnetheduck.j2c.transform;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,6 +40,9 @@ public class Header {
 	private final Map<String, List<IMethodBinding>> methods = new TreeMap<String, List<IMethodBinding>>();
 	private final List<IVariableBinding> fields = new ArrayList<IVariableBinding>();
 
+	/** Instance fields and their declarations, in source order */
+	private final Map<IVariableBinding, String> layoutFields = new LinkedHashMap<IVariableBinding, String>();
+
 	private String access;
 
 	private PrintWriter out;
@@ -64,6 +71,11 @@ public class Header {
 		fields.add(vb);
 	}
 
+	/** An instance field to be declared by printFields, in layout order */
+	public void layoutField(IVariableBinding vb, String decl) {
+		layoutFields.put(vb, decl);
+	}
+
 	public void write(IPath root, String body,
 			Collection<IVariableBinding> closures, boolean hasClinit,
 			boolean hasInit, Collection<ITypeBinding> nested, String access)
@@ -91,6 +103,10 @@ public class Header {
 				printlnd("#include <atomic>", includes);
 			}
 
+			if (deps.needsThreadLocal()) {
+				printlnd("#include <thread_local.hpp>", includes);
+			}
+
 			List<ITypeBinding> bases = TypeUtil.bases(type,
 					ctx.resolve(Object.class));
 
@@ -127,6 +143,7 @@ public class Header {
 			deps.printArrays(out);
 
 			printDefaultInitTag();
+			printClassInfoTag();
 
 			print(type.isInterface() ? "struct " : "class ");
 
@@ -248,6 +265,11 @@ public class Header {
 	private void printClassLiteral() {
 		access = printAccess(out, Modifier.PUBLIC, access);
 		println(i1 + "static ::java::lang::Class *class_();");
+		println(i1 + "static const ::" + CName.CLASS_INFO + " "
+				+ CName.CLASS_INFO_ + ";");
+		if (Reflection.isReflected(type)) {
+			println(i1 + "struct " + CName.REFLECT + ";");
+		}
 	}
 
 	/**
@@ -300,10 +322,16 @@ public class Header {
 		printFields();
 
 		printEnumMethods();
+		printOrdinals();
 		printDtor();
+		printAllocator();
+		printMonitor();
 		printGetClass();
 
 		printStringOperator();
+		printMakeClass();
+		printSlot();
+		printThreadFriend();
 
 		printFriends(nested);
 
@@ -321,6 +349,17 @@ public class Header {
 		println();
 	}
 
+	private void printClassInfoTag() {
+		println("struct " + CName.CLASS_INFO + ";");
+		if (TransformUtil.same(type, Class.class)) {
+			// The runtime makes the Class objects for the class descriptors
+			println("::java::lang::Class *make_class_(const "
+					+ CName.CLASS_INFO + " *info);");
+		}
+
+		println();
+	}
+
 	private void printDefaultInitCtor(Collection<IVariableBinding> closures) {
 		if (!TypeUtil.isClassLike(type) || type.isAnonymous()) {
 			return;
@@ -343,11 +382,53 @@ public class Header {
 		}
 	}
 
+	private void printMakeClass() {
+		if (TransformUtil.same(type, Class.class)) {
+			println(i1 + "friend ::java::lang::Class *::make_class_(const ::"
+					+ CName.CLASS_INFO + " *info);");
+
+			// So that the natives need no lookup
+			access = printAccess(out, Modifier.PUBLIC, access);
+			println(i1 + "const ::" + CName.CLASS_INFO + " *"
+					+ CName.DESCRIPTOR + " { nullptr };");
+		}
+	}
+
+	/** The private slot of the reflection objects, for the natives */
+	private void printSlot() {
+		if (!TransformUtil.same(type, Field.class)
+				&& !TransformUtil.same(type, Method.class)
+				&& !TransformUtil.same(type, Constructor.class)) {
+			return;
+		}
+
+		for (IVariableBinding vb : type.getDeclaredFields()) {
+			if (vb.getName().equals("slot")) {
+				access = printAccess(out, Modifier.PUBLIC, access);
+				println(i1 + "int32_t " + CName.SLOT + "() { return "
+						+ CName.of(vb) + "; }");
+			}
+		}
+	}
+
+	private void printThreadFriend() {
+		if (TransformUtil.same(type, ThreadGroup.class)) {
+			// Thread.currentThread makes the system group as the JVM does,
+			// with the private constructor
+			println(i1 + "friend class ::java::lang::Thread;");
+		}
+	}
+
 	private void printGetClass() {
 		if (!TypeUtil.isClassLike(type)) {
 			return;
 		}
 
+		// For the casts, see java_cast.hpp
+		access = printAccess(out, Modifier.PUBLIC, access);
+		println(i1 + "virtual const ::" + CName.CLASS_INFO + " *"
+				+ CName.DYNAMIC_INFO + "();");
+
 		access = printAccess(out, Modifier.PRIVATE, access);
 
 		println(i1 + "virtual ::java::lang::Class* " + CName.GET_CLASS + "();");
@@ -360,6 +441,25 @@ public class Header {
 		}
 	}
 
+	/** The lock word of synchronized, wait and notify - see j2c.cpp */
+	private void printMonitor() {
+		if (TransformUtil.same(type, Object.class)) {
+			deps.setNeedsAtomic();
+			access = printAccess(out, Modifier.PUBLIC, access);
+			println(i1 + "::std::atomic<uintptr_t> " + CName.MONITOR
+					+ " { 0 };");
+		}
+	}
+
+	/** All objects, arrays included, are allocated through the runtime */
+	private void printAllocator() {
+		if (TransformUtil.same(type, Object.class)) {
+			access = printAccess(out, Modifier.PUBLIC, access);
+			println(i1 + "static void *operator new(size_t size);");
+			println(i1 + "static void operator delete(void *p);");
+		}
+	}
+
 	/** Generate implicit enum methods */
 	private void printEnumMethods() {
 		if (!type.isEnum()) {
@@ -397,6 +497,33 @@ public class Header {
 				hasValueOf = true;
 			}
 		}
+
+		ITypeBinding at = type.createArrayType(1);
+		deps.soft(at);
+		access = printAccess(out, Modifier.PUBLIC, access);
+		println(i1 + "static " + TransformUtil.relativeRef(at, type, true)
+				+ " " + CName.VALUES + "();");
+	}
+
+	/** Ordinals that switches over the enum use as case labels */
+	private void printOrdinals() {
+		if (!type.isEnum()) {
+			return;
+		}
+
+		List<String> constants = TransformUtil.enumConstants(type);
+		if (constants == null) {
+			return;
+		}
+
+		access = printAccess(out, Modifier.PUBLIC, access);
+		println(i1 + "struct " + CName.ORDINALS + " {");
+		for (int i = 0; i < constants.size(); ++i) {
+			println(i1 + i1 + "static constexpr int32_t "
+					+ CName.keywords(constants.get(i)) + " = " + i + ";");
+		}
+
+		println(i1 + "};");
 	}
 
 	private void printConstructors(boolean hasInit,
@@ -741,6 +868,51 @@ public class Header {
 		for (IVariableBinding vb : fields) {
 			printField(vb);
 		}
+
+		printLayoutFields();
+	}
+
+	private void printLayoutFields() {
+		if (layoutFields.isEmpty()) {
+			return;
+		}
+
+		List<IVariableBinding> order = FieldLayout.pack(layoutFields.keySet());
+
+		List<IVariableBinding> plain = new ArrayList<IVariableBinding>();
+		for (IVariableBinding vb : layoutFields.keySet()) {
+			if (FieldLayout.contendedGroup(vb) == null) {
+				plain.add(vb);
+			}
+		}
+
+		ctx.packed(type, FieldLayout.size(plain, false)
+				- FieldLayout.size(FieldLayout.pack(plain), false));
+
+		String prev = null;
+		int pads = 0;
+		for (IVariableBinding vb : order) {
+			String group = FieldLayout.contendedGroup(vb);
+			if (FieldLayout.startsLine(group, prev)) {
+				printPadding(pads++);
+			}
+
+			prev = group;
+
+			access = printAccess(out, vb, access);
+			println(i1 + layoutFields.get(vb));
+		}
+
+		if (prev != null) {
+			printPadding(pads);
+		}
+	}
+
+	/** A cache line between @Contended fields and their neighbours */
+	private void printPadding(int n) {
+		// In the access section of the fields around it, to keep the order
+		println(i1 + "char " + CName.PADDING + n + "_["
+				+ FieldLayout.CACHE_LINE + "];");
 	}
 
 	private void printField(IVariableBinding vb) {
@@ -174,7 +174,11 @@ public class HeaderWriter extends TransformWriter {
 		List<VariableDeclarationFragment> fragments = node.fragments();
 
 		int modifiers = node.getModifiers();
-		if (TransformWriter.isAnySpecial(fragments)) {
+		if (ctx.packFields && isInstanceField(node)) {
+			for (VariableDeclarationFragment f : fragments) {
+				header.layoutField(f.resolveBinding(), layoutDecl(modifiers, f));
+			}
+		} else if (TransformWriter.isAnySpecial(fragments)) {
 			for (VariableDeclarationFragment f : fragments) {
 				IVariableBinding vb = f.resolveBinding();
 				boolean asMethod = TransformUtil.asMethod(vb);
@@ -191,6 +195,12 @@ public class HeaderWriter extends TransformWriter {
 				f.accept(this);
 
 				println(asMethod ? "_;" : ";");
+
+				if (ThreadLocals.isSlot(f)) {
+					deps.setNeedsThreadLocal();
+					printlni("static thread_local ::thread_local_slot_ "
+							+ CName.of(vb) + "_slot_;");
+				}
 			}
 		} else {
 			access = Header.printAccess(out, modifiers, access);
@@ -210,6 +220,38 @@ public class HeaderWriter extends TransformWriter {
 		return false;
 	}
 
+	/** True if the fields of node take up space in each instance */
+	private boolean isInstanceField(FieldDeclaration node) {
+		if (Modifier.isStatic(node.getModifiers()) || type.isInterface()) {
+			return false;
+		}
+
+		for (VariableDeclarationFragment f : (List<VariableDeclarationFragment>) node
+				.fragments()) {
+			if (TransformUtil.constexprValue(f) != null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/** Declaration of a single instance field, for Header to place */
+	private String layoutDecl(int modifiers, VariableDeclarationFragment f) {
+		PrintWriter old = out;
+		StringWriter sw = new StringWriter();
+		out = new PrintWriter(sw);
+
+		print(TransformUtil.varTypeCName(modifiers, f.resolveBinding()
+				.getType(), type, deps) + " ");
+		f.accept(this);
+		print(";");
+
+		out.close();
+		out = old;
+		return sw.toString();
+	}
+
 	@Override
 	public boolean visit(Initializer node) {
 		return false;
@@ -277,7 +319,7 @@ public class HeaderWriter extends TransformWriter {
 
 		print(")");
 
-		print(TransformUtil.throwsDecl(node.thrownExceptions()));
+		print(TransformUtil.throwsDecl(node.thrownExceptionTypes()));
 
 		print(TransformUtil.methodSpecifiers(mb));
 
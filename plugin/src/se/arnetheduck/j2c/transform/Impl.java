@@ -4,7 +4,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -19,8 +24,11 @@ import org.eclipse.jdt.core.dom.Modifier;
 public class Impl {
 	private static final String JAVA_CAST_HPP = "/se/arnetheduck/j2c/resources/java_cast.hpp";
 	private static final String NPC_HPP = "/se/arnetheduck/j2c/resources/npc.hpp";
+	private static final String BOX_HPP = "/se/arnetheduck/j2c/resources/box.hpp";
 	private static final String FINALLY_HPP = "/se/arnetheduck/j2c/resources/finally.hpp";
 	private static final String SYNCHRONIZED_HPP = "/se/arnetheduck/j2c/resources/synchronized.hpp";
+	private static final String LAMBDA_HPP = "/se/arnetheduck/j2c/resources/lambda.hpp";
+	private static final String SINGLETON_HPP = "/se/arnetheduck/j2c/resources/singleton.hpp";
 
 	private static final String i1 = TransformUtil.indent(1);
 
@@ -51,6 +59,8 @@ public class Impl {
 
 		// Extras need to be collected first to get the deps
 		String extras = getExtras();
+		String classLiteral = getClassLiteral();
+		String lambdas = getLambdas();
 
 		try {
 			out = FileUtil.open(TransformUtil.implPath(root, type, suffix)
@@ -67,17 +77,21 @@ public class Impl {
 			deps.printArrays(out);
 			printJavaCast();
 			printNpc();
+			printBox();
 			printFinally();
 			printSynchronized();
+			printSingleton();
+			print(lambdas);
 
 			print(body);
 
-			printClassLiteral();
+			print(classLiteral);
 			printClinit(cinit, clinit);
 
 			print(extras);
 
 			printDtor();
+			printAllocator();
 			printGetClass();
 		} finally {
 			if (out != null) {
@@ -105,6 +119,8 @@ public class Impl {
 		printlnd(TransformUtil.include(type), includes);
 		println();
 
+		printlnd("#include <" + CName.CLASS_INFO + ".hpp>", includes);
+
 		for (ITypeBinding dep : deps.getHardDeps()) {
 			if (dep.isEqualTo(type)) {
 				continue;
@@ -172,27 +188,341 @@ public class Impl {
 		println();
 	}
 
+	private String getClassLiteral() {
+		StringWriter sw = new StringWriter();
+		out = new PrintWriter(sw);
+
+		printClassLiteral();
+
+		out.close();
+		out = null;
+		return sw.toString();
+	}
+
 	private void printClassLiteral() {
-		if (isNative) {
+		// Arrays are described by Array.hpp and friends
+		if (isNative || type.isArray()) {
 			return;
 		}
 
-		println("extern java::lang::Class* class_(const char16_t* c, int n);");
+		printClassInfo();
+
+		println("java::lang::Class* " + qcname + "::class_()");
+		println("{");
+		println(i1 + "return ::class_(&" + CName.CLASS_INFO_ + ");");
+		println("}");
 		println();
-		if (TransformUtil.isPrimitiveArray(type)) {
-			println("template<>");
+	}
+
+	/** The constant-initialized descriptor that class_() and forName use */
+	private void printClassInfo() {
+		boolean reflected = Reflection.isReflected(type);
+		if (reflected) {
+			printMembers();
 		}
-		println("java::lang::Class* " + qcname + "::class_()");
+
+		String interfaces = type.getInterfaces().length == 0 ? "nullptr"
+				: "class_interfaces_";
+
+		// Every interface of the class, and its superclasses for the display
+		Map<String, ITypeBinding> all = new LinkedHashMap<String, ITypeBinding>();
+		for (ITypeBinding tb : TypeUtil.allBases(type, null)) {
+			if (tb.isInterface()) {
+				all.put(CName.qualified(tb.getErasure(), true), tb.getErasure());
+			}
+		}
+
+		List<ITypeBinding> display = TypeUtil.superClasses(type);
+		Collections.reverse(display);
+		display.add(type);
+
+		String allInterfaces = all.isEmpty() ? "nullptr"
+				: "class_all_interfaces_";
+		String displayInfo = type.isInterface() ? "nullptr" : "class_display_";
+
+		// An interface without superinterfaces needs no tables
+		if (!all.isEmpty() || !type.isInterface()) {
+			println("namespace");
+			println("{");
+			if (type.getInterfaces().length > 0) {
+				printInfos(interfaces, Arrays.asList(type.getInterfaces()),
+						true);
+			}
+
+			if (!all.isEmpty()) {
+				printInfos(allInterfaces, all.values(), true);
+			}
+
+			if (!type.isInterface()) {
+				printInfos(displayInfo, display, false);
+			}
+
+			println("}");
+			println();
+		}
+
+		ITypeBinding sb = type.getSuperclass();
+		String superInfo = sb == null ? "nullptr" : "&"
+				+ CName.qualified(sb.getErasure(), true) + "::"
+				+ CName.CLASS_INFO_;
+
+		// Object.clone copies as many bytes as the size says
+		String size = type.isInterface() ? "0" : "sizeof(" + qcname + ")";
+
+		// An interface has its own bit, a class those of all it implements
+		String bits = "";
+		for (ITypeBinding tb : type.isInterface() ? Collections
+				.singletonList(type.getErasure()) : all.values()) {
+			bits += (bits.isEmpty() ? "" : " | ") + "::interface_bit_(u\""
+					+ TransformUtil.className(tb) + "\")";
+		}
+
+		String name = TransformUtil.className(type);
+		println("const ::" + CName.CLASS_INFO + " " + qcname + "::"
+				+ CName.CLASS_INFO_ + " = {");
+		println(i1 + "u\"" + name + "\", " + name.length() + ", " + superInfo
+				+ ", " + interfaces + ", nullptr, " + type.isInterface()
+				+ ", " + size + ",");
+		println(i1 + (type.isInterface() ? 0 : display.size() - 1) + ", "
+				+ displayInfo + ", " + (bits.isEmpty() ? "0" : bits) + ", "
+				+ allInterfaces + (reflected ? ", &class_members_" : ""));
+		println("};");
+		println();
+	}
+
+	/** A table of descriptors, null terminated if terminate is set */
+	private void printInfos(String table, Collection<ITypeBinding> types,
+			boolean terminate) {
+		print(i1 + "const ::" + CName.CLASS_INFO + " *const " + table
+				+ "[] = { ");
+		String sep = "";
+		for (ITypeBinding tb : types) {
+			print(sep + "&" + CName.qualified(tb.getErasure(), true) + "::"
+					+ CName.CLASS_INFO_);
+			sep = ", ";
+		}
+
+		println(terminate ? sep + "nullptr };" : " };");
+	}
+
+	/**
+	 * The thunks and tables for reflection - the thunks are members of a
+	 * nested class so that they may use private members
+	 */
+	private void printMembers() {
+		List<IVariableBinding> fields = Reflection.fields(type);
+		List<IMethodBinding> methods = Reflection.methods(type, false);
+		List<IMethodBinding> ctors = Reflection.isConstructible(type) ? Reflection
+				.methods(type, true) : new ArrayList<IMethodBinding>();
+
+		hardDep(ctx.resolve(Object.class).createArrayType(1));
+
+		String self = CName.qualified(type, true);
+		println("struct " + qcname + "::" + CName.REFLECT);
+		println("{");
+		for (int i = 0; i < fields.size(); ++i) {
+			printFieldThunk("f" + i, self, fields.get(i));
+		}
+
+		for (int i = 0; i < methods.size(); ++i) {
+			printMethodThunk("m" + i, self, methods.get(i));
+		}
+
+		for (int i = 0; i < ctors.size(); ++i) {
+			printMethodThunk("c" + i, self, ctors.get(i));
+		}
+
+		println("};");
+		println();
+
+		println("namespace");
 		println("{");
-		println("    static ::java::lang::Class* c = ::class_(u\""
-				+ type.getQualifiedName() + "\", "
-				+ type.getQualifiedName().length() + ");");
-		println("    return c;");
+		for (int i = 0; i < methods.size(); ++i) {
+			printParameterTypes("m" + i, methods.get(i));
+		}
+
+		for (int i = 0; i < ctors.size(); ++i) {
+			printParameterTypes("c" + i, ctors.get(i));
+		}
 
+		String thunks = qcname + "::" + CName.REFLECT + "::";
+		String fieldTable = printTable("field_info", "fields", fields.size());
+		for (int i = 0; i < fields.size(); ++i) {
+			IVariableBinding vb = fields.get(i);
+			println(i1 + i1 + "{ u\"" + vb.getName() + "\", u\""
+					+ TransformUtil.className(vb.getType()) + "\", "
+					+ vb.getModifiers() + ", &" + thunks + "f" + i + "_get, "
+					+ (Modifier.isFinal(vb.getModifiers()) ? "nullptr" : "&"
+							+ thunks + "f" + i + "_set") + " },");
+		}
+
+		endTable(fieldTable);
+
+		String methodTable = printTable("method_info", "methods",
+				methods.size());
+		for (int i = 0; i < methods.size(); ++i) {
+			printMethodInfo("m" + i, "u\"" + methods.get(i).getName() + "\"",
+					methods.get(i), thunks);
+		}
+
+		endTable(methodTable);
+
+		String ctorTable = printTable("method_info", "constructors",
+				ctors.size());
+		for (int i = 0; i < ctors.size(); ++i) {
+			printMethodInfo("c" + i, "nullptr", ctors.get(i), thunks);
+		}
+
+		endTable(ctorTable);
+
+		println(i1 + "const ::class_members class_members_ = { " + fieldTable
+				+ ", " + fields.size() + ", " + methodTable + ", "
+				+ methods.size() + ", " + ctorTable + ", " + ctors.size()
+				+ " };");
 		println("}");
 		println();
 	}
 
+	private void printFieldThunk(String thunk, String self, IVariableBinding vb) {
+		String name = CName.of(vb);
+		String field;
+		if (!TransformUtil.isStatic(vb)) {
+			deps.setNpc();
+			field = "npc(::" + CName.ARGUMENT + "< " + self + "* >(o))->" + name;
+		} else if (TransformUtil.asMethod(vb)) {
+			field = self + "::" + name + "()";
+		} else {
+			field = self + "::" + name;
+		}
+
+		String init = TransformUtil.isStatic(vb) && !TransformUtil.asMethod(vb)
+				&& TypeUtil.isClassLike(type) ? self + "::"
+				+ CName.STATIC_INIT + "(); " : "";
+
+		println(i1 + "static ::java::lang::Object *" + thunk
+				+ "_get(::java::lang::Object *o) { " + init + "return "
+				+ box(vb.getType(), field) + "; }");
+
+		// Final fields may be constants, or const in C++
+		if (!Modifier.isFinal(vb.getModifiers())) {
+			println(i1 + "static void " + thunk
+					+ "_set(::java::lang::Object *o, ::java::lang::Object *v) { "
+					+ init + field + " = " + unbox(vb.getType(), "v") + "; }");
+		}
+	}
+
+	private void printMethodThunk(String thunk, String self, IMethodBinding mb) {
+		if (Modifier.isAbstract(mb.getModifiers())) {
+			return;
+		}
+
+		mb = mb.getMethodDeclaration();
+		println(i1 + "static ::java::lang::Object *" + thunk
+				+ "(::java::lang::Object *o, ::java::lang::ObjectArray *a)");
+		println(i1 + "{");
+		print(i1 + i1);
+
+		String call;
+		if (mb.isConstructor()) {
+			call = "new " + self + "(";
+		} else if (TransformUtil.isStatic(mb)) {
+			call = self + "::" + CName.of(mb) + "(";
+		} else {
+			deps.setNpc();
+			call = "npc(dynamic_cast< " + self + "* >(o))->" + CName.of(mb)
+					+ "(";
+		}
+
+		ITypeBinding[] pts = mb.getParameterTypes();
+		for (int i = 0; i < pts.length; ++i) {
+			call += (i == 0 ? "" : ", ") + unbox(pts[i], "a->p[" + i + "]");
+		}
+
+		call += ")";
+
+		ITypeBinding rt = mb.getReturnType();
+		if (mb.isConstructor()) {
+			println("return " + call + ";");
+		} else if (TransformUtil.isVoid(rt)) {
+			println(call + ";");
+			println(i1 + i1 + "return nullptr;");
+		} else {
+			println("return " + box(rt, call) + ";");
+		}
+
+		println(i1 + "}");
+	}
+
+	/**
+	 * Take a value of type tb out of the Object expression o, which must be of
+	 * that type or, for primitives, a box that widens to it
+	 */
+	private String unbox(ITypeBinding tb, String o) {
+		if (!tb.isPrimitive()) {
+			tb = tb.getErasure();
+			hardDep(tb);
+			return "::" + CName.ARGUMENT + "< "
+					+ TransformUtil.qualifiedRef(tb, true) + " >(" + o + ")";
+		}
+
+		return "::" + CName.UNBOX + tb.getName() + "_(" + o + ")";
+	}
+
+	/** Make an Object out of the expression value of type tb */
+	private String box(ITypeBinding tb, String value) {
+		if (!tb.isPrimitive()) {
+			hardDep(tb.getErasure());
+			return value;
+		}
+
+		ITypeBinding box = ctx.resolve(TransformUtil.primitives.get(tb
+				.getName()));
+		hardDep(box);
+		if (BoxAnalysis.isCached(box)) {
+			// The same small value cache as boxing in translated code
+			deps.setBox();
+			return "::" + CName.BOX + "< " + CName.qualified(box, true)
+					+ " >(" + value + ")";
+		}
+
+		return CName.qualified(box, true) + "::valueOf(" + value + ")";
+	}
+
+	private void printParameterTypes(String thunk, IMethodBinding mb) {
+		print(i1 + "const char16_t *const " + thunk + "_parameters[] = { ");
+		for (ITypeBinding pt : mb.getParameterTypes()) {
+			print("u\"" + TransformUtil.className(pt) + "\", ");
+		}
+
+		println("nullptr };");
+	}
+
+	private void printMethodInfo(String thunk, String name, IMethodBinding mb,
+			String thunks) {
+		boolean isAbstract = Modifier.isAbstract(mb.getModifiers());
+		println(i1 + i1 + "{ " + name + ", u\""
+				+ TransformUtil.className(mb.getReturnType()) + "\", "
+				+ thunk + "_parameters, " + mb.getModifiers() + ", "
+				+ (isAbstract ? "nullptr" : "&" + thunks + thunk) + " },");
+	}
+
+	/** Start a table of count elements and return the expression for it */
+	private String printTable(String element, String name, int count) {
+		if (count == 0) {
+			return "nullptr";
+		}
+
+		println(i1 + "const ::" + element + " " + name + "[] = {");
+		return name;
+	}
+
+	private void endTable(String table) {
+		if (!table.equals("nullptr")) {
+			println(i1 + "};");
+			println();
+		}
+	}
+
 	private void printGetClass() {
 		if (isNative || !type.isClass() && !type.isEnum() && !type.isArray()) {
 			return;
@@ -207,14 +537,49 @@ public class Impl {
 		println(i1 + "return class_();");
 		println("}");
 		println();
+
+		// Array.hpp and friends define it for arrays
+		if (type.isArray()) {
+			return;
+		}
+
+		println("const ::" + CName.CLASS_INFO + " *" + qcname + "::"
+				+ CName.DYNAMIC_INFO + "()");
+		println("{");
+		println(i1 + "return &" + CName.CLASS_INFO_ + ";");
+		println("}");
+		println();
 	}
 
 	private void printDtor() {
 		if (isNative || !TransformUtil.same(type, Object.class)) {
 			return;
 		}
+		println("extern void free_monitor_(java::lang::Object *o);");
+		println();
 		println("java::lang::Object::~Object()");
 		println("{");
+		println(i1 + "::free_monitor_(this);");
+		println("}");
+		println();
+	}
+
+	private void printAllocator() {
+		if (isNative || !TransformUtil.same(type, Object.class)) {
+			return;
+		}
+
+		println("extern void *alloc_object(size_t size);");
+		println("extern void free_object(void *p);");
+		println();
+		println("void *java::lang::Object::operator new(size_t size)");
+		println("{");
+		println(i1 + "return ::alloc_object(size);");
+		println("}");
+		println();
+		println("void java::lang::Object::operator delete(void *p)");
+		println("{");
+		println(i1 + "::free_object(p);");
 		println("}");
 		println();
 	}
@@ -241,19 +606,17 @@ public class Impl {
 			}
 		}
 
+		List<IVariableBinding> constants = enumConstants();
+		if (!isNative) {
+			printValues(constants);
+		}
+
 		for (IMethodBinding mb : type.getDeclaredMethods()) {
 			if (!hasValues && TransformUtil.isValues(mb, type)) {
-				deps.hard(type.createArrayType(1));
 				TransformUtil.printSignature(ctx, out, type, mb, deps, true);
 				println();
 				println("{");
-				println(i1 + "return new " + qcname + "Array({");
-				for (IVariableBinding vb : type.getDeclaredFields()) {
-					if (!vb.isEnumConstant())
-						continue;
-					println(i1 + i1 + CName.of(vb) + ",");
-				}
-				println(i1 + "});");
+				println(i1 + "return " + CName.VALUES + "()->clone();");
 				println("}");
 				println();
 				hasValues = true;
@@ -264,15 +627,7 @@ public class Impl {
 				println();
 				println("{");
 				String arg = TransformUtil.paramName(mb, 0);
-				for (IVariableBinding vb : type.getDeclaredFields()) {
-					if (!vb.isEnumConstant())
-						continue;
-
-					println(i1 + "if(" + CName.of(vb) + "->toString()->equals("
-							+ arg + "))");
-					println(i1 + i1 + "return " + CName.of(vb) + ";");
-				}
-
+				printValueOf(constants, arg);
 				println(i1 + "throw new " + CName.relative(iae, type, true)
 						+ "(" + arg + ");");
 				println("}");
@@ -282,6 +637,157 @@ public class Impl {
 		}
 	}
 
+	/** Enum constants in ordinal order */
+	private List<IVariableBinding> enumConstants() {
+		Map<String, IVariableBinding> fields = new LinkedHashMap<String, IVariableBinding>();
+		for (IVariableBinding vb : type.getDeclaredFields()) {
+			if (vb.isEnumConstant()) {
+				fields.put(vb.getName(), vb);
+			}
+		}
+
+		List<String> names = TransformUtil.enumConstants(type);
+		if (names == null) {
+			return new ArrayList<IVariableBinding>(fields.values());
+		}
+
+		List<IVariableBinding> ret = new ArrayList<IVariableBinding>();
+		for (String name : names) {
+			if (fields.containsKey(name)) {
+				ret.add(fields.get(name));
+			}
+		}
+
+		return ret;
+	}
+
+	/** The array that values() copies, built once */
+	private void printValues(List<IVariableBinding> constants) {
+		ITypeBinding at = type.createArrayType(1);
+		deps.hard(at);
+		String ref = TransformUtil.qualifiedRef(at, false);
+		println(ref + " " + qcname + "::" + CName.VALUES + "()");
+		println("{");
+		println(i1 + CName.STATIC_INIT + "();");
+		println(i1 + "static " + ref + " values = new " + qcname + "Array({");
+		for (IVariableBinding vb : constants) {
+			println(i1 + i1 + CName.of(vb) + ",");
+		}
+		println(i1 + "});");
+		println(i1 + "return values;");
+		println("}");
+		println();
+	}
+
+	/**
+	 * Look the name up in a table indexed by its hash code - the table size
+	 * is chosen so that no two constants share a slot. When that would take
+	 * more than a few slots per constant, the hash codes are sorted and
+	 * searched instead.
+	 */
+	private void printValueOf(List<IVariableBinding> constants, String arg) {
+		int size = perfectHashSize(constants);
+		if (size < 0) {
+			printValueOfSearch(constants, arg);
+			return;
+		}
+
+		IVariableBinding[] slots = new IVariableBinding[size];
+		for (IVariableBinding vb : constants) {
+			slots[slot(vb.getName().hashCode(), size)] = vb;
+		}
+
+		deps.setNpc();
+		println(i1 + CName.STATIC_INIT + "();");
+		println(i1 + "static " + qcname + "* const table[" + size + "] = {");
+		for (IVariableBinding vb : slots) {
+			println(i1 + i1 + (vb == null ? "nullptr" : CName.of(vb)) + ",");
+		}
+		println(i1 + "};");
+		println();
+		println(i1 + "auto h = " + CName.NPC + "(" + arg + ")->hashCode();");
+		println(i1 + "auto c = table[(h ^ int32_t(uint32_t(h) >> 16)) & "
+				+ (size - 1) + "];");
+		println(i1 + "if(c != nullptr && c->name()->equals(" + arg + "))");
+		println(i1 + i1 + "return c;");
+		println();
+	}
+
+	/** Binary search of the hash codes, then compare the names that match */
+	private void printValueOfSearch(List<IVariableBinding> constants,
+			String arg) {
+		List<IVariableBinding> sorted = new ArrayList<IVariableBinding>(
+				constants);
+		Collections.sort(sorted, new Comparator<IVariableBinding>() {
+			@Override
+			public int compare(IVariableBinding o1, IVariableBinding o2) {
+				int h1 = o1.getName().hashCode();
+				int h2 = o2.getName().hashCode();
+				return h1 < h2 ? -1 : h1 == h2 ? 0 : 1;
+			}
+		});
+
+		int n = sorted.size();
+		deps.setNpc();
+		println(i1 + CName.STATIC_INIT + "();");
+		println(i1 + "static const int32_t hashes[" + n + "] = {");
+		for (IVariableBinding vb : sorted) {
+			println(i1 + i1
+					+ TransformUtil.checkConstant(vb.getName().hashCode(),
+							false) + ",");
+		}
+		println(i1 + "};");
+		println(i1 + "static " + qcname + "* const table[" + n + "] = {");
+		for (IVariableBinding vb : sorted) {
+			println(i1 + i1 + CName.of(vb) + ",");
+		}
+		println(i1 + "};");
+		println();
+		println(i1 + "auto h = " + CName.NPC + "(" + arg + ")->hashCode();");
+		println(i1 + "int32_t lo = 0, hi = " + n + ";");
+		println(i1 + "while(lo < hi) {");
+		println(i1 + i1 + "auto mid = (lo + hi) / 2;");
+		println(i1 + i1 + "if(hashes[mid] < h)");
+		println(i1 + i1 + i1 + "lo = mid + 1;");
+		println(i1 + i1 + "else");
+		println(i1 + i1 + i1 + "hi = mid;");
+		println(i1 + "}");
+		println();
+		println(i1 + "for(; lo < " + n + " && hashes[lo] == h; ++lo) {");
+		println(i1 + i1 + "if(table[lo]->name()->equals(" + arg + "))");
+		println(i1 + i1 + i1 + "return table[lo];");
+		println(i1 + "}");
+		println();
+	}
+
+	private static int slot(int hash, int size) {
+		return (hash ^ (hash >>> 16)) & (size - 1);
+	}
+
+	/**
+	 * Smallest power of two table without collisions, or -1 if that would
+	 * take more than four slots per constant
+	 */
+	private static int perfectHashSize(List<IVariableBinding> constants) {
+		int max = Math.max(1, constants.size() * 4);
+		outer: for (int size = Integer.highestOneBit(Math.max(1,
+				constants.size() * 2 - 1)); size <= max; size <<= 1) {
+			boolean[] used = new boolean[size];
+			for (IVariableBinding vb : constants) {
+				int slot = slot(vb.getName().hashCode(), size);
+				if (used[slot]) {
+					continue outer;
+				}
+
+				used[slot] = true;
+			}
+
+			return size;
+		}
+
+		return -1;
+	}
+
 	private void printSuperCalls() {
 		if (isNative || !TypeUtil.isClassLike(type)) {
 			return;
@@ -414,6 +920,159 @@ public class Impl {
 		}
 	}
 
+	private String getLambdas() {
+		if (deps.getLambdas().isEmpty()) {
+			return "";
+		}
+
+		StringWriter sw = new StringWriter();
+		out = new PrintWriter(sw);
+
+		print(FileUtil.readResource(LAMBDA_HPP));
+		println();
+		println("namespace");
+		println("{");
+		for (ITypeBinding fi : deps.getLambdas()) {
+			printAdapter(fi);
+		}
+		println("}");
+		println();
+
+		out.close();
+		out = null;
+		return sw.toString();
+	}
+
+	/**
+	 * The adapter implements every abstract method of fi by calling the
+	 * closure, which takes and returns the types of the functional method
+	 */
+	private void printAdapter(ITypeBinding fi) {
+		String name = Lambdas.adapter(fi);
+		IMethodBinding sam = Lambdas.method(fi);
+
+		printAdapterInfo(fi, name);
+
+		println(i1 + "template<typename F>");
+		println(i1 + "struct " + name + " final");
+		println(i1 + i1 + ": public " + CName.qualified(fi, true));
+		println(i1 + "{");
+		println(i1 + i1 + name + "(F f) : f(f) { }");
+		println();
+		println(i1 + i1 + "const ::" + CName.CLASS_INFO + " *"
+				+ CName.DYNAMIC_INFO + "() override { return &" + name
+				+ "_info_; }");
+
+		Set<String> done = new HashSet<String>();
+		for (IMethodBinding mb : Lambdas.methods(ctx, fi)) {
+			ITypeBinding rt = Lambdas.returnType(mb);
+			hardDep(rt);
+
+			StringBuilder sig = new StringBuilder(CName.of(mb) + "(");
+			for (int i = 0; i < mb.getParameterTypes().length; ++i) {
+				ITypeBinding pb = mb.getParameterTypes()[i];
+				hardDep(pb);
+				sig.append(i > 0 ? ", " : "");
+				sig.append(TransformUtil.qualifiedRef(pb, true) + " "
+						+ TransformUtil.paramName(mb, i));
+			}
+			sig.append(")");
+
+			if (!done.add(sig.toString())) {
+				continue;
+			}
+
+			println();
+			println(i1 + i1 + TransformUtil.qualifiedRef(rt, true) + " "
+					+ sig + " override");
+			println(i1 + i1 + "{");
+			print(i1 + i1 + i1);
+
+			ITypeBinding srt = Lambdas.returnType(sam);
+			boolean cast = !TransformUtil.isVoid(rt)
+					&& !srt.getErasure().isAssignmentCompatible(rt.getErasure());
+			if (!TransformUtil.isVoid(rt)) {
+				print("return ");
+			}
+
+			if (cast) {
+				adapterCast(rt);
+			}
+
+			print("f(");
+			for (int i = 0; i < mb.getParameterTypes().length; ++i) {
+				ITypeBinding pb = mb.getParameterTypes()[i].getErasure();
+				ITypeBinding spb = sam.getParameterTypes()[i].getErasure();
+				print(i > 0 ? ", " : "");
+				boolean pcast = !pb.isAssignmentCompatible(spb);
+				if (pcast) {
+					adapterCast(spb);
+				}
+
+				print(TransformUtil.paramName(mb, i));
+				if (pcast) {
+					print(")");
+				}
+			}
+
+			println(cast ? "));" : ");");
+			println(i1 + i1 + "}");
+		}
+
+		println();
+		println(i1 + "private:");
+		println(i1 + i1 + "::java::lang::Class* " + CName.GET_CLASS
+				+ "() override { return ::class_(&" + name + "_info_); }");
+		println();
+		println(i1 + i1 + "F f;");
+		println(i1 + "};");
+		println();
+	}
+
+	/** The descriptor that the adapters of fi share, a class like Object */
+	private void printAdapterInfo(ITypeBinding fi, String name) {
+		Map<String, ITypeBinding> all = new LinkedHashMap<String, ITypeBinding>();
+		all.put(CName.qualified(fi.getErasure(), true), fi.getErasure());
+		for (ITypeBinding tb : TypeUtil.interfaces(fi)) {
+			all.put(CName.qualified(tb.getErasure(), true), tb.getErasure());
+		}
+
+		String bits = "";
+		for (ITypeBinding tb : all.values()) {
+			bits += (bits.isEmpty() ? "" : " | ") + "::interface_bit_(u\""
+					+ TransformUtil.className(tb) + "\")";
+		}
+
+		ITypeBinding object = ctx.resolve(Object.class);
+		String info = "::" + CName.CLASS_INFO;
+		String className = TransformUtil.className(fi.getErasure())
+				+ "$$Lambda";
+
+		println(i1 + "extern const " + info + " " + name + "_info_;");
+		printInfos(name + "_interfaces_",
+				Collections.singletonList(fi.getErasure()), true);
+		printInfos(name + "_all_interfaces_", all.values(), true);
+		println(i1 + "const " + info + " *const " + name + "_display_[] = { &"
+				+ CName.qualified(object, true) + "::" + CName.CLASS_INFO_
+				+ ", &" + name + "_info_ };");
+		println(i1 + "const " + info + " " + name + "_info_ = {");
+		println(i1 + i1 + "u\"" + className + "\", " + className.length()
+				+ ", &" + CName.qualified(object, true) + "::"
+				+ CName.CLASS_INFO_ + ", " + name + "_interfaces_, nullptr, "
+				+ "false, 0,");
+		println(i1 + i1 + "1, " + name + "_display_, " + bits + ", " + name
+				+ "_all_interfaces_");
+		println(i1 + "};");
+		println();
+	}
+
+	private void adapterCast(ITypeBinding target) {
+		hardDep(target);
+		deps.setJavaCast();
+		print(CName.JAVA_CAST + "< " + TransformUtil.qualifiedRef(target, true)
+				+ " >(");
+	}
+
 	private void printJavaCast() {
 		if (!deps.needsJavaCast()) {
 			return;
@@ -430,6 +1089,14 @@ public class Impl {
 		print(FileUtil.readResource(NPC_HPP));
 	}
 
+	private void printBox() {
+		if (!deps.needsBox()) {
+			return;
+		}
+
+		print(FileUtil.readResource(BOX_HPP));
+	}
+
 	private void printFinally() {
 		if (!deps.needsFinally()) {
 			return;
@@ -446,6 +1113,14 @@ public class Impl {
 		print(FileUtil.readResource(SYNCHRONIZED_HPP));
 	}
 
+	private void printSingleton() {
+		if (!deps.needsSingleton()) {
+			return;
+		}
+
+		print(FileUtil.readResource(SINGLETON_HPP));
+	}
+
 	private void javaCast(ITypeBinding source, ITypeBinding target) {
 		hardDep(source);
 		hardDep(target);
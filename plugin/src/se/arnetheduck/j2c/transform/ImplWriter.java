@@ -2,14 +2,21 @@ package se.arnetheduck.j2c.transform;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
 import org.eclipse.jdt.core.dom.AnnotationTypeMemberDeclaration;
@@ -28,11 +35,13 @@ import org.eclipse.jdt.core.dom.ClassInstanceCreation;
 import org.eclipse.jdt.core.dom.ConditionalExpression;
 import org.eclipse.jdt.core.dom.ConstructorInvocation;
 import org.eclipse.jdt.core.dom.ContinueStatement;
+import org.eclipse.jdt.core.dom.CreationReference;
 import org.eclipse.jdt.core.dom.DoStatement;
 import org.eclipse.jdt.core.dom.EnhancedForStatement;
 import org.eclipse.jdt.core.dom.EnumConstantDeclaration;
 import org.eclipse.jdt.core.dom.EnumDeclaration;
 import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionMethodReference;
 import org.eclipse.jdt.core.dom.ExpressionStatement;
 import org.eclipse.jdt.core.dom.FieldAccess;
 import org.eclipse.jdt.core.dom.FieldDeclaration;
@@ -46,8 +55,10 @@ import org.eclipse.jdt.core.dom.InfixExpression;
 import org.eclipse.jdt.core.dom.Initializer;
 import org.eclipse.jdt.core.dom.InstanceofExpression;
 import org.eclipse.jdt.core.dom.LabeledStatement;
+import org.eclipse.jdt.core.dom.LambdaExpression;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.MethodReference;
 import org.eclipse.jdt.core.dom.Modifier;
 import org.eclipse.jdt.core.dom.Name;
 import org.eclipse.jdt.core.dom.ParenthesizedExpression;
@@ -62,6 +73,7 @@ import org.eclipse.jdt.core.dom.Statement;
 import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
 import org.eclipse.jdt.core.dom.SuperFieldAccess;
 import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SuperMethodReference;
 import org.eclipse.jdt.core.dom.SwitchCase;
 import org.eclipse.jdt.core.dom.SwitchStatement;
 import org.eclipse.jdt.core.dom.SynchronizedStatement;
@@ -70,9 +82,12 @@ import org.eclipse.jdt.core.dom.ThrowStatement;
 import org.eclipse.jdt.core.dom.TryStatement;
 import org.eclipse.jdt.core.dom.Type;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
 import org.eclipse.jdt.core.dom.TypeLiteral;
+import org.eclipse.jdt.core.dom.TypeMethodReference;
 import org.eclipse.jdt.core.dom.TypeParameter;
 import org.eclipse.jdt.core.dom.UnionType;
+import org.eclipse.jdt.core.dom.VariableDeclaration;
 import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
@@ -91,6 +106,9 @@ public class ImplWriter extends TransformWriter {
 
 	private final List<List<String>> locals = new ArrayList<List<String>>();
 
+	/** Volatile access orders of the body being written, if known */
+	private MemoryOrders memoryOrders;
+
 	public ImplWriter(IPath root, Transformer ctx, UnitInfo unitInfo,
 			TypeInfo typeInfo) {
 		super(ctx, unitInfo, typeInfo);
@@ -222,7 +240,9 @@ public class ImplWriter extends TransformWriter {
 
 		println("void " + qcname + "::" + CName.INSTANCE_INIT + "()");
 		println("{");
+		memoryOrders = MemoryOrders.of(type, info.nodes, true);
 		printInitInfo(info);
+		memoryOrders = null;
 		println("}");
 		println();
 	}
@@ -233,11 +253,12 @@ public class ImplWriter extends TransformWriter {
 		for (ASTNode node : info.nodes) {
 			if (node instanceof VariableDeclarationFragment) {
 				VariableDeclarationFragment fragment = (VariableDeclarationFragment) node;
+				String order = memoryOrder(fragment);
 				printi();
 				fragment.getName().accept(this);
-				print(" = ");
+				print(order == null ? " = " : ".store(");
 				fragment.getInitializer().accept(this);
-				println(";");
+				println(order == null ? ";" : ", " + order + ");");
 				ITypeBinding ib = fragment.getInitializer()
 						.resolveTypeBinding();
 				if (!ib.isEqualTo(fragment.resolveBinding().getType())) {
@@ -274,7 +295,7 @@ public class ImplWriter extends TransformWriter {
 				hasEmpty = true;
 			}
 
-			println(") " + TransformUtil.throwsDecl(md.thrownExceptions()));
+			println(") " + TransformUtil.throwsDecl(md.thrownExceptionTypes()));
 
 			indent++;
 			printDefaultInitCall(md.resolveBinding());
@@ -553,16 +574,21 @@ public class ImplWriter extends TransformWriter {
 
 		if (node instanceof Expression) {
 			Expression expr = (Expression) node;
+			Expression cancelled = BoxAnalysis.cancelled(expr);
 
 			if ((expr.resolveBoxing() || expr.resolveUnboxing())
 					&& checkBoxNesting(expr)) {
 
 				if (expr.resolveBoxing()) {
-					ITypeBinding tb2 = boxingType(expr);
-					hardDep(tb2);
-					print(CName.relative(tb2, type, true) + "::valueOf(");
-
-					visits.add(new NodeInfo(node, ")"));
+					if (!unboxedValues.remove(expr)
+							&& !BoxAnalysis.isStoredUnboxed(expr,
+									unboxedLocals)) {
+						box(boxingType(expr));
+						visits.add(new NodeInfo(node, ")"));
+					}
+				} else if (cancelled != null
+						|| unboxedLocals.contains(BoxAnalysis.local(expr))) {
+					// Already a primitive
 				} else if (expr.resolveUnboxing()) {
 					ITypeBinding tb = expr.resolveTypeBinding().getErasure();
 					if (TransformUtil.reverses.containsKey(tb
@@ -577,6 +603,32 @@ public class ImplWriter extends TransformWriter {
 				}
 			}
 
+			if (cancelled != null) {
+				// Boxed only to be unboxed again
+				if (cancelled.resolveBoxing()) {
+					unboxedValues.add(cancelled);
+				}
+
+				// A char boxed as an Integer is still an int once unboxed
+				ITypeBinding from = primitive(cancelled);
+				ITypeBinding to = primitive(expr);
+				boolean widens = from != null && to != null
+						&& !from.isEqualTo(to);
+
+				print("(");
+				if (widens) {
+					staticCast(from, to);
+				}
+
+				cancelled.accept(this);
+				if (widens) {
+					print(")");
+				}
+
+				print(")");
+				return false;
+			}
+
 			if (node instanceof Name) {
 				Name name = ((Name) node);
 				IBinding b = name.resolveBinding();
@@ -590,6 +642,29 @@ public class ImplWriter extends TransformWriter {
 		return super.preVisit2(node);
 	}
 
+	/** The primitive type of expr, or the one its box type holds, or null */
+	private static ITypeBinding primitive(Expression expr) {
+		ITypeBinding tb = expr.resolveTypeBinding();
+		if (tb == null || tb.isPrimitive()) {
+			return tb;
+		}
+
+		String name = TransformUtil.reverses.get(tb.getErasure()
+				.getQualifiedName());
+		return name == null ? null : expr.getAST().resolveWellKnownType(name);
+	}
+
+	/** Start boxing a primitive to tb - the caller closes the parenthesis */
+	private void box(ITypeBinding tb) {
+		hardDep(tb);
+		if (BoxAnalysis.isCached(tb)) {
+			deps.setBox();
+			print(CName.BOX + "< " + CName.relative(tb, type, true) + " >(");
+		} else {
+			print(CName.relative(tb, type, true) + "::valueOf(");
+		}
+	}
+
 	private void castName(ASTNode node, Name name, IVariableBinding vb) {
 		if (!vb.isField()) {
 			return;
@@ -924,9 +999,16 @@ public class ImplWriter extends TransformWriter {
 			return false;
 		}
 
+		String order = MemoryOrders.isPlainStore(node) ? memoryOrder(MemoryOrders
+				.volatileName(lhs)) : null;
+
 		lhs.accept(this);
 
-		print(" " + node.getOperator() + " ");
+		if (order == null) {
+			print(" " + node.getOperator() + " ");
+		} else {
+			print(".store(");
+		}
 
 		boolean cast = false;
 		if (TransformUtil.needsJavaCast(rtb, ltb)) {
@@ -940,6 +1022,10 @@ public class ImplWriter extends TransformWriter {
 			print(")");
 		}
 
+		if (order != null) {
+			print(", " + order + ")");
+		}
+
 		return false;
 	}
 
@@ -958,6 +1044,12 @@ public class ImplWriter extends TransformWriter {
 			printlni("clinit();");
 		}
 
+		if (parent instanceof MethodDeclaration
+				&& Modifier.isSynchronized(((MethodDeclaration) parent)
+						.getModifiers())) {
+			printSynchronizedMethod((MethodDeclaration) parent);
+		}
+
 		visitAll(node.statements());
 
 		indent--;
@@ -1005,9 +1097,14 @@ public class ImplWriter extends TransformWriter {
 		ITypeBinding target = node.getType().resolveBinding();
 		ITypeBinding source = node.getExpression().resolveTypeBinding();
 
-		if (target.isPrimitive()
-				|| TransformUtil.isNullLiteral(node.getExpression())) {
+		if (fusedCasts.remove(node)) {
+			instanceCast(source, target);
+		} else if (target.isPrimitive()
+				|| TransformUtil.isNullLiteral(node.getExpression())
+				|| CastAnalysis.isUpcast(source, target)) {
 			staticCast(source, target);
+		} else if (CastAnalysis.isProven(node)) {
+			uncheckedCast(source, target);
 		} else {
 			javaCast(source, target);
 		}
@@ -1031,6 +1128,11 @@ public class ImplWriter extends TransformWriter {
 
 	@Override
 	public boolean visit(ClassInstanceCreation node) {
+		if (Singletons.isSingleton(node, unitInfo)) {
+			singleton(node);
+			return false;
+		}
+
 		boolean parens = TransformUtil.needsExtraParens(node);
 
 		if (parens) {
@@ -1061,10 +1163,47 @@ public class ImplWriter extends TransformWriter {
 		return false;
 	}
 
+	/**
+	 * All instances of the anonymous class are alike (see Singletons), so
+	 * the first one is kept - it gets no outer instance, as it never uses it
+	 */
+	private void singleton(ClassInstanceCreation node) {
+		ITypeBinding tb = node.getAnonymousClassDeclaration().resolveBinding();
+		node.getAnonymousClassDeclaration().accept(this);
+		hardDep(tb);
+		deps.setNeedsSingleton();
+
+		String name = CName.of(tb);
+		print("::singleton_< " + name + " >([]() { return new " + name
+				+ (TransformUtil.hasOuterThis(tb) ? "(nullptr)" : "()")
+				+ "; })");
+	}
+
 	private void consArgs(Expression expression, List<Expression> arguments,
 			IMethodBinding mb, ITypeBinding tb, String name, int ordinal) {
 		print("(");
 
+		String sep = hiddenArgs(expression, tb);
+
+		if (tb.isEnum()) {
+			print("u\"" + name + "\"_j, " + ordinal);
+			sep = ", ";
+			deps.hard(ctx.resolve(String.class));
+		}
+
+		if (!arguments.isEmpty()) {
+			print(sep);
+			callArgs(mb, arguments, false, false);
+		}
+
+		print(")");
+	}
+
+	/**
+	 * The outer this and closures that constructors of tb take before the
+	 * Java arguments - returns the separator for the next argument
+	 */
+	private String hiddenArgs(Expression expression, ITypeBinding tb) {
 		String sep = "";
 		if (expression != null) {
 			expression.accept(this);
@@ -1097,18 +1236,7 @@ public class ImplWriter extends TransformWriter {
 			}
 		}
 
-		if (tb.isEnum()) {
-			print("u\"" + name + "\"_j, " + ordinal);
-			sep = ", ";
-			deps.hard(ctx.resolve(String.class));
-		}
-
-		if (!arguments.isEmpty()) {
-			print(sep);
-			callArgs(mb, arguments, false, false);
-		}
-
-		print(")");
+		return sep;
 	}
 
 	@Override
@@ -1182,6 +1310,12 @@ public class ImplWriter extends TransformWriter {
 		throw new Error("Expected a loop");
 	}
 
+	@Override
+	public boolean visit(CreationReference node) {
+		methodReference(node);
+		return false;
+	}
+
 	@Override
 	public boolean visit(DoStatement node) {
 		printi("do ");
@@ -1202,10 +1336,44 @@ public class ImplWriter extends TransformWriter {
 		if (eb.isArray()) {
 			printi("for(auto ");
 			node.getParameter().getName().accept(this);
-			print(" : *");
-			npcAccept(expr);
+			if (isEnumValues(expr)) {
+				// The copy can't be seen by the loop body, so skip making it
+				hardDep(eb.getComponentType());
+				print(" : *" + CName.relative(eb.getComponentType(), type, true)
+						+ "::" + CName.VALUES + "()");
+			} else {
+				print(" : *");
+				npcAccept(expr);
+			}
 			print(") ");
 			handleLoopBody(node, node.getBody());
+		} else if (isIndexable(eb)) {
+			// Same checks as AbstractList.Itr, without allocating it
+			IVariableBinding modCount = modCount();
+			ITypeBinding cme = ctx.resolve(ConcurrentModificationException.class);
+			hardDep(modCount.getDeclaringClass());
+			hardDep(cme);
+
+			printlni("{");
+			indent++;
+			printi("auto _l = ");
+			npcAccept(expr);
+			println(";");
+			printlni("auto _m = _l->" + CName.of(modCount) + ";");
+			printlni("for (int32_t _i = 0; _i != _l->size(); ++_i) {");
+
+			indent++;
+			printlni("if(_l->" + CName.of(modCount) + " != _m) throw new "
+					+ CName.relative(cme, type, true) + "();");
+			printForEachElement(node, "_l->get(_i)");
+
+			printi();
+			handleLoopBody(node, node.getBody());
+
+			indent--;
+			printlni("}");
+			indent--;
+			printlni("}");
 		} else {
 			printi("for (auto _i = ");
 
@@ -1213,22 +1381,7 @@ public class ImplWriter extends TransformWriter {
 			println("->iterator(); _i->hasNext(); ) {");
 
 			indent++;
-			printi();
-			node.getParameter().accept(this);
-			print(" = ");
-			ITypeBinding tb = node.getParameter().getType().resolveBinding();
-
-			if (tb.isPrimitive()) {
-				ITypeBinding tbb = node.getAST().resolveWellKnownType(
-						TransformUtil.primitives.get(tb.getName()));
-				hardDep(tbb);
-				npc();
-				javaCast(ctx.resolve(Object.class), tbb);
-				println("_i->next()))->" + tb.getName() + "Value();");
-			} else {
-				javaCast(ctx.resolve(Object.class), tb);
-				println("_i->next());");
-			}
+			printForEachElement(node, "_i->next()");
 
 			printi();
 			handleLoopBody(node, node.getBody());
@@ -1242,6 +1395,111 @@ public class ImplWriter extends TransformWriter {
 		return false;
 	}
 
+	/** Declare the for-each variable, initialized from the Object next */
+	private void printForEachElement(EnhancedForStatement node, String next) {
+		printi();
+		node.getParameter().accept(this);
+		print(" = ");
+		ITypeBinding tb = node.getParameter().getType().resolveBinding();
+
+		if (tb.isPrimitive()) {
+			ITypeBinding tbb = node.getAST().resolveWellKnownType(
+					TransformUtil.primitives.get(tb.getName()));
+			hardDep(tbb);
+			npc();
+			javaCast(ctx.resolve(Object.class), tbb);
+			println(next + "))->" + tb.getName() + "Value();");
+		} else {
+			javaCast(ctx.resolve(Object.class), tb);
+			println(next + ");");
+		}
+	}
+
+	/**
+	 * True if iterating over a tb amounts to calling get() for each index
+	 * below size(), checking modCount as it goes - tb is a RandomAccess
+	 * AbstractList that neither it nor any of its subtypes gives an iterator
+	 * of its own
+	 */
+	private boolean isIndexable(ITypeBinding tb) {
+		tb = tb.getErasure();
+		if (!tb.isClass() || !isRandomAccess(tb)) {
+			return false;
+		}
+
+		for (String name : Arrays.asList("iterator", "get", "size")) {
+			if (ClassHierarchy.isRedeclared(tb, name)) {
+				return false;
+			}
+		}
+
+		// ArrayList.Itr reads the elements directly, bypassing get and size
+		boolean accessors = false;
+		for (ITypeBinding c = tb; c != null; c = c.getSuperclass()) {
+			if (TransformUtil.same(c, AbstractList.class)) {
+				return true;
+			}
+
+			if (TransformUtil.same(c, ArrayList.class)) {
+				return !accessors;
+			}
+
+			for (IMethodBinding mb : c.getDeclaredMethods()) {
+				if (mb.getParameterTypes().length == 0
+						&& mb.getName().equals("iterator")) {
+					return false;
+				}
+
+				accessors |= mb.getName().equals("get")
+						|| mb.getName().equals("size");
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isRandomAccess(ITypeBinding tb) {
+		for (ITypeBinding c = tb; c != null; c = c.getSuperclass()) {
+			for (ITypeBinding ib : TypeUtil.interfaces(c)) {
+				if (TransformUtil.same(ib, RandomAccess.class)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private IVariableBinding modCount() {
+		for (IVariableBinding vb : ctx.resolve(AbstractList.class)
+				.getDeclaredFields()) {
+			if (vb.getName().equals("modCount")) {
+				return vb;
+			}
+		}
+
+		throw new Error("AbstractList.modCount not found");
+	}
+
+	/** True if expr is a plain call to values() of an enum */
+	private static boolean isEnumValues(Expression expr) {
+		if (!(expr instanceof MethodInvocation)) {
+			return false;
+		}
+
+		MethodInvocation mi = (MethodInvocation) expr;
+		IMethodBinding mb = mi.resolveMethodBinding();
+		if (mb == null || !mb.getDeclaringClass().isEnum()
+				|| !TransformUtil.isValues(mb, mb.getDeclaringClass())) {
+			return false;
+		}
+
+		// Evaluating the receiver might have side effects
+		return mi.getExpression() == null
+				|| mi.getExpression() instanceof Name
+				&& ((Name) mi.getExpression()).resolveBinding() instanceof ITypeBinding;
+	}
+
 	@Override
 	public boolean visit(EnumConstantDeclaration node) {
 		print(qcname + "* " + qcname + "::");
@@ -1276,6 +1534,12 @@ public class ImplWriter extends TransformWriter {
 		return false;
 	}
 
+	@Override
+	public boolean visit(ExpressionMethodReference node) {
+		methodReference(node);
+		return false;
+	}
+
 	@Override
 	public boolean visit(FieldAccess node) {
 		ITypeBinding tb = node.resolveTypeBinding();
@@ -1359,6 +1623,11 @@ public class ImplWriter extends TransformWriter {
 				println(";");
 			}
 
+			if (ThreadLocals.isSlot(f)) {
+				println("thread_local ::thread_local_slot_ " + qcname + "::"
+						+ CName.of(vb) + "_slot_;");
+			}
+
 			println();
 		}
 
@@ -1390,6 +1659,15 @@ public class ImplWriter extends TransformWriter {
 
 	private boolean skipIndent = false;
 
+	/** Declarations and casts moved into the condition of their if */
+	private final Set<ASTNode> fusedCasts = new HashSet<ASTNode>();
+
+	/** Box type locals that are kept as primitives */
+	private final Set<IVariableBinding> unboxedLocals = new HashSet<IVariableBinding>();
+
+	/** Boxing conversions whose result is unboxed right away */
+	private final Set<Expression> unboxedValues = new HashSet<Expression>();
+
 	@Override
 	public boolean visit(IfStatement node) {
 		if (!skipIndent) {
@@ -1399,7 +1677,30 @@ public class ImplWriter extends TransformWriter {
 		print("if(");
 		skipIndent = false;
 
-		node.getExpression().accept(this);
+		VariableDeclarationStatement fused = CastAnalysis.fusedCast(node);
+		if (fused != null) {
+			// if(T* y = instance_cast< T* >(x)) tests and converts in one go
+			VariableDeclarationFragment fragment = (VariableDeclarationFragment) fused
+					.fragments().get(0);
+			ITypeBinding fb = fragment.resolveBinding().getType();
+			softDep(fb);
+
+			Expression initializer = fragment.getInitializer();
+			while (initializer instanceof ParenthesizedExpression) {
+				initializer = ((ParenthesizedExpression) initializer)
+						.getExpression();
+			}
+
+			fusedCasts.add(fused);
+			fusedCasts.add(initializer);
+			locals.add(new ArrayList<String>());
+
+			print(TransformUtil.varTypeCName(fused.getModifiers(), fb, type,
+					deps) + " ");
+			fragment.accept(this);
+		} else {
+			node.getExpression().accept(this);
+		}
 
 		print(")");
 
@@ -1447,6 +1748,10 @@ public class ImplWriter extends TransformWriter {
 			println();
 		}
 
+		if (fused != null) {
+			locals.remove(locals.size() - 1);
+		}
+
 		return false;
 	}
 
@@ -1592,9 +1897,20 @@ public class ImplWriter extends TransformWriter {
 
 		hardDep(lb);
 		hardDep(rb);
-		print("dynamic_cast< " + CName.relative(rb, type, true) + "* >(");
+
+		if (CastAnalysis.isUpcast(lb, rb)) {
+			// Only null can fail
+			print("(");
+			node.getLeftOperand().accept(this);
+			print(" != nullptr)");
+			return false;
+		}
+
+		deps.setJavaCast();
+		print(CName.INSTANCE_OF + "< " + CName.relative(rb, type, true)
+				+ "* >(");
 		node.getLeftOperand().accept(this);
-		print(") != nullptr");
+		print(")");
 		return false;
 	}
 
@@ -1681,6 +1997,324 @@ public class ImplWriter extends TransformWriter {
 		}
 	}
 
+	@Override
+	public boolean visit(LambdaExpression node) {
+		boolean bare = Lambdas.isBare(node);
+		if (!bare) {
+			adapt(node);
+		}
+
+		ITypeBinding fi = Lambdas.type(node);
+		IMethodBinding sam = Lambdas.method(fi);
+		ITypeBinding rt = Lambdas.returnType(sam);
+
+		locals.add(new ArrayList<String>());
+		print(Lambdas.captures(node) ? "[=](" : "[](");
+
+		// The closure takes what the functional method takes, so parameters
+		// of generic interfaces are cast to what the lambda declares
+		List<VariableDeclaration> parameters = node.parameters();
+		List<Integer> casts = new ArrayList<Integer>();
+		for (int i = 0; i < parameters.size(); ++i) {
+			IVariableBinding vb = parameters.get(i).resolveBinding();
+			ITypeBinding pb = sam.getParameterTypes()[i];
+			softDep(pb);
+
+			String name = CName.of(vb);
+			locals.get(locals.size() - 1).add(name);
+			print((i > 0 ? ", " : "")
+					+ TransformUtil.relativeRef(pb, type, true) + " " + name);
+			if (TransformUtil.needsJavaCast(pb, vb.getType())) {
+				print("_");
+				casts.add(i);
+			}
+		}
+
+		softDep(rt);
+		print(") -> " + TransformUtil.relativeRef(rt, type, true) + " {");
+
+		if (node.getBody() instanceof Block) {
+			println();
+			indent++;
+			for (int i : casts) {
+				printi("");
+				printParameterCast(node, sam, i);
+				println();
+			}
+
+			visitAll(((Block) node.getBody()).statements());
+			indent--;
+			printi("}");
+		} else {
+			for (int i : casts) {
+				print(" ");
+				printParameterCast(node, sam, i);
+			}
+
+			print(TransformUtil.isVoid(rt) ? " " : " return ");
+			node.getBody().accept(this);
+			print("; }");
+		}
+
+		locals.remove(locals.size() - 1);
+
+		if (!bare) {
+			print(")");
+		}
+
+		return false;
+	}
+
+	/** Declare parameter i of node as the type the lambda gives it */
+	private void printParameterCast(LambdaExpression node, IMethodBinding sam,
+			int i) {
+		IVariableBinding vb = ((VariableDeclaration) node.parameters().get(i))
+				.resolveBinding();
+		String name = CName.of(vb);
+		print("auto " + name + " = ");
+		javaCast(sam.getParameterTypes()[i], vb.getType());
+		print(name + "_);");
+	}
+
+	/**
+	 * Start wrapping the closure of node in the adapter for its functional
+	 * interface (the caller closes it)
+	 */
+	private void adapt(Expression node) {
+		ITypeBinding fi = Lambdas.type(node);
+		deps.lambda(fi);
+		print("::" + (Lambdas.captures(node) ? "lambda_" : "lambda_singleton_")
+				+ "< " + CName.relative(fi, type, true) + ", ::"
+				+ Lambdas.adapter(fi) + " >(");
+	}
+
+	/**
+	 * A method reference is a closure that calls the method - a receiver
+	 * expression is evaluated and null checked once, when the reference is
+	 */
+	private void methodReference(MethodReference node) {
+		Expression receiver = null;
+		if (node instanceof ExpressionMethodReference) {
+			receiver = ((ExpressionMethodReference) node).getExpression();
+			if (Lambdas.isType(receiver)) {
+				receiver = null;
+			}
+		}
+
+		boolean evaluate = receiver != null
+				&& !(receiver instanceof ThisExpression && ((ThisExpression) receiver)
+						.getQualifier() == null);
+		ITypeBinding etb = receiver == null ? null : receiver
+				.resolveTypeBinding().getErasure();
+
+		if (evaluate) {
+			hardDep(etb);
+			print("[&](" + TransformUtil.relativeRef(etb, type, true)
+					+ " receiver_) { return ");
+		}
+
+		boolean bare = Lambdas.isBare(node);
+		if (!bare) {
+			adapt(node);
+		}
+
+		ITypeBinding fi = Lambdas.type(node);
+		IMethodBinding sam = Lambdas.method(fi);
+		IMethodBinding isam = fi.getFunctionalInterfaceMethod();
+		ITypeBinding[] sp = sam.getParameterTypes();
+		ITypeBinding rt = Lambdas.returnType(sam);
+
+		print(Lambdas.captures(node) ? "[=](" : "[](");
+		for (int i = 0; i < sp.length; ++i) {
+			softDep(sp[i]);
+			print((i > 0 ? ", " : "")
+					+ TransformUtil.relativeRef(sp[i], type, true) + " a" + i);
+		}
+
+		softDep(rt);
+		print(") -> " + TransformUtil.relativeRef(rt, type, true) + " { ");
+
+		boolean isVoid = TransformUtil.isVoid(rt);
+		if (!isVoid) {
+			print("return ");
+		}
+
+		IMethodBinding mb = node.resolveMethodBinding();
+		String close = "";
+		if (node instanceof CreationReference) {
+			ITypeBinding tb = ((CreationReference) node).getType()
+					.resolveBinding();
+			hardDep(tb);
+			if (!isVoid) {
+				close = convert(tb, rt, tb);
+			}
+
+			print("new " + CName.relative(tb, type, true) + "(");
+			if (tb.isArray()) {
+				ITypeBinding length = node.getAST().resolveWellKnownType("int");
+				print("a0" + convert(sp[0], length, isam.getParameterTypes()[0]));
+			} else {
+				referenceArgs(mb, sam, isam, 0, hiddenArgs(null, tb));
+			}
+			print(")");
+		} else {
+			IMethodBinding decl = mb.getMethodDeclaration();
+			if (!isVoid) {
+				close = convert(Lambdas.returnType(decl), rt,
+						mb.getReturnType());
+			}
+
+			int offset = 0;
+			if (node instanceof SuperMethodReference) {
+				print("super::");
+			} else if (TransformUtil.isStatic(mb)) {
+				hardDep(mb.getDeclaringClass());
+				print(CName.relative(mb.getDeclaringClass(), type, true)
+						+ "::");
+			} else if (receiver == null) {
+				// The first parameter is the receiver
+				receiverCall(sp[0].getErasure(), mb, "a0", true);
+				offset = 1;
+			} else if (evaluate) {
+				receiverCall(etb, mb, "receiver_", false);
+			} else {
+				receiverCall(type, mb, "this", false);
+			}
+
+			print(CName.of(mb) + "(");
+			referenceArgs(mb, sam, isam, offset, "");
+			print(")");
+		}
+
+		print(close + "; }");
+
+		if (!bare) {
+			print(")");
+		}
+
+		if (evaluate) {
+			print("; }(");
+			npcAccept(receiver);
+			print(")");
+		}
+	}
+
+	/** Print the receiver of b, whose static type is etb */
+	private void receiverCall(ITypeBinding etb, IMethodBinding b,
+			String receiver, boolean npc) {
+		hardDep(etb);
+
+		int parens = 0;
+		if (hidden(etb, b)) {
+			staticCast(etb, b.getDeclaringClass());
+			parens++;
+		}
+
+		if (TransformUtil.needsJavaCast(etb, b.getDeclaringClass())) {
+			javaCast(etb, b.getDeclaringClass());
+			parens++;
+		}
+
+		if (npc) {
+			npc();
+			parens++;
+		}
+
+		print(receiver);
+		for (int i = 0; i < parens; ++i) {
+			print(")");
+		}
+
+		print("->");
+	}
+
+	/**
+	 * The closure parameters from a<offset> on, converted to the parameters of
+	 * mb and packed into an array if it takes them as variable arguments
+	 */
+	private void referenceArgs(IMethodBinding mb, IMethodBinding sam,
+			IMethodBinding isam, int offset, String sep) {
+		ITypeBinding[] sp = sam.getParameterTypes();
+		ITypeBinding[] ip = isam.getParameterTypes();
+		ITypeBinding[] params = mb.getMethodDeclaration().getParameterTypes();
+
+		int n = sp.length - offset;
+		int last = params.length - 1;
+		boolean pack = mb.isVarargs()
+				&& (n != params.length || !sp[sp.length - 1].getErasure()
+						.isAssignmentCompatible(params[last].getErasure()));
+
+		for (int i = 0; i < n; ++i) {
+			print(sep);
+			sep = ", ";
+
+			ITypeBinding target = params[Math.min(i, last)];
+			if (pack && i >= last) {
+				if (i == last) {
+					hardDep(params[last]);
+					print("new "
+							+ CName.relative(params[last], type, true) + "({");
+				}
+
+				target = params[last].getComponentType();
+			}
+
+			String close = convert(sp[i + offset], target, ip[i + offset]);
+			print("a" + (i + offset) + close);
+		}
+
+		if (pack) {
+			if (n > last) {
+				print("})");
+			} else {
+				hardDep(params[last]);
+				print(sep + "new " + CName.relative(params[last], type, true)
+						+ "()");
+			}
+		}
+	}
+
+	/**
+	 * Start converting a value of type from to type to, by boxing, unboxing
+	 * or casting it - hint is the type before erasure, which says what to
+	 * unbox an erased value as. Returns what closes the conversion.
+	 */
+	private String convert(ITypeBinding from, ITypeBinding to,
+			ITypeBinding hint) {
+		if (from.isPrimitive() == to.isPrimitive()) {
+			if (TransformUtil.needsJavaCast(from, to)) {
+				javaCast(from, to);
+				return ")";
+			}
+
+			return "";
+		}
+
+		if (from.isPrimitive()) {
+			box(ctx.resolve(TransformUtil.primitives.get(from.getName())));
+			return ")";
+		}
+
+		ITypeBinding bt = from.getErasure();
+		if (!TransformUtil.reverses.containsKey(bt.getQualifiedName())) {
+			bt = hint.getErasure();
+		}
+
+		if (!TransformUtil.reverses.containsKey(bt.getQualifiedName())) {
+			bt = ctx.resolve(TransformUtil.primitives.get(to.getName()));
+		}
+
+		hardDep(bt);
+		npc();
+		boolean cast = TransformUtil.needsJavaCast(from, bt);
+		if (cast) {
+			javaCast(from, bt);
+		}
+
+		return (cast ? "))->" : ")->")
+				+ TransformUtil.reverses.get(bt.getQualifiedName()) + "Value()";
+	}
+
 	@Override
 	public boolean visit(MethodDeclaration node) {
 		IMethodBinding mb = node.resolveBinding();
@@ -1724,7 +2358,11 @@ public class ImplWriter extends TransformWriter {
 
 		print(")");
 
-		println(TransformUtil.throwsDecl(node.thrownExceptions()));
+		println(TransformUtil.throwsDecl(node.thrownExceptionTypes()));
+
+		MemoryOrders oldOrders = memoryOrders;
+		memoryOrders = MemoryOrders.of(type, node.getBody(),
+				node.isConstructor());
 
 		if (node.isConstructor()) {
 			println("{");
@@ -1759,6 +2397,8 @@ public class ImplWriter extends TransformWriter {
 			node.getBody().accept(this);
 		}
 
+		memoryOrders = oldOrders;
+
 		locals.remove(locals.size() - 1);
 
 		println();
@@ -1769,6 +2409,10 @@ public class ImplWriter extends TransformWriter {
 		return false;
 	}
 
+	private String memoryOrder(ASTNode node) {
+		return memoryOrders == null ? null : memoryOrders.of(node);
+	}
+
 	private void printNames(Iterable<SingleVariableDeclaration> parameters) {
 		for (Iterator<SingleVariableDeclaration> it = parameters.iterator(); it
 				.hasNext();) {
@@ -1785,6 +2429,16 @@ public class ImplWriter extends TransformWriter {
 	@Override
 	public boolean visit(MethodInvocation node) {
 		IMethodBinding b = node.resolveMethodBinding();
+
+		if (BoxAnalysis.isValueOf(b)
+				&& BoxAnalysis.isCached(b.getDeclaringClass())) {
+			// Must hand out the same boxes as boxing conversion
+			box(b.getDeclaringClass());
+			((Expression) node.arguments().get(0)).accept(this);
+			print(")");
+			return false;
+		}
+
 		ITypeBinding rtb = b.getMethodDeclaration().getReturnType();
 		boolean erased = (rtb.isTypeVariable() || rtb.isArray()
 				&& rtb.getElementType().isTypeVariable())
@@ -1802,6 +2456,39 @@ public class ImplWriter extends TransformWriter {
 			}
 		}
 
+		if (Lambdas.isDirect(node)) {
+			// The closure is called right away, without an adapter
+			Expression closure = Lambdas.closure(node.getExpression());
+			if (closure instanceof SimpleName) {
+				closure.accept(this);
+			} else {
+				print("(");
+				closure.accept(this);
+				print(")");
+			}
+
+			callArgs(b, node.arguments(), true, false);
+			if (erased) {
+				print(")");
+			}
+
+			return false;
+		}
+
+		IVariableBinding slot = ThreadLocals.slot(node);
+		if (slot != null) {
+			threadLocal(node, slot);
+			if (erased) {
+				print(")");
+			}
+
+			return false;
+		}
+
+		// The class of the only version the call can reach, named at the
+		// call so that it needs no vtable and may be inlined
+		ITypeBinding direct = null;
+
 		Expression expr = node.getExpression();
 		if (expr != null) {
 			ITypeBinding etb = expr.resolveTypeBinding().getErasure();
@@ -1822,6 +2509,14 @@ public class ImplWriter extends TransformWriter {
 				parens++;
 			}
 
+			if (parens == 0 && !isType && node.typeArguments().isEmpty()) {
+				direct = directCall(etb, b);
+				if (direct != null && !isBase(direct, etb)) {
+					staticCast(etb, direct);
+					parens++;
+				}
+			}
+
 			if (!isType) {
 				npcAccept(expr);
 			} else {
@@ -1851,6 +2546,21 @@ public class ImplWriter extends TransformWriter {
 				}
 			}
 
+			ITypeBinding dc = b.getDeclaringClass().getErasure();
+			if (!found && !TransformUtil.isStatic(b)
+					&& node.typeArguments().isEmpty()
+					&& type.getErasure().isSubTypeCompatible(dc)) {
+				direct = directCall(type, b);
+				if (direct != null) {
+					boolean cast = !isBase(direct, type);
+					if (cast) {
+						staticCast(type, direct);
+					}
+
+					print(cast ? "this)->" : "this->");
+				}
+			}
+
 			// If the name is already qualified, there won't be a clash
 			if (found
 					&& !needsQualification(node.getName(),
@@ -1874,6 +2584,10 @@ public class ImplWriter extends TransformWriter {
 			}
 		}
 
+		if (direct != null) {
+			print(CName.qualified(direct, true) + "::");
+		}
+
 		print(TransformUtil.typeArguments(node.typeArguments()));
 
 		node.getName().accept(this);
@@ -1887,6 +2601,84 @@ public class ImplWriter extends TransformWriter {
 		return false;
 	}
 
+	/**
+	 * The class to name in a call of b on a receiver of static type tb, if
+	 * the class hierarchy shows that only its version can run - the receiver
+	 * can be cast to it with static_cast when it isn't a base, as superclasses
+	 * are never virtual bases, and interfaces only when it implements them
+	 * non-virtually itself
+	 */
+	private ITypeBinding directCall(ITypeBinding tb, IMethodBinding b) {
+		tb = tb.getErasure();
+		if (tb.isArray() || tb.isClass() && TransformUtil.isFinal(tb)) {
+			// C++ already knows the version of calls on a final class
+			return null;
+		}
+
+		IType impl = ClassHierarchy.implementation(tb, b);
+		if (impl == null) {
+			return null;
+		}
+
+		for (ITypeBinding c = tb; c != null; c = c.getSuperclass()) {
+			if (impl.equals(c.getErasure().getJavaElement())) {
+				return c.getErasure();
+			}
+		}
+
+		ITypeBinding ret = ctx.resolve(impl.getFullyQualifiedName('.'));
+		if (tb.isInterface() ? !TransformUtil.virtual(ret, tb).isEmpty()
+				: !CastAnalysis.isClassChain(tb, ret)) {
+			return null;
+		}
+
+		hardDep(ret);
+		return ret;
+	}
+
+	/** True if base is tb or one of its superclasses */
+	private static boolean isBase(ITypeBinding base, ITypeBinding tb) {
+		for (ITypeBinding c = tb.getErasure(); c != null; c = c
+				.getSuperclass()) {
+			if (c.getErasure().isEqualTo(base.getErasure())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * ThreadLocal get, set and remove on a field with a slot (see
+	 * ThreadLocals) - the field is only read to call initialValue and for set
+	 * and remove, whose slot is empty until then, so a get that finds a value
+	 * is already past the class initialization and null check
+	 */
+	private void threadLocal(MethodInvocation node, IVariableBinding vb) {
+		hardDep(vb.getDeclaringClass());
+		String slot = CName.relative(vb.getDeclaringClass(), type, true)
+				+ "::" + CName.of(vb) + "_slot_";
+
+		String name = node.getName().getIdentifier();
+		if (name.equals("get")) {
+			print("::thread_local_get_(" + slot + ", [&]() { return ");
+			npcAccept(node.getExpression());
+			print("->initialValue(); })");
+			return;
+		}
+
+		print("(");
+		npcAccept(node.getExpression());
+		if (name.equals("set")) {
+			print(", ::thread_local_set_(" + slot + ", ");
+			callArgs(node.resolveMethodBinding(), node.arguments(), false,
+					false);
+			print("))");
+		} else {
+			print(", ::thread_local_remove_(" + slot + "))");
+		}
+	}
+
 	private boolean localInScope(String bname) {
 		boolean found = false;
 		for (List<String> l : locals) {
@@ -1976,6 +2768,26 @@ public class ImplWriter extends TransformWriter {
 				+ "* >(");
 	}
 
+	/** A downcast known to succeed - only the pointer needs adjusting */
+	private void uncheckedCast(ITypeBinding source, ITypeBinding target) {
+		if (CastAnalysis.isClassChain(source, target)) {
+			staticCast(source, target);
+			return;
+		}
+
+		// Can't fail, so the null of a failed instance_cast never shows
+		instanceCast(source, target);
+	}
+
+	/** A downcast that yields null instead of throwing when it fails */
+	private void instanceCast(ITypeBinding source, ITypeBinding target) {
+		hardDep(source);
+		hardDep(target);
+		deps.setJavaCast();
+		print(CName.INSTANCE_CAST + "< " + CName.relative(target, type, true)
+				+ "* >(");
+	}
+
 	private void cast(Expression argument, ITypeBinding pb, boolean hasOverloads) {
 		ITypeBinding tb = argument.resolveTypeBinding();
 		if (!tb.isEqualTo(pb)
@@ -2042,7 +2854,8 @@ public class ImplWriter extends TransformWriter {
 			}
 
 			if (isVolatileAccess(node)) {
-				print(".load()");
+				String order = memoryOrder(node);
+				print(order == null ? ".load()" : ".load(" + order + ")");
 			}
 		}
 
@@ -2148,12 +2961,27 @@ public class ImplWriter extends TransformWriter {
 		return false;
 	}
 
+	@Override
+	public boolean visit(SuperMethodReference node) {
+		methodReference(node);
+		return false;
+	}
+
 	@Override
 	public boolean visit(SwitchCase node) {
 		printi();
 
 		if (node.isDefault()) {
 			print("default:");
+		} else if (stringCases.containsKey(node)) {
+			print("case " + stringCases.get(node) + ":");
+		} else if (node.getExpression().resolveTypeBinding().isEnum()) {
+			ITypeBinding tb = node.getExpression().resolveTypeBinding();
+			IVariableBinding vb = (IVariableBinding) ((Name) node
+					.getExpression()).resolveBinding();
+			print("case " + CName.relative(tb, type, true) + "::"
+					+ CName.ORDINALS + "::" + CName.keywords(vb.getName())
+					+ ":");
 		} else {
 			print("case ");
 			node.getExpression().accept(this);
@@ -2187,7 +3015,10 @@ public class ImplWriter extends TransformWriter {
 			}
 		}
 
-		if (node.getExpression().resolveTypeBinding().isEnum()) {
+		ITypeBinding tb = node.getExpression().resolveTypeBinding();
+		if (TransformUtil.same(tb, String.class)) {
+			stringSwitch(node, statements);
+		} else if (tb.isEnum() && TransformUtil.enumConstants(tb) == null) {
 			enumSwitch(node, statements);
 		} else {
 			nativeSwitch(node, statements);
@@ -2207,7 +3038,8 @@ public class ImplWriter extends TransformWriter {
 	private final List<String> enumSwitchLabels = new ArrayList<String>();
 
 	private void enumSwitch(SwitchStatement node, List<Statement> statements) {
-		// Enum constants as we translate them are not C++ constexpr:s so we
+		// Without the constants of the enum there are no ordinals to switch
+		// on, and the constants themselves are not C++ constexpr:s, so we
 		// have to rewrite the switch to if:s
 		printlni("{");
 		indent++;
@@ -2313,11 +3145,104 @@ public class ImplWriter extends TransformWriter {
 		return enumSwitchLabels.get(enumSwitchLabels.size() - 1);
 	}
 
+	/** Case labels of string switches, replaced by their index */
+	private final Map<SwitchCase, Integer> stringCases = new HashMap<SwitchCase, Integer>();
+
+	/**
+	 * Like javac, switch on the hash code of the string, which is known for
+	 * each label at translation time, compare only within the bucket it
+	 * selects, and then switch on the index of the matching label
+	 */
+	private void stringSwitch(SwitchStatement node, List<Statement> statements) {
+		printlni("{");
+		indent++;
+
+		String name = "v";
+		while (localInScope(name)) {
+			name = name + "_";
+		}
+
+		String index = "i";
+		while (localInScope(index)) {
+			index = index + "_";
+		}
+
+		locals.add(new ArrayList<String>());
+		locals.get(locals.size() - 1).add(name);
+		locals.get(locals.size() - 1).add(index);
+
+		printi("auto " + name + " = ");
+		npcAccept(node.getExpression());
+		println(";");
+		printlni("int32_t " + index + " = -1;");
+
+		Map<Integer, List<SwitchCase>> buckets = new TreeMap<Integer, List<SwitchCase>>();
+		for (Statement s : statements) {
+			if (s instanceof SwitchCase && !((SwitchCase) s).isDefault()) {
+				SwitchCase sc = (SwitchCase) s;
+				stringCases.put(sc, stringCases.size());
+
+				int hash = ((String) sc.getExpression()
+						.resolveConstantExpressionValue()).hashCode();
+				List<SwitchCase> bucket = buckets.get(hash);
+				if (bucket == null) {
+					buckets.put(hash, bucket = new ArrayList<SwitchCase>());
+				}
+
+				bucket.add(sc);
+			}
+		}
+
+		printlni("switch (" + name + "->hashCode()) {");
+		for (Map.Entry<Integer, List<SwitchCase>> e : buckets.entrySet()) {
+			printlni("case " + TransformUtil.checkConstant(e.getKey(), false)
+					+ ":");
+			indent++;
+
+			String sep = "if(";
+			for (SwitchCase sc : e.getValue()) {
+				printi(sep + name + "->equals(");
+				sc.getExpression().accept(this);
+				println(")) " + index + " = " + stringCases.get(sc) + ";");
+				sep = "else if(";
+			}
+
+			printlni("break;");
+			indent--;
+		}
+
+		printlni("}");
+
+		printlni("switch (" + index + ") {");
+		switchBody(statements);
+
+		for (Statement s : statements) {
+			stringCases.remove(s);
+		}
+
+		indent--;
+		locals.remove(locals.size() - 1);
+		printlni("}");
+	}
+
 	private void nativeSwitch(SwitchStatement node, List<Statement> statements) {
 		printi("switch (");
-		node.getExpression().accept(this);
+		ITypeBinding tb = node.getExpression().resolveTypeBinding();
+		if (tb.isEnum()) {
+			// Cases are the constexpr ordinals from the enum header
+			hardDep(tb);
+			npcAccept(node.getExpression());
+			print("->ordinal()");
+		} else {
+			node.getExpression().accept(this);
+		}
 		println(") {");
 
+		switchBody(statements);
+	}
+
+	/** Cases of a switch whose head has been printed, and its closing brace */
+	private void switchBody(List<Statement> statements) {
 		boolean indented = false;
 		boolean wasCase = false;
 		for (int i = 0; i < statements.size(); ++i) {
@@ -2393,8 +3318,63 @@ public class ImplWriter extends TransformWriter {
 
 	private int sc;
 
+	/** True if node locks this in a method that already holds this */
+	private static boolean isLockHeld(SynchronizedStatement node) {
+		if (!(node.getExpression() instanceof ThisExpression)
+				|| ((ThisExpression) node.getExpression()).getQualifier() != null) {
+			return false;
+		}
+
+		for (ASTNode n = node.getParent(); n != null; n = n.getParent()) {
+			if (n instanceof MethodDeclaration) {
+				int modifiers = ((MethodDeclaration) n).getModifiers();
+				return Modifier.isSynchronized(modifiers)
+						&& !Modifier.isStatic(modifiers);
+			}
+
+			if (n instanceof SynchronizedStatement
+					&& ((SynchronizedStatement) n).getExpression() instanceof ThisExpression
+					&& ((ThisExpression) ((SynchronizedStatement) n)
+							.getExpression()).getQualifier() == null) {
+				return true;
+			}
+
+			// Lambda bodies run later, maybe without the lock
+			if (n instanceof AnonymousClassDeclaration
+					|| n instanceof TypeDeclarationStatement
+					|| n instanceof LambdaExpression) {
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	/** Hold the monitor of this (or the class) for the whole method body */
+	private void printSynchronizedMethod(MethodDeclaration node) {
+		if (Modifier.isStatic(node.getModifiers())) {
+			hardDep(ctx.resolve(Class.class));
+			printlni("synchronized synchronized_" + sc + "(class_());");
+		} else {
+			printlni("synchronized synchronized_" + sc + "(this);");
+		}
+
+		deps.setNeedsSynchronized();
+
+		sc++;
+	}
+
 	@Override
 	public boolean visit(SynchronizedStatement node) {
+		if (isLockHeld(node)
+				|| EscapeAnalysis.isThreadLocal(node.getExpression())) {
+			// No other thread can contend - keep just the body
+			printi();
+			node.getBody().accept(this);
+			println();
+			return false;
+		}
+
 		printlni("{");
 		indent++;
 		printi("synchronized synchronized_" + sc + "(");
@@ -2556,6 +3536,12 @@ public class ImplWriter extends TransformWriter {
 		return false;
 	}
 
+	@Override
+	public boolean visit(TypeMethodReference node) {
+		methodReference(node);
+		return false;
+	}
+
 	@Override
 	public boolean visit(TypeParameter node) {
 		node.getName().accept(this);
@@ -2619,13 +3605,35 @@ public class ImplWriter extends TransformWriter {
 
 	@Override
 	public boolean visit(VariableDeclarationStatement node) {
+		if (fusedCasts.remove(node)) {
+			// Declared in the condition of the enclosing if
+			return false;
+		}
+
 		List<VariableDeclarationFragment> fragments = node.fragments();
 
 		int modifiers = node.getModifiers();
 		if (isAnySpecial(fragments)) {
 			for (VariableDeclarationFragment fragment : fragments) {
+				if (EscapeAnalysis.isStackAllocatable(fragment)) {
+					printStackVariable(modifiers, fragment);
+					continue;
+				}
+
 				printi(TransformUtil.variableModifiers(type, modifiers));
 				ITypeBinding fb = fragment.resolveBinding().getType();
+
+				if (BoxAnalysis.isUnboxable(fragment)) {
+					unboxedLocals.add(fragment.resolveBinding()
+							.getVariableDeclaration());
+					fb = BoxAnalysis.primitive(fragment, fb);
+					print(TransformUtil.varTypeCName(modifiers, fb, type, deps)
+							+ " ");
+					fragment.accept(this);
+					println(";");
+					continue;
+				}
+
 				softDep(fb);
 
 				if (TransformUtil.canDeclareAuto(node, fragment)) {
@@ -2655,6 +3663,46 @@ public class ImplWriter extends TransformWriter {
 		return false;
 	}
 
+	/**
+	 * Construct an object that never leaves the method on the stack, and point
+	 * the variable at it
+	 */
+	private void printStackVariable(int modifiers,
+			VariableDeclarationFragment fragment) {
+		IVariableBinding vb = fragment.resolveBinding();
+		locals.get(locals.size() - 1).add(CName.of(vb));
+
+		Expression initializer = fragment.getInitializer();
+		while (initializer instanceof ParenthesizedExpression) {
+			initializer = ((ParenthesizedExpression) initializer)
+					.getExpression();
+		}
+
+		ClassInstanceCreation cic = (ClassInstanceCreation) initializer;
+		ITypeBinding tb = cic.getType().resolveBinding();
+		hardDep(tb);
+
+		PrintWriter old = out;
+		StringWriter sw = new StringWriter();
+		out = new PrintWriter(sw);
+		consArgs(cic.getExpression(), cic.arguments(),
+				cic.resolveConstructorBinding(), tb, null, 0);
+		out.close();
+		out = old;
+
+		// T x() would declare a function
+		String args = sw.toString();
+		String storage = CName.of(vb) + "_stack_";
+		printlni(CName.relative(tb, type, true) + " " + storage
+				+ (args.equals("()") ? "" : args) + ";");
+
+		printi(TransformUtil.variableModifiers(type, modifiers));
+		print(TransformUtil.varTypeCName(modifiers, vb.getType(), type, deps)
+				+ " ");
+		fragment.getName().accept(this);
+		println(" = &" + storage + ";");
+	}
+
 	@Override
 	public boolean visit(WhileStatement node) {
 		printi("while (");
@@ -0,0 +1,446 @@
+package se.arnetheduck.j2c.transform;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CreationReference;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionMethodReference;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.MethodReference;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SuperMethodReference;
+import org.eclipse.jdt.core.dom.SwitchStatement;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+
+/**
+ * Lambdas and method references become C++ lambdas, wrapped in an adapter
+ * class that implements the functional interface by calling the closure.
+ *
+ * The adapter is a template over the closure type, written once per
+ * interface in each implementation file that needs it. A lambda that
+ * captures nothing - no locals and no this - gets a single adapter for the
+ * life of the program, others get a new one each time they are evaluated.
+ * Where the functional interface method is called on the lambda right away,
+ * or on a local that holds it and is used for nothing else, the closure is
+ * called directly and no adapter is made at all.
+ */
+public class Lambdas {
+	/** The functional interface node, a lambda or method reference, implements */
+	public static ITypeBinding type(Expression node) {
+		ITypeBinding tb = node.resolveTypeBinding();
+		if (tb != null && tb.isIntersectionType()) {
+			for (ITypeBinding bound : tb.getTypeBounds()) {
+				if (bound.getFunctionalInterfaceMethod() != null) {
+					return bound;
+				}
+			}
+		}
+
+		return tb;
+	}
+
+	/** The method of fi that closures implement, as declared */
+	public static IMethodBinding method(ITypeBinding fi) {
+		return fi.getErasure().getFunctionalInterfaceMethod()
+				.getMethodDeclaration();
+	}
+
+	/** The return type of mb as the header of its class declares it */
+	public static ITypeBinding returnType(IMethodBinding mb) {
+		ITypeBinding dc = mb.getDeclaringClass();
+		return dc.isFromSource() ? TransformUtil.returnType(dc, mb) : mb
+				.getReturnType();
+	}
+
+	/**
+	 * The abstract methods of fi - all the functional method, possibly with
+	 * other erasures, and each declared in C++ by its own interface
+	 */
+	public static List<IMethodBinding> methods(Transformer ctx, ITypeBinding fi) {
+		List<IMethodBinding> ret = new ArrayList<IMethodBinding>();
+		methods(ctx, fi.getErasure(), ret, new HashSet<ITypeBinding>());
+		return ret;
+	}
+
+	private static void methods(Transformer ctx, ITypeBinding tb,
+			List<IMethodBinding> ret, Set<ITypeBinding> seen) {
+		if (!seen.add(tb)) {
+			return;
+		}
+
+		for (IMethodBinding mb : tb.getDeclaredMethods()) {
+			if (Modifier.isAbstract(mb.getModifiers())
+					&& !TransformUtil.baseDeclared(ctx, tb, mb)) {
+				ret.add(mb);
+			}
+		}
+
+		for (ITypeBinding ib : tb.getInterfaces()) {
+			methods(ctx, ib.getErasure(), ret, seen);
+		}
+	}
+
+	/** The adapter template that implements fi */
+	public static String adapter(ITypeBinding fi) {
+		return "lambda_"
+				+ CName.qualified(fi.getErasure(), false).replace("::", "_");
+	}
+
+	/** True if the closure of node needs this or locals of its context */
+	public static boolean captures(final Expression node) {
+		if (node instanceof ExpressionMethodReference) {
+			Expression expr = ((ExpressionMethodReference) node)
+					.getExpression();
+			return !isType(expr) || captures(expr);
+		}
+
+		if (node instanceof SuperMethodReference) {
+			return true;
+		}
+
+		if (node instanceof CreationReference) {
+			ITypeBinding tb = ((CreationReference) node).getType()
+					.resolveBinding();
+			return TransformUtil.hasOuterThis(tb) || tb.isLocal();
+		}
+
+		if (node instanceof MethodReference) {
+			return false;
+		}
+
+		// Locals declared inside don't count
+		final Set<IVariableBinding> declared = new HashSet<IVariableBinding>();
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SingleVariableDeclaration node) {
+				declared.add(node.resolveBinding().getVariableDeclaration());
+				return true;
+			}
+
+			@Override
+			public boolean visit(VariableDeclarationFragment node) {
+				declared.add(node.resolveBinding().getVariableDeclaration());
+				return true;
+			}
+		});
+
+		final boolean[] ret = { false };
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(ThisExpression node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(SuperMethodInvocation node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(SuperFieldAccess node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(SuperMethodReference node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				// Might take this or locals as hidden constructor arguments
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(ClassInstanceCreation node) {
+				ITypeBinding tb = node.resolveTypeBinding();
+				if (tb == null || TransformUtil.hasOuterThis(tb)
+						|| tb.isLocal()) {
+					ret[0] = true;
+				}
+
+				return true;
+			}
+
+			@Override
+			public boolean visit(CreationReference node) {
+				ret[0] |= captures(node);
+				return false;
+			}
+
+			@Override
+			public boolean visit(MethodInvocation node) {
+				IMethodBinding mb = node.resolveMethodBinding();
+				if (node.getExpression() == null
+						&& (mb == null || !TransformUtil.isStatic(mb))) {
+					ret[0] = true;
+				}
+
+				return true;
+			}
+
+			@Override
+			public boolean visit(SimpleName node) {
+				IBinding b = node.resolveBinding();
+				if (!(b instanceof IVariableBinding)) {
+					return false;
+				}
+
+				IVariableBinding vb = (IVariableBinding) b;
+				if (vb.isField()) {
+					if (!TransformUtil.isStatic(vb) && !isQualified(node)) {
+						ret[0] = true;
+					}
+				} else if (!declared.contains(vb.getVariableDeclaration())) {
+					ret[0] = true;
+				}
+
+				return false;
+			}
+		});
+
+		return ret[0];
+	}
+
+	/** True if the field named by node is accessed through an expression */
+	private static boolean isQualified(SimpleName node) {
+		ASTNode parent = node.getParent();
+		return parent instanceof QualifiedName
+				&& ((QualifiedName) parent).getName() == node
+				|| parent instanceof FieldAccess
+				&& ((FieldAccess) parent).getName() == node;
+	}
+
+	/** True if expr names a type rather than a value */
+	public static boolean isType(Expression expr) {
+		return expr instanceof Name
+				&& ((Name) expr).resolveBinding() instanceof ITypeBinding;
+	}
+
+	/**
+	 * True if node, a lambda or method reference, is printed as just its
+	 * closure because its only use is to be called
+	 */
+	public static boolean isBare(Expression node) {
+		ASTNode parent = node.getParent();
+		while (parent instanceof ParenthesizedExpression
+				|| parent instanceof CastExpression) {
+			node = (Expression) parent;
+			parent = parent.getParent();
+		}
+
+		if (parent instanceof VariableDeclarationFragment) {
+			return node.getLocationInParent() == VariableDeclarationFragment.INITIALIZER_PROPERTY
+					&& isInlined((VariableDeclarationFragment) parent);
+		}
+
+		return parent instanceof MethodInvocation
+				&& node.getLocationInParent() == MethodInvocation.EXPRESSION_PROPERTY
+				&& isDirect((MethodInvocation) parent);
+	}
+
+	/**
+	 * True if node calls the functional method right on a lambda, or on a
+	 * local declared with its closure
+	 */
+	public static boolean isDirect(MethodInvocation node) {
+		IMethodBinding mb = node.resolveMethodBinding();
+		Expression expr = strip(node.getExpression());
+		if (mb == null || expr == null) {
+			return false;
+		}
+
+		ITypeBinding fi = expr instanceof SimpleName ? expr
+				.resolveTypeBinding() : type(expr);
+		return fi != null && fi.getFunctionalInterfaceMethod() != null
+				&& mb.getMethodDeclaration().isEqualTo(method(fi))
+				&& closure(expr) != null;
+	}
+
+	/**
+	 * The lambda, method reference or inlined local that expr is, without
+	 * parentheses and casts, or null
+	 */
+	public static Expression closure(Expression expr) {
+		expr = strip(expr);
+		if (expr instanceof LambdaExpression
+				|| expr instanceof MethodReference) {
+			return expr;
+		}
+
+		if (expr instanceof SimpleName) {
+			VariableDeclarationFragment fragment = declaration((SimpleName) expr);
+			return fragment != null && isInlined(fragment) ? expr : null;
+		}
+
+		return null;
+	}
+
+	private static Expression strip(Expression expr) {
+		while (expr instanceof ParenthesizedExpression
+				|| expr instanceof CastExpression) {
+			expr = expr instanceof CastExpression ? ((CastExpression) expr)
+					.getExpression() : ((ParenthesizedExpression) expr)
+					.getExpression();
+		}
+
+		return expr;
+	}
+
+	private static VariableDeclarationFragment declaration(SimpleName name) {
+		IBinding b = name.resolveBinding();
+		if (!(b instanceof IVariableBinding) || ((IVariableBinding) b).isField()) {
+			return null;
+		}
+
+		ASTNode body = EscapeAnalysis.body(name);
+		if (body == null) {
+			return null;
+		}
+
+		final IVariableBinding vb = ((IVariableBinding) b)
+				.getVariableDeclaration();
+		final VariableDeclarationFragment[] ret = { null };
+		body.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(VariableDeclarationFragment node) {
+				if (vb.isEqualTo(node.resolveBinding())) {
+					ret[0] = node;
+				}
+
+				return ret[0] == null;
+			}
+		});
+
+		return ret[0];
+	}
+
+	/**
+	 * True if node declares a local that holds a closure rather than an
+	 * object - it must be initialized with a lambda or method reference,
+	 * never assigned and only ever used to call the functional method on
+	 */
+	public static boolean isInlined(VariableDeclarationFragment node) {
+		if (!(node.getParent() instanceof VariableDeclarationStatement)
+				|| node.getParent().getParent() instanceof SwitchStatement
+				|| ((VariableDeclarationStatement) node.getParent())
+						.fragments().size() != 1
+				|| node.getExtraDimensions() != 0) {
+			return false;
+		}
+
+		Expression init = node.getInitializer();
+		while (init instanceof ParenthesizedExpression) {
+			init = ((ParenthesizedExpression) init).getExpression();
+		}
+
+		if (!(init instanceof LambdaExpression || init instanceof MethodReference)) {
+			return false;
+		}
+
+		final IVariableBinding vb = node.resolveBinding();
+		if (!Modifier.isFinal(vb.getModifiers()) && !vb.isEffectivelyFinal()) {
+			return false;
+		}
+
+		ITypeBinding fi = vb.getType();
+		if (fi.getFunctionalInterfaceMethod() == null
+				|| !fi.getErasure().isEqualTo(type(init).getErasure())) {
+			return false;
+		}
+
+		final IMethodBinding sam = method(fi);
+		ASTNode body = EscapeAnalysis.body(node);
+		if (body == null) {
+			return false;
+		}
+
+		final boolean[] ret = { true };
+		body.accept(new ASTVisitor() {
+			private int nested;
+
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				nested++;
+				return true;
+			}
+
+			@Override
+			public void endVisit(AnonymousClassDeclaration node) {
+				nested--;
+			}
+
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				nested++;
+				return true;
+			}
+
+			@Override
+			public void endVisit(TypeDeclarationStatement node) {
+				nested--;
+			}
+
+			@Override
+			public boolean visit(SimpleName node) {
+				if (node.isDeclaration()
+						|| !vb.isEqualTo(node.resolveBinding())) {
+					return false;
+				}
+
+				// Closures of local classes are fields of the declared type
+				if (nested > 0
+						|| node.getLocationInParent() != MethodInvocation.EXPRESSION_PROPERTY) {
+					ret[0] = false;
+					return false;
+				}
+
+				IMethodBinding mb = ((MethodInvocation) node.getParent())
+						.resolveMethodBinding();
+				if (mb == null || !mb.getMethodDeclaration().isEqualTo(sam)) {
+					ret[0] = false;
+				}
+
+				return false;
+			}
+		});
+
+		return ret[0];
+	}
+}
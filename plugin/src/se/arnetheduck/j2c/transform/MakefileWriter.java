@@ -14,6 +14,7 @@ public class MakefileWriter {
 		public final Set<String> impls = new TreeSet<String>();
 		public final Set<String> stubs = new TreeSet<String>();
 		public final Set<String> natives = new TreeSet<String>();
+		public final Set<String> replacements = new TreeSet<String>();
 		public final Set<String> mains = new TreeSet<String>();
 	}
 
@@ -28,7 +29,13 @@ public class MakefileWriter {
 				name, list(sel.impls, ""), list(sel.stubs, ""),
 				list(sel.natives, ""), list(ext.impls, "ext/"),
 				list(ext.stubs, "ext/"), list(ext.natives, "ext/"),
-				list(sel.mains, ""));
+				list(sel.mains, ""), list(replacements(sel, ext), "$(J2C_LIB)/"));
+	}
+
+	private static Collection<String> replacements(Info sel, Info ext) {
+		Set<String> ret = new TreeSet<String>(sel.replacements);
+		ret.addAll(ext.replacements);
+		return ret;
 	}
 
 	private static String list(Collection<String> items, String prefix) {
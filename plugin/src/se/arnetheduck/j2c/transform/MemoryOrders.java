@@ -0,0 +1,467 @@
+package se.arnetheduck.j2c.transform;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.CreationReference;
+import org.eclipse.jdt.core.dom.DoStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionMethodReference;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SuperMethodReference;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.WhileStatement;
+
+/**
+ * std::memory_order to use for each volatile access in a method body.
+ *
+ * A volatile load can only be acquire and a plain store release if no store
+ * comes before the load and no load after the store, or the store-load
+ * ordering the JMM gives volatile accesses would be lost. The analysis is per
+ * body, and a caller may have stored a volatile just before the call and load
+ * one as soon as the body returns, so the start of the body counts as a store
+ * and the end as a load - loads and stores that are not relaxed thus stay
+ * seq_cst. Read-modify-write operations keep the seq_cst default of the
+ * std::atomic operators. Fields of an object that cannot yet have been
+ * published (in a constructor that does not leak this) are relaxed.
+ *
+ * Lambda bodies run at some other time and keep the seq_cst default
+ * throughout.
+ */
+public class MemoryOrders extends ASTVisitor {
+	public static final String RELAXED = "std::memory_order_relaxed";
+	public static final String ACQUIRE = "std::memory_order_acquire";
+	public static final String RELEASE = "std::memory_order_release";
+	public static final String SEQ_CST = "std::memory_order_seq_cst";
+
+	private enum Kind {
+		LOAD, STORE, RMW, CALL
+	}
+
+	private static class Access {
+		final ASTNode node;
+		final Kind kind;
+		final int pos;
+		final ASTNode loop;
+		final boolean relaxed;
+
+		Access(ASTNode node, Kind kind, int pos, ASTNode loop, boolean relaxed) {
+			this.node = node;
+			this.kind = kind;
+			this.pos = pos;
+			this.loop = loop;
+			this.relaxed = relaxed;
+		}
+
+		boolean loads() {
+			return kind != Kind.STORE;
+		}
+
+		boolean stores() {
+			return kind != Kind.LOAD;
+		}
+	}
+
+	private final ITypeBinding type;
+	private final boolean confined;
+	private final List<ASTNode> roots;
+	private final List<Access> accesses = new ArrayList<Access>();
+	private final Map<ASTNode, String> orders = new HashMap<ASTNode, String>();
+
+	private MemoryOrders(ITypeBinding type, boolean confined,
+			List<ASTNode> roots) {
+		this.type = type;
+		this.confined = confined;
+		this.roots = roots;
+
+		// Whatever the caller did before
+		accesses.add(new Access(null, Kind.STORE, Integer.MIN_VALUE, null,
+				false));
+
+		for (ASTNode root : roots) {
+			root.accept(this);
+		}
+
+		// Whatever the caller does next
+		accesses.add(new Access(null, Kind.CALL, Integer.MAX_VALUE, null,
+				false));
+
+		for (Access a : accesses) {
+			if (a.node != null
+					&& (a.kind == Kind.LOAD || a.kind == Kind.STORE)) {
+				orders.put(a.node, order(a));
+			}
+		}
+	}
+
+	/** Memory orders for a method or constructor body */
+	public static MemoryOrders of(ITypeBinding type, ASTNode body,
+			boolean constructor) {
+		List<ASTNode> roots = new ArrayList<ASTNode>();
+		roots.add(body);
+		return of(type, roots, constructor);
+	}
+
+	/**
+	 * Memory orders for a sequence of nodes run in order, such as the contents
+	 * of init()
+	 */
+	public static MemoryOrders of(ITypeBinding type, List<ASTNode> roots,
+			boolean constructor) {
+		boolean confined = constructor && isUnpublished(type);
+		for (int i = 0; confined && i < roots.size(); ++i) {
+			confined = !escapes(type, roots.get(i));
+		}
+
+		return new MemoryOrders(type, confined, roots);
+	}
+
+	/**
+	 * Order for a volatile load or plain store, or null if the access should
+	 * keep the default seq_cst operator
+	 */
+	public String of(ASTNode node) {
+		return orders.get(node);
+	}
+
+	/** The name of the volatile field that expr accesses, if any */
+	public static SimpleName volatileName(Expression expr) {
+		while (expr instanceof ParenthesizedExpression) {
+			expr = ((ParenthesizedExpression) expr).getExpression();
+		}
+
+		SimpleName name = null;
+		if (expr instanceof SimpleName) {
+			name = (SimpleName) expr;
+		} else if (expr instanceof QualifiedName) {
+			name = ((QualifiedName) expr).getName();
+		} else if (expr instanceof FieldAccess) {
+			name = ((FieldAccess) expr).getName();
+		} else if (expr instanceof SuperFieldAccess) {
+			name = ((SuperFieldAccess) expr).getName();
+		}
+
+		return name != null && isVolatileField(name.resolveBinding()) ? name
+				: null;
+	}
+
+	/** True if a store to this assignment's left hand side can use store() */
+	public static boolean isPlainStore(Assignment node) {
+		return node.getOperator() == Assignment.Operator.ASSIGN
+				&& node.getParent() instanceof ExpressionStatement
+				&& volatileName(node.getLeftHandSide()) != null;
+	}
+
+	private static boolean isVolatileField(IBinding b) {
+		if (!(b instanceof IVariableBinding)) {
+			return false;
+		}
+
+		IVariableBinding vb = (IVariableBinding) b;
+		return vb.isField() && Modifier.isVolatile(vb.getModifiers());
+	}
+
+	/**
+	 * Nobody but the constructor can see the object until the superclass
+	 * constructor, which might leak it, is Object's
+	 */
+	private static boolean isUnpublished(ITypeBinding type) {
+		ITypeBinding sb = type.getSuperclass();
+		return sb != null && TransformUtil.same(sb, Object.class)
+				&& !type.isEnum();
+	}
+
+	/** True if node might make this visible outside the constructor */
+	private static boolean escapes(final ITypeBinding type, ASTNode node) {
+		final boolean[] ret = { false };
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(ThisExpression node) {
+				if (!(node.getParent() instanceof FieldAccess)
+						|| node.getQualifier() != null) {
+					ret[0] = true;
+				}
+				return false;
+			}
+
+			@Override
+			public boolean visit(MethodInvocation node) {
+				if (node.getExpression() == null
+						&& !Modifier.isStatic(node.resolveMethodBinding()
+								.getModifiers())) {
+					ret[0] = true;
+				}
+				return true;
+			}
+
+			@Override
+			public boolean visit(SuperMethodInvocation node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(ConstructorInvocation node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(ClassInstanceCreation node) {
+				ITypeBinding tb = node.resolveTypeBinding();
+				if (node.getAnonymousClassDeclaration() != null
+						|| TransformUtil.hasOuterThis(tb)) {
+					ret[0] = true;
+				}
+				return true;
+			}
+
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(LambdaExpression node) {
+				// The closure might hold this
+				ret[0] |= Lambdas.captures(node);
+				return false;
+			}
+
+			@Override
+			public boolean visit(CreationReference node) {
+				ret[0] |= Lambdas.captures(node);
+				return false;
+			}
+
+			@Override
+			public boolean visit(ExpressionMethodReference node) {
+				ret[0] |= Lambdas.captures(node);
+				return false;
+			}
+
+			@Override
+			public boolean visit(SuperMethodReference node) {
+				ret[0] = true;
+				return false;
+			}
+		});
+
+		return ret[0];
+	}
+
+	private String order(Access a) {
+		if (a.relaxed) {
+			return RELAXED;
+		}
+
+		for (Access b : accesses) {
+			if (b == a || b.relaxed) {
+				continue;
+			}
+
+			boolean sameLoop = a.loop != null && a.loop == b.loop;
+			if (a.kind == Kind.STORE && b.loads()
+					&& (b.pos > a.pos || sameLoop)) {
+				return SEQ_CST;
+			}
+
+			if (a.kind == Kind.LOAD && b.stores()
+					&& (b.pos < a.pos || sameLoop)) {
+				return SEQ_CST;
+			}
+		}
+
+		return a.kind == Kind.STORE ? RELEASE : ACQUIRE;
+	}
+
+	/** Outermost loop around node, within the analyzed nodes */
+	private ASTNode loop(ASTNode node) {
+		ASTNode ret = null;
+		for (ASTNode n = node; n != null && !roots.contains(n); n = n
+				.getParent()) {
+			if (n instanceof WhileStatement || n instanceof DoStatement
+					|| n instanceof ForStatement
+					|| n instanceof EnhancedForStatement) {
+				ret = n;
+			}
+		}
+
+		return ret;
+	}
+
+	/** An access through this to a field of the object being constructed */
+	private boolean isOwn(SimpleName name, IVariableBinding vb) {
+		if (!confined || Modifier.isStatic(vb.getModifiers())
+				|| !vb.getDeclaringClass().getErasure()
+						.isEqualTo(type.getErasure())) {
+			return false;
+		}
+
+		ASTNode parent = name.getParent();
+		if (parent instanceof QualifiedName
+				|| parent instanceof SuperFieldAccess) {
+			return false;
+		}
+
+		if (parent instanceof FieldAccess) {
+			FieldAccess fa = (FieldAccess) parent;
+			return fa.getName() == name
+					&& fa.getExpression() instanceof ThisExpression
+					&& ((ThisExpression) fa.getExpression()).getQualifier() == null;
+		}
+
+		return true;
+	}
+
+	private void add(ASTNode node, Kind kind, int pos) {
+		accesses.add(new Access(node, kind, pos, loop(node), false));
+	}
+
+	private void call(ASTNode node) {
+		add(node, Kind.CALL, node.getStartPosition() + node.getLength());
+	}
+
+	@Override
+	public boolean visit(AnonymousClassDeclaration node) {
+		return false;
+	}
+
+	@Override
+	public boolean visit(TypeDeclarationStatement node) {
+		return false;
+	}
+
+	@Override
+	public boolean visit(LambdaExpression node) {
+		return false;
+	}
+
+	@Override
+	public void endVisit(ClassInstanceCreation node) {
+		call(node);
+	}
+
+	@Override
+	public void endVisit(ConstructorInvocation node) {
+		call(node);
+	}
+
+	@Override
+	public void endVisit(MethodInvocation node) {
+		call(node);
+	}
+
+	@Override
+	public void endVisit(SuperConstructorInvocation node) {
+		call(node);
+	}
+
+	@Override
+	public void endVisit(SuperMethodInvocation node) {
+		call(node);
+	}
+
+	@Override
+	public boolean visit(SynchronizedStatement node) {
+		add(node, Kind.CALL, node.getStartPosition());
+		return true;
+	}
+
+	@Override
+	public void endVisit(SynchronizedStatement node) {
+		call(node);
+	}
+
+	@Override
+	public boolean visit(VariableDeclarationFragment node) {
+		IVariableBinding vb = node.resolveBinding();
+		if (node.getInitializer() != null && isVolatileField(vb)) {
+			// Field initializers in init()
+			accesses.add(new Access(node, Kind.STORE, node.getStartPosition()
+					+ node.getLength(), loop(node), confined
+					&& !Modifier.isStatic(vb.getModifiers())));
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean visit(SimpleName node) {
+		IBinding b = node.resolveBinding();
+		if (!isVolatileField(b)) {
+			return false;
+		}
+
+		ASTNode parent = node.getParent();
+		if (parent instanceof VariableDeclarationFragment
+				&& ((VariableDeclarationFragment) parent).getName() == node) {
+			return false;
+		}
+
+		// Find the expression that the name is the value of
+		Expression expr = node;
+		while (true) {
+			ASTNode p = expr.getParent();
+			if (p instanceof QualifiedName
+					&& ((QualifiedName) p).getName() == expr
+					|| p instanceof FieldAccess
+					&& ((FieldAccess) p).getName() == expr
+					|| p instanceof SuperFieldAccess
+					|| p instanceof ParenthesizedExpression) {
+				expr = (Expression) p;
+			} else {
+				break;
+			}
+		}
+
+		ASTNode p = expr.getParent();
+		Kind kind = Kind.LOAD;
+		int pos = node.getStartPosition();
+		if (p instanceof Assignment
+				&& ((Assignment) p).getLeftHandSide() == expr) {
+			Assignment a = (Assignment) p;
+			kind = isPlainStore(a) ? Kind.STORE : Kind.RMW;
+			pos = a.getStartPosition() + a.getLength();
+		} else if (p instanceof PostfixExpression
+				|| p instanceof PrefixExpression
+				&& (((PrefixExpression) p).getOperator() == PrefixExpression.Operator.INCREMENT || ((PrefixExpression) p)
+						.getOperator() == PrefixExpression.Operator.DECREMENT)) {
+			kind = Kind.RMW;
+		}
+
+		accesses.add(new Access(node, kind, pos, loop(node), kind != Kind.RMW
+				&& isOwn(node, (IVariableBinding) b)));
+
+		return false;
+	}
+}
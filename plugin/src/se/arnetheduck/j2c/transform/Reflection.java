@@ -0,0 +1,92 @@
+package se.arnetheduck.j2c.transform;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+
+/**
+ * Classes whose fields, methods and constructors are listed in their class
+ * descriptor, for Class.getDeclaredFields and friends.
+ *
+ * Each member gets a thunk - a get and set of a field, or a call that unboxes
+ * its arguments from an Object[] - so that reflective access is a table
+ * lookup and an indirect call. Since that pulls in every member and the types
+ * it uses, only the classes listed in -Dj2c.reflect=a.B,c.d.* get tables. A
+ * name ending with .* covers a package and its subpackages, * covers all.
+ */
+public class Reflection {
+	private static final List<String> patterns = new ArrayList<String>();
+
+	static {
+		String config = System.getProperty("j2c.reflect");
+		if (config != null) {
+			for (String s : config.split(",")) {
+				if (!s.trim().isEmpty()) {
+					patterns.add(s.trim());
+				}
+			}
+		}
+	}
+
+	/** True if tb gets tables of its members */
+	public static boolean isReflected(ITypeBinding tb) {
+		if (tb.isLocal() || tb.isAnonymous() || tb.isArray()
+				|| tb.isPrimitive()) {
+			return false;
+		}
+
+		String name = tb.getErasure().getQualifiedName();
+		for (String p : patterns) {
+			if (p.equals("*") || p.equals(name) || p.endsWith(".*")
+					&& name.startsWith(p.substring(0, p.length() - 1))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/** The fields of tb that are listed, in declaration order */
+	public static List<IVariableBinding> fields(ITypeBinding tb) {
+		List<IVariableBinding> ret = new ArrayList<IVariableBinding>();
+		for (IVariableBinding vb : tb.getDeclaredFields()) {
+			if (isVisible(tb, vb.getModifiers())) {
+				ret.add(vb);
+			}
+		}
+
+		return ret;
+	}
+
+	/** The methods (or constructors) of tb that are listed */
+	public static List<IMethodBinding> methods(ITypeBinding tb,
+			boolean constructors) {
+		List<IMethodBinding> ret = new ArrayList<IMethodBinding>();
+		for (IMethodBinding mb : tb.getDeclaredMethods()) {
+			if (mb.isConstructor() == constructors && !mb.isSynthetic()
+					&& isVisible(tb, mb.getModifiers())) {
+				ret.add(mb);
+			}
+		}
+
+		return ret;
+	}
+
+	/** True if the constructors of tb can be called through a thunk */
+	public static boolean isConstructible(ITypeBinding tb) {
+		// Enums can't be made reflectively, inner classes take hidden
+		// parameters
+		return tb.isClass() && !Modifier.isAbstract(tb.getModifiers())
+				&& !TransformUtil.hasOuterThis(tb);
+	}
+
+	/** Headers written from the binding leave private members out */
+	private static boolean isVisible(ITypeBinding tb, int modifiers) {
+		return !Modifier.isPrivate(modifiers) || tb.isFromSource()
+				&& !Replacements.isReplaced(tb);
+	}
+}
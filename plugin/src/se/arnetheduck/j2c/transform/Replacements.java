@@ -0,0 +1,85 @@
+package se.arnetheduck.j2c.transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+/**
+ * Library classes that are implemented by hand in C++ instead of being
+ * translated.
+ *
+ * A replaced class still gets its header written from the binding, so the
+ * rest of the program sees the same ABI, and a stub with the constructor,
+ * static field and class literal boilerplate. The method definitions come
+ * from the runtime library, next to j2c.cpp, at the path the class would
+ * have in src/. Nested classes are part of the replacement of their outer
+ * class. Since the source of a replaced class is never translated, neither
+ * is anything that only it depends on.
+ *
+ * More replacements can be registered with
+ * -Dj2c.replacements=a.B:a.Dep1:a.Dep2,c.D - each class is followed by the
+ * classes its implementation needs complete declarations of.
+ */
+public class Replacements {
+	private static final Map<String, List<String>> replacements = new HashMap<String, List<String>>();
+
+	static {
+		// Math may be off by an ulp - what the C library gives
+		add("java.lang.Math", "java.lang.ArithmeticException",
+				"java.lang.String", "java.util.Random");
+		// ArrayList keeps its own bounds and skips the checked array accesses
+		add("java.util.ArrayList",
+				"java.lang.ArrayIndexOutOfBoundsException",
+				"java.lang.IllegalArgumentException",
+				"java.lang.IllegalStateException",
+				"java.lang.IndexOutOfBoundsException",
+				"java.lang.NullPointerException",
+				"java.lang.OutOfMemoryError", "java.lang.String",
+				"java.lang.StringBuilder", "java.lang.System",
+				"java.util.Arrays", "java.util.Collection",
+				"java.util.ConcurrentModificationException",
+				"java.util.NoSuchElementException",
+				"java.util.function.Consumer",
+				"java.util.function.Predicate",
+				"java.util.function.UnaryOperator");
+
+		String extra = System.getProperty("j2c.replacements");
+		if (extra != null) {
+			for (String s : extra.split(",")) {
+				String[] names = s.trim().split(":");
+				add(names[0], Arrays.copyOfRange(names, 1, names.length));
+			}
+		}
+	}
+
+	private static void add(String name, String... deps) {
+		replacements.put(name, new ArrayList<String>(Arrays.asList(deps)));
+	}
+
+	/** True if tb, or the class it is nested in, is implemented by hand */
+	public static boolean isReplaced(ITypeBinding tb) {
+		return replaced(tb) != null;
+	}
+
+	/** The top level class whose replacement covers tb, or null */
+	public static ITypeBinding replaced(ITypeBinding tb) {
+		tb = tb.getErasure();
+		while (tb.getDeclaringClass() != null) {
+			tb = tb.getDeclaringClass().getErasure();
+		}
+
+		return replacements.containsKey(tb.getQualifiedName()) ? tb : null;
+	}
+
+	/** Classes the implementation of tb needs to see declared */
+	public static List<String> deps(ITypeBinding tb) {
+		List<String> ret = replacements.get(tb.getErasure()
+				.getQualifiedName());
+		return ret == null ? Collections.<String> emptyList() : ret;
+	}
+}
@@ -0,0 +1,370 @@
+package se.arnetheduck.j2c.transform;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CreationReference;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+
+/**
+ * Finds anonymous classes whose instances can't be told apart, so that one
+ * instance, made the first time, can stand in for all of them.
+ *
+ * The class must implement an interface (a superclass could have state),
+ * take no constructor arguments, capture no locals, have no fields other
+ * than constants and leave the outer instance alone - the single instance
+ * gets none. What is left is its identity, and since what unknown code does
+ * with an instance can't be seen, the instance may only go where nothing
+ * can look at it: calls of the methods the class itself declares, and
+ * arguments of library methods that only call it while they run, such as
+ * Arrays.sort. A local may stand in between if all its uses are like that.
+ * Returned, stored in a field or passed anywhere else, it is made anew. The
+ * class itself may not compare, lock or hash this, or hand it on.
+ */
+public class Singletons {
+	/** Static library methods that don't keep their arguments */
+	private static final Set<String> nonRetaining = new HashSet<String>(
+			Arrays.asList("java.util.Arrays.sort",
+					"java.util.Arrays.parallelSort",
+					"java.util.Arrays.binarySearch",
+					"java.util.Collections.sort",
+					"java.util.Collections.binarySearch",
+					"java.util.Collections.max", "java.util.Collections.min"));
+
+	/** True if node may evaluate to the same instance every time */
+	public static boolean isSingleton(ClassInstanceCreation node,
+			UnitInfo unitInfo) {
+		AnonymousClassDeclaration anon = node.getAnonymousClassDeclaration();
+		if (anon == null || node.getExpression() != null
+				|| !node.arguments().isEmpty()) {
+			return false;
+		}
+
+		ITypeBinding tb = anon.resolveBinding();
+		if (tb == null || !TransformUtil.same(tb.getSuperclass(), Object.class)) {
+			return false;
+		}
+
+		TypeInfo typeInfo = unitInfo.types.get(tb);
+		if (typeInfo == null || !typeInfo.closures().isEmpty()) {
+			return false;
+		}
+
+		return isStateless(anon) && !usesOuter(anon, tb)
+				&& !observesSelf(anon, tb) && !observed(node, tb);
+	}
+
+	/** True if anon only has methods and constant fields */
+	private static boolean isStateless(AnonymousClassDeclaration anon) {
+		for (BodyDeclaration bd : (List<BodyDeclaration>) anon
+				.bodyDeclarations()) {
+			if (bd instanceof FieldDeclaration) {
+				for (VariableDeclarationFragment f : (List<VariableDeclarationFragment>) ((FieldDeclaration) bd)
+						.fragments()) {
+					if (TransformUtil.constantValue(f) == null) {
+						return false;
+					}
+				}
+			} else if (!(bd instanceof MethodDeclaration)
+					|| Modifier.isSynchronized(bd.getModifiers())) {
+				// Initializers, member types and methods that lock this
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/** True if anon needs the instance of an enclosing class */
+	private static boolean usesOuter(final AnonymousClassDeclaration anon,
+			final ITypeBinding tb) {
+		final boolean[] ret = { false };
+		anon.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				// Nested classes take their outer instance from this one
+				if (node != anon) {
+					ret[0] = true;
+				}
+
+				return !ret[0];
+			}
+
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				ret[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(ThisExpression node) {
+				ret[0] |= node.getQualifier() != null;
+				return false;
+			}
+
+			@Override
+			public boolean visit(SuperMethodInvocation node) {
+				ret[0] |= node.getQualifier() != null;
+				return true;
+			}
+
+			@Override
+			public boolean visit(SuperFieldAccess node) {
+				ret[0] |= node.getQualifier() != null;
+				return true;
+			}
+
+			@Override
+			public boolean visit(ClassInstanceCreation node) {
+				ITypeBinding ctb = node.resolveTypeBinding();
+				ret[0] |= node.getExpression() == null
+						&& (ctb == null || TransformUtil.hasOuterThis(ctb));
+				return true;
+			}
+
+			@Override
+			public boolean visit(CreationReference node) {
+				ITypeBinding ctb = node.getType().resolveBinding();
+				ret[0] |= ctb == null || TransformUtil.hasOuterThis(ctb);
+				return true;
+			}
+
+			@Override
+			public boolean visit(MethodInvocation node) {
+				IMethodBinding mb = node.resolveMethodBinding();
+				if (node.getExpression() == null
+						&& (mb == null || !TransformUtil.isStatic(mb)
+								&& !isOwn(tb, mb.getDeclaringClass()))) {
+					ret[0] = true;
+				}
+
+				return true;
+			}
+
+			@Override
+			public boolean visit(SimpleName node) {
+				IBinding b = node.resolveBinding();
+				if (b instanceof IVariableBinding) {
+					IVariableBinding vb = (IVariableBinding) b;
+					if (vb.isField() && !TransformUtil.isStatic(vb)
+							&& !isQualified(node)
+							&& !isOwn(tb, vb.getDeclaringClass())) {
+						ret[0] = true;
+					}
+				}
+
+				return false;
+			}
+		});
+
+		return ret[0];
+	}
+
+	/** True if members of dc are members of instances of tb */
+	private static boolean isOwn(ITypeBinding tb, ITypeBinding dc) {
+		return dc == null || tb.isEqualTo(dc)
+				|| tb.isSubTypeCompatible(dc.getErasure());
+	}
+
+	private static boolean isQualified(SimpleName node) {
+		ASTNode parent = node.getParent();
+		return parent instanceof QualifiedName
+				&& ((QualifiedName) parent).getName() == node
+				|| parent instanceof FieldAccess
+				&& ((FieldAccess) parent).getName() == node;
+	}
+
+	/** True if the methods of anon look at their own identity or leak it */
+	private static boolean observesSelf(AnonymousClassDeclaration anon,
+			final ITypeBinding tb) {
+		final boolean[] ret = { false };
+		anon.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(ThisExpression node) {
+				ret[0] |= !isSafeUse(outermost(node), tb);
+				return false;
+			}
+
+			@Override
+			public boolean visit(MethodInvocation node) {
+				// Inherited methods, default ones included, get this
+				IMethodBinding mb = node.resolveMethodBinding();
+				if (node.getExpression() == null
+						&& (mb == null || !TransformUtil.isStatic(mb)
+								&& !isDeclared(tb, mb))) {
+					ret[0] = true;
+				}
+
+				return true;
+			}
+
+			@Override
+			public boolean visit(SuperMethodInvocation node) {
+				ret[0] = true;
+				return true;
+			}
+
+			@Override
+			public boolean visit(LambdaExpression node) {
+				// The closure might hold this, and go anywhere
+				ret[0] |= Lambdas.captures(node);
+				return true;
+			}
+		});
+
+		return ret[0];
+	}
+
+	/**
+	 * True if the instance made by node goes somewhere that might look at its
+	 * identity, here or through the local it is kept in
+	 */
+	private static boolean observed(ClassInstanceCreation node, ITypeBinding tb) {
+		Expression use = outermost(node);
+		if (isSafeUse(use, tb)) {
+			return false;
+		}
+
+		IVariableBinding vb = null;
+		ASTNode parent = use.getParent();
+		if (parent instanceof VariableDeclarationFragment
+				&& use.getLocationInParent() == VariableDeclarationFragment.INITIALIZER_PROPERTY
+				&& parent.getParent() instanceof VariableDeclarationStatement) {
+			vb = ((VariableDeclarationFragment) parent).resolveBinding();
+		} else if (parent instanceof Assignment
+				&& use.getLocationInParent() == Assignment.RIGHT_HAND_SIDE_PROPERTY
+				&& parent.getParent() instanceof ExpressionStatement) {
+			vb = variable(((Assignment) parent).getLeftHandSide());
+		}
+
+		if (vb == null || vb.isField() || vb.isParameter()) {
+			return true;
+		}
+
+		ASTNode scope = EscapeAnalysis.body(node);
+		return scope == null
+				|| isObserved(vb.getVariableDeclaration(), scope, tb);
+	}
+
+	private static boolean isObserved(final IVariableBinding vb,
+			ASTNode scope, final ITypeBinding tb) {
+		final boolean[] ret = { false };
+		scope.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName node) {
+				IBinding b = node.resolveBinding();
+				if (node.isDeclaration() || !(b instanceof IVariableBinding)
+						|| !vb.isEqualTo(((IVariableBinding) b)
+								.getVariableDeclaration())) {
+					return false;
+				}
+
+				// Assigning the local again is fine, reading it is a use
+				Expression use = outermost(node);
+				ret[0] |= use.getLocationInParent() != Assignment.LEFT_HAND_SIDE_PROPERTY
+						&& !isSafeUse(use, tb);
+				return false;
+			}
+		});
+
+		return ret[0];
+	}
+
+	/** The field or local that expr names, or null */
+	private static IVariableBinding variable(Expression expr) {
+		IBinding b = null;
+		if (expr instanceof Name) {
+			b = ((Name) expr).resolveBinding();
+		} else if (expr instanceof FieldAccess) {
+			b = ((FieldAccess) expr).resolveFieldBinding();
+		}
+
+		return b instanceof IVariableBinding ? (IVariableBinding) b : null;
+	}
+
+	/** expr with any parentheses and casts around it */
+	private static Expression outermost(Expression expr) {
+		while (expr.getParent() instanceof ParenthesizedExpression
+				|| expr.getParent() instanceof CastExpression) {
+			expr = (Expression) expr.getParent();
+		}
+
+		return expr;
+	}
+
+	/**
+	 * True if the value of expr, an instance of tb, can't be seen by code
+	 * that might look at its identity
+	 */
+	private static boolean isSafeUse(Expression expr, ITypeBinding tb) {
+		ASTNode parent = expr.getParent();
+		if (parent instanceof MethodInvocation) {
+			IMethodBinding mb = ((MethodInvocation) parent)
+					.resolveMethodBinding();
+			if (mb == null) {
+				return false;
+			}
+
+			if (expr.getLocationInParent() == MethodInvocation.EXPRESSION_PROPERTY) {
+				return isDeclared(tb, mb);
+			}
+
+			ITypeBinding dc = mb.getDeclaringClass();
+			return TransformUtil.isStatic(mb)
+					&& dc != null
+					&& nonRetaining.contains(dc.getErasure()
+							.getQualifiedName() + "." + mb.getName());
+		}
+
+		// Constants
+		return parent instanceof FieldAccess
+				&& expr.getLocationInParent() == FieldAccess.EXPRESSION_PROPERTY
+				|| parent instanceof QualifiedName
+				&& expr.getLocationInParent() == QualifiedName.QUALIFIER_PROPERTY;
+	}
+
+	/**
+	 * True if mb is declared in tb, not inherited - the methods of tb are
+	 * checked, those of its interfaces and Object might do anything
+	 */
+	private static boolean isDeclared(ITypeBinding tb, IMethodBinding mb) {
+		for (IMethodBinding m : tb.getDeclaredMethods()) {
+			if (m.isEqualTo(mb) || m.overrides(mb)
+					|| m.overrides(mb.getMethodDeclaration())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -28,11 +28,10 @@ public class StubWriter {
 
 	private PrintWriter out;
 
-	public StubWriter(IPath root, Transformer ctx, ITypeBinding type) {
-		if (type.isInterface()) {
-			throw new UnsupportedOperationException();
-		}
+	/** Method definitions come from a replacement in the runtime library */
+	private boolean replaced;
 
+	public StubWriter(IPath root, Transformer ctx, ITypeBinding type) {
 		this.root = root;
 		this.ctx = ctx;
 		this.type = type;
@@ -59,6 +58,50 @@ public class StubWriter {
 		}
 	}
 
+	/**
+	 * Write the constructors, static fields and other boilerplate of a class
+	 * whose methods are defined by a hand written replacement
+	 */
+	public void writeReplaced() throws Exception {
+		replaced = true;
+		if (type.isEqualTo(Replacements.replaced(type))) {
+			for (String dep : Replacements.deps(type)) {
+				hardDep(ctx.resolve(dep));
+			}
+
+			ctx.addReplacement(type);
+		}
+
+		write(false, false);
+	}
+
+	/**
+	 * Interfaces have nothing to stub but the class descriptor and their
+	 * default and static methods
+	 */
+	public void writeInterface() throws Exception {
+		StringWriter sw = new StringWriter();
+		out = new PrintWriter(sw);
+
+		for (IMethodBinding mb : type.getDeclaredMethods()) {
+			if (TransformUtil.hasInterfaceBody(mb)) {
+				printMethod(mb, false);
+			}
+		}
+
+		out.close();
+		out = null;
+
+		String body = sw.toString();
+		if (!body.isEmpty()) {
+			body = "extern void unimplemented_(const char16_t* name);\n\n"
+					+ body;
+		}
+
+		ctx.addStub(type);
+		impl.write(root, body, TransformUtil.STUB, null, null, false);
+	}
+
 	private String getPrefix(boolean natives) {
 		StringWriter sw = new StringWriter();
 		out = new PrintWriter(sw);
@@ -111,7 +154,7 @@ public class StubWriter {
 		println();
 
 		for (IMethodBinding mb : type.getDeclaredMethods()) {
-			if (Modifier.isNative(mb.getModifiers()) == natives) {
+			if (replaced || Modifier.isNative(mb.getModifiers()) == natives) {
 				printMethod(mb, privates);
 			}
 		}
@@ -322,6 +365,21 @@ public class StubWriter {
 			return;
 		}
 
+		if (replaced) {
+			// Private members are left out of the header
+			if (!Modifier.isPrivate(mb.getModifiers())) {
+				impl.method(mb);
+
+				if (mb.isConstructor()) {
+					constructors.add(mb);
+				}
+
+				TransformUtil.defineBridge(ctx, out, type, mb, deps);
+			}
+
+			return;
+		}
+
 		if (Modifier.isPrivate(mb.getModifiers()) && !privates) {
 			print("/* private: ");
 			TransformUtil.printSignature(ctx, out, type, mb, deps, true);
@@ -345,7 +403,7 @@ public class StubWriter {
 			println(" /* stub */");
 		}
 
-		if (TransformUtil.isStatic(mb)) {
+		if (TransformUtil.isStatic(mb) && TypeUtil.isClassLike(type)) {
 			printClInitCall();
 		}
 
@@ -383,6 +441,11 @@ public class StubWriter {
 		deps.hard(dep);
 	}
 
+	/** The snippet boxes through the shared small value cache */
+	public void setBox() {
+		deps.setBox();
+	}
+
 	public void print(String string) {
 		out.print(string);
 	}
@@ -0,0 +1,233 @@
+package se.arnetheduck.j2c.transform;
+
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+/**
+ * Finds ThreadLocals whose value can live in a C++ thread_local slot instead
+ * of the ThreadLocalMap of the current Thread.
+ *
+ * A field qualifies if it is private static final, holds a plain ThreadLocal
+ * (one made with new, withInitial or an anonymous subclass that only
+ * overrides initialValue) and is only ever the receiver of get, set and
+ * remove. Being private, all its uses are in the compilation unit, so no
+ * other code can reach the ThreadLocal through its map. Anything else, like
+ * an InheritableThreadLocal or a ThreadLocal that is passed around, keeps
+ * going through the ThreadLocal methods.
+ */
+public class ThreadLocals {
+	/** True if node declares a field that gets a slot */
+	public static boolean isSlot(VariableDeclarationFragment node) {
+		IVariableBinding vb = node.resolveBinding();
+		if (vb == null || !vb.isField()) {
+			return false;
+		}
+
+		int modifiers = vb.getModifiers();
+		if (!Modifier.isPrivate(modifiers) || !Modifier.isStatic(modifiers)
+				|| !Modifier.isFinal(modifiers)
+				|| !TransformUtil.same(vb.getType(), ThreadLocal.class)) {
+			return false;
+		}
+
+		return isPlain(node.getInitializer()) && onlyAccessed(vb, node);
+	}
+
+	/**
+	 * The field whose slot node gets, sets or removes the value of, or null
+	 * if node is an ordinary call
+	 */
+	public static IVariableBinding slot(MethodInvocation node) {
+		if (!isAccess(node.resolveMethodBinding())) {
+			return null;
+		}
+
+		IVariableBinding vb = field(node.getExpression());
+		if (vb == null || vb.getDeclaringClass() == null
+				|| !vb.getDeclaringClass().isFromSource()) {
+			return null;
+		}
+
+		VariableDeclarationFragment fragment = declaration(vb, node);
+		return fragment != null && isSlot(fragment) ? vb : null;
+	}
+
+	/** True if mb is ThreadLocal.get, set or remove */
+	private static boolean isAccess(IMethodBinding mb) {
+		if (mb == null
+				|| !TransformUtil.same(mb.getDeclaringClass(),
+						ThreadLocal.class)) {
+			return false;
+		}
+
+		int params = mb.getParameterTypes().length;
+		return mb.getName().equals("get") && params == 0
+				|| mb.getName().equals("set") && params == 1
+				|| mb.getName().equals("remove") && params == 0;
+	}
+
+	/** The field named by expr, or null */
+	private static IVariableBinding field(Expression expr) {
+		while (expr instanceof ParenthesizedExpression) {
+			expr = ((ParenthesizedExpression) expr).getExpression();
+		}
+
+		if (!(expr instanceof Name)) {
+			return null;
+		}
+
+		IBinding b = ((Name) expr).resolveBinding();
+		if (!(b instanceof IVariableBinding)) {
+			return null;
+		}
+
+		IVariableBinding vb = (IVariableBinding) b;
+		return vb.isField() ? vb : null;
+	}
+
+	/** The ThreadLocal made by initializer has the stock get, set and remove */
+	private static boolean isPlain(Expression initializer) {
+		if (initializer instanceof MethodInvocation) {
+			IMethodBinding mb = ((MethodInvocation) initializer)
+					.resolveMethodBinding();
+			return mb != null
+					&& TransformUtil.same(mb.getDeclaringClass(),
+							ThreadLocal.class)
+					&& mb.getName().equals("withInitial");
+		}
+
+		if (!(initializer instanceof ClassInstanceCreation)) {
+			return false;
+		}
+
+		ClassInstanceCreation cic = (ClassInstanceCreation) initializer;
+		AnonymousClassDeclaration body = cic.getAnonymousClassDeclaration();
+		if (body == null) {
+			return TransformUtil.same(cic.resolveTypeBinding(),
+					ThreadLocal.class);
+		}
+
+		if (!TransformUtil.same(cic.resolveTypeBinding().getSuperclass(),
+				ThreadLocal.class)) {
+			return false;
+		}
+
+		for (BodyDeclaration bd : (List<BodyDeclaration>) body
+				.bodyDeclarations()) {
+			if (!(bd instanceof MethodDeclaration)) {
+				return false;
+			}
+
+			MethodDeclaration md = (MethodDeclaration) bd;
+			if (!md.getName().getIdentifier().equals("initialValue")
+					|| !md.parameters().isEmpty()) {
+				return false;
+			}
+		}
+
+		// The subclass could reach its map through this
+		final boolean[] self = { false };
+		body.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(ThisExpression node) {
+				self[0] = true;
+				return false;
+			}
+
+			@Override
+			public boolean visit(MethodInvocation node) {
+				IMethodBinding mb = node.resolveMethodBinding();
+				if (node.getExpression() == null && mb != null
+						&& !TransformUtil.isStatic(mb)
+						&& TransformUtil.same(mb.getDeclaringClass(),
+								ThreadLocal.class)) {
+					self[0] = true;
+				}
+
+				return true;
+			}
+
+			@Override
+			public boolean visit(SuperMethodInvocation node) {
+				if (!node.getName().getIdentifier().equals("initialValue")) {
+					self[0] = true;
+				}
+
+				return true;
+			}
+		});
+
+		return !self[0];
+	}
+
+	/** True if every use of vb is as receiver of get, set or remove */
+	private static boolean onlyAccessed(final IVariableBinding vb,
+			ASTNode node) {
+		final boolean[] ok = { true };
+		node.getRoot().accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName node) {
+				if (node.isDeclaration()
+						|| !vb.isEqualTo(node.resolveBinding())) {
+					return false;
+				}
+
+				ASTNode use = node;
+				if (node.getParent() instanceof QualifiedName
+						&& ((QualifiedName) node.getParent()).getName() == node) {
+					use = node.getParent();
+				}
+
+				while (use.getParent() instanceof ParenthesizedExpression) {
+					use = use.getParent();
+				}
+
+				if (use.getLocationInParent() != MethodInvocation.EXPRESSION_PROPERTY
+						|| !isAccess(((MethodInvocation) use.getParent())
+								.resolveMethodBinding())) {
+					ok[0] = false;
+				}
+
+				return false;
+			}
+		});
+
+		return ok[0];
+	}
+
+	private static VariableDeclarationFragment declaration(
+			final IVariableBinding vb, ASTNode node) {
+		final VariableDeclarationFragment[] ret = { null };
+		node.getRoot().accept(new ASTVisitor() {
+			@Override
+			public boolean visit(VariableDeclarationFragment node) {
+				if (vb.isEqualTo(node.resolveBinding())) {
+					ret[0] = node;
+				}
+
+				return ret[0] == null;
+			}
+		});
+
+		return ret[0];
+	}
+}
@@ -20,6 +20,7 @@ import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IInitializer;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ArrayCreation;
@@ -37,7 +38,6 @@ import org.eclipse.jdt.core.dom.InfixExpression.Operator;
 import org.eclipse.jdt.core.dom.Initializer;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.MethodInvocation;
-import org.eclipse.jdt.core.dom.Name;
 import org.eclipse.jdt.core.dom.NullLiteral;
 import org.eclipse.jdt.core.dom.NumberLiteral;
 import org.eclipse.jdt.core.dom.ParenthesizedExpression;
@@ -420,12 +420,13 @@ public final class TransformUtil {
 		}
 
 		if (needsSpecifier(mb)) {
-			/*
-			 * Can't do this because the method might need a bridge further down
-			 * the inheritance chain
-			 *
-			 * if (isFinal(mb)) { return " final"; }
-			 */
+			// Java final alone isn't enough since the method might need a
+			// bridge further down the inheritance chain, but no subtype
+			// redeclares a leaf, not even with a bridge or forwarder
+			if (ClassHierarchy.isLeaf(mb)) {
+				return " final";
+			}
+
 			return " override";
 		}
 
@@ -467,7 +468,7 @@ public final class TransformUtil {
 		return "/* <" + toCSV(parameters) + "> */";
 	}
 
-	public static String throwsDecl(Collection<Name> parameters) {
+	public static String throwsDecl(Collection<Type> parameters) {
 		if (parameters.isEmpty()) {
 			return "";
 		}
@@ -588,8 +589,10 @@ public final class TransformUtil {
 				&& !Modifier.isPublic(modifiers);
 	}
 
+	/** Final in Java, or without subclasses in the translated program */
 	public static boolean isFinal(ITypeBinding tb) {
-		return Modifier.isFinal(tb.getModifiers());
+		return Modifier.isFinal(tb.getModifiers())
+				|| ClassHierarchy.isLeaf(tb);
 	}
 
 	public static boolean isFinal(IVariableBinding vb) {
@@ -597,10 +600,11 @@ public final class TransformUtil {
 				|| (vb.isField() && vb.getDeclaringClass().isInterface());
 	}
 
+	/** Final in Java, or never overridden in the translated program */
 	public static boolean isFinal(IMethodBinding mb) {
 		return Modifier.isFinal(mb.getModifiers())
 				|| (mb.getDeclaringClass() != null && isFinal(mb
-						.getDeclaringClass()));
+						.getDeclaringClass())) || ClassHierarchy.isLeaf(mb);
 	}
 
 	public static boolean isStatic(ITypeBinding tb) {
@@ -611,6 +615,13 @@ public final class TransformUtil {
 		return Modifier.isStatic(mb.getModifiers());
 	}
 
+	/** True if mb is a default or static method of an interface */
+	public static boolean hasInterfaceBody(IMethodBinding mb) {
+		return mb.getDeclaringClass().isInterface()
+				&& (isStatic(mb) || org.eclipse.jdt.core.dom.Modifier
+						.isDefault(mb.getModifiers()));
+	}
+
 	public static boolean isStatic(FieldDeclaration declaration) {
 		return Modifier.isStatic(declaration.getModifiers());
 	}
@@ -714,6 +725,11 @@ public final class TransformUtil {
 		}
 
 		if (base.isInterface() || same(base, Object.class)) {
+			if (ClassHierarchy.isSingleBase(type, base)) {
+				// No diamond below type - an ordinary base will do
+				return "";
+			}
+
 			// Might be inherited more than once
 			return "virtual ";
 		}
@@ -765,6 +781,27 @@ public final class TransformUtil {
 		}
 	}
 
+	/** Names of the constants of an enum in ordinal order, or null */
+	public static List<String> enumConstants(ITypeBinding tb) {
+		IJavaElement je = tb.getErasure().getJavaElement();
+		if (!(je instanceof IType)) {
+			return null;
+		}
+
+		List<String> ret = new ArrayList<String>();
+		try {
+			for (IField field : ((IType) je).getFields()) {
+				if (field.isEnumConstant()) {
+					ret.add(field.getElementName());
+				}
+			}
+		} catch (JavaModelException e) {
+			return null;
+		}
+
+		return ret;
+	}
+
 	/** Check if super-interface (or Object) has the same method already */
 	public static boolean baseHasSame(IMethodBinding mb, ITypeBinding tb,
 			ITypeBinding object) {
@@ -1210,7 +1247,8 @@ public final class TransformUtil {
 
 	public static boolean baseDeclared(Transformer ctx, ITypeBinding type,
 			IMethodBinding mb) {
-		return (Modifier.isAbstract(mb.getModifiers()) || type.isInterface())
+		return (Modifier.isAbstract(mb.getModifiers()) || type.isInterface()
+				&& !hasInterfaceBody(mb))
 				&& baseHasSame(mb, type, ctx.resolve(Object.class));
 	}
 
@@ -1225,6 +1263,13 @@ public final class TransformUtil {
 		return false;
 	}
 
+	/** The name Class.getName() gives for tb, and that forName takes */
+	public static String className(ITypeBinding tb) {
+		tb = tb.getErasure();
+		return tb.isPrimitive() || tb.getBinaryName() == null ? tb
+				.getQualifiedName() : tb.getBinaryName();
+	}
+
 	public static String makeDefaultInitTag() {
 		return "*static_cast< ::" + CName.DEFAULT_INIT_TAG + "* >(0)";
 	}
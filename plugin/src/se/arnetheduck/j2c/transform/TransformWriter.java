@@ -206,16 +206,17 @@ public abstract class TransformWriter extends ASTVisitor {
 
 	@Override
 	public boolean visit(ArrayType node) {
-		if (node.getComponentType().isArrayType()
-				|| node.getComponentType() instanceof QualifiedType) {
-			node.getComponentType().accept(this);
+		ITypeBinding et = node.getElementType().resolveBinding();
+		if (node.getElementType() instanceof QualifiedType) {
+			node.getElementType().accept(this);
 		} else {
-			print(CName.relative(node.getComponentType().resolveBinding(),
-					type, true));
+			print(CName.relative(et, type, true));
 		}
 
-		softDep(node.resolveBinding());
-		print("Array");
+		for (int i = 1; i <= node.getDimensions(); ++i) {
+			softDep(et.createArrayType(i));
+			print("Array");
+		}
 
 		return false;
 	}
@@ -11,6 +11,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.WeakHashMap;
 
@@ -34,13 +35,23 @@ import org.eclipse.jdt.core.dom.EnumDeclaration;
 import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 
+import se.arnetheduck.j2c.snippets.ClassSnippet;
 import se.arnetheduck.j2c.snippets.GetSetSnippet;
+import se.arnetheduck.j2c.snippets.MonitorSnippet;
+import se.arnetheduck.j2c.snippets.ReflectSnippet;
+import se.arnetheduck.j2c.snippets.RuntimeSnippet;
+import se.arnetheduck.j2c.snippets.StackTraceSnippet;
+import se.arnetheduck.j2c.snippets.ThreadSnippet;
 import se.arnetheduck.j2c.snippets.ReplaceInvocation;
 
 public class Transformer {
 	private static final String ARRAY_HPP = "/se/arnetheduck/j2c/resources/Array.hpp";
 	private static final String OBJECT_ARRAY_HPP = "/se/arnetheduck/j2c/resources/ObjectArray.hpp";
 	private static final String SUB_ARRAY_HPP = "/se/arnetheduck/j2c/resources/SubArray.hpp";
+	private static final String CLASS_INFO_HPP = "/se/arnetheduck/j2c/resources/class_info.hpp";
+	private static final String REFLECT_HPP = "/se/arnetheduck/j2c/resources/reflect.hpp";
+	private static final String THREAD_LOCAL_HPP = "/se/arnetheduck/j2c/resources/thread_local.hpp";
+	private static final String J2C_HPP = "/se/arnetheduck/j2c/resources/j2c.hpp";
 
 	private final IJavaProject project;
 
@@ -65,8 +76,14 @@ public class Transformer {
 		this.name = name;
 		this.root = root;
 
+		snippets.add(new MonitorSnippet());
 		snippets.add(new GetSetSnippet());
 		snippets.add(new ReplaceInvocation());
+		snippets.add(new ClassSnippet());
+		snippets.add(new ReflectSnippet());
+		snippets.add(new RuntimeSnippet());
+		snippets.add(new StackTraceSnippet());
+		snippets.add(new ThreadSnippet());
 	}
 
 	public final Set<ICompilationUnit> selection = new TreeSet<ICompilationUnit>(
@@ -82,6 +99,9 @@ public class Transformer {
 
 	private final Map<String, ForwardWriter.Info> forwards = new HashMap<String, ForwardWriter.Info>();
 
+	/** Classes that have a descriptor, by name */
+	private final Map<String, ClassTableWriter.Info> classes = new TreeMap<String, ClassTableWriter.Info>();
+
 	private final MakefileWriter.Info sel = new MakefileWriter.Info();
 	private final MakefileWriter.Info ext = new MakefileWriter.Info();
 
@@ -91,6 +111,12 @@ public class Transformer {
 
 	public List<Snippet> snippets = new ArrayList<Snippet>();
 
+	/** Reorder instance fields to save padding (-Dj2c.packFields=true) */
+	public boolean packFields = Boolean.getBoolean("j2c.packFields");
+
+	private int packedTypes;
+	private int packedBytes;
+
 	protected AST currentAST;
 
 	public void process(IProgressMonitor monitor, ICompilationUnit... units)
@@ -100,6 +126,7 @@ public class Transformer {
 
 		long start = System.currentTimeMillis();
 
+		ClassHierarchy.clear();
 		hardDep(resolve(ClassLoader.class));
 		selection.addAll(Arrays.asList(units));
 		todo.addAll(selection);
@@ -112,6 +139,9 @@ public class Transformer {
 
 		new ForwardWriter(this, root).write(forwards.values());
 
+		new ClassTableWriter(root).write(classes.values());
+		sel.impls.add("src/" + ClassTableWriter.NAME);
+
 		MakefileWriter mw = new MakefileWriter(root);
 		mw.write(name, sel, ext);
 
@@ -123,6 +153,11 @@ public class Transformer {
 		System.out.println("Dependency stats:");
 		System.out.println(deps);
 
+		if (packFields) {
+			System.out.println("Field packing saved " + packedBytes
+					+ " bytes in " + packedTypes + " classes");
+		}
+
 		System.out.println("Done (" + (System.currentTimeMillis() - start)
 				+ " ms).");
 	}
@@ -135,6 +170,14 @@ public class Transformer {
 				TransformUtil.headerPath(root, "ObjectArray.hpp").toFile());
 		FileUtil.writeResource(SUB_ARRAY_HPP,
 				TransformUtil.headerPath(root, "SubArray.hpp").toFile());
+		FileUtil.writeResource(CLASS_INFO_HPP,
+				TransformUtil.headerPath(root, "class_info.hpp").toFile());
+		FileUtil.writeResource(REFLECT_HPP,
+				TransformUtil.headerPath(root, "reflect.hpp").toFile());
+		FileUtil.writeResource(THREAD_LOCAL_HPP,
+				TransformUtil.headerPath(root, "thread_local.hpp").toFile());
+		FileUtil.writeResource(J2C_HPP,
+				TransformUtil.headerPath(root, "j2c.hpp").toFile());
 	}
 
 	public String getName() {
@@ -249,7 +292,7 @@ public class Transformer {
 
 	private void parse(ICompilationUnit[] units, ASTRequestor requestor) {
 		System.out.println("Processing " + units.length + " units");
-		ASTParser parser = ASTParser.newParser(AST.JLS4);
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
 		parser.setProject(project);
 		parser.setKind(ASTParser.K_COMPILATION_UNIT);
 		parser.setResolveBindings(true);
@@ -283,7 +326,9 @@ public class Transformer {
 
 		for (AbstractTypeDeclaration type : (Iterable<AbstractTypeDeclaration>) cu
 				.types()) {
-			if (type instanceof TypeDeclaration) {
+			if (Replacements.isReplaced(type.resolveBinding())) {
+				writeHeader(unit, type.resolveBinding());
+			} else if (type instanceof TypeDeclaration) {
 				TypeDeclaration td = (TypeDeclaration) type;
 				write(ui, unitRoot, td);
 			} else if (type instanceof AnnotationTypeDeclaration) {
@@ -433,7 +478,9 @@ public class Transformer {
 					if (tb.isArray()) {
 						arrays.add(tb);
 					} else {
-						ICompilationUnit unit = getICompilationUnit(tb);
+						// Replaced classes are never translated
+						ICompilationUnit unit = Replacements.isReplaced(tb) ? null
+								: getICompilationUnit(tb);
 						if (unit == null) {
 							bindings.add(tb);
 						} else {
@@ -487,6 +534,16 @@ public class Transformer {
 		return root.append("ext");
 	}
 
+	/** Record the padding saved by reordering the fields of tb */
+	public void packed(ITypeBinding tb, int saved) {
+		if (saved > 0) {
+			System.out.println("Packed " + tb.getQualifiedName() + ": " + saved
+					+ " bytes saved per instance");
+			packedTypes++;
+			packedBytes += saved;
+		}
+	}
+
 	public void hardDep(ITypeBinding dep) {
 		if (dep != null && !done.contains(dep.getErasure().getBinaryName())) {
 			TransformUtil.addDep(dep, hardDeps);
@@ -519,8 +576,11 @@ public class Transformer {
 	private final Map<String, ITypeBinding> bindings = new WeakHashMap<String, ITypeBinding>();
 
 	public ITypeBinding resolve(Class<?> clazz) {
+		return resolve(clazz.getName());
+	}
+
+	public ITypeBinding resolve(String name) {
 		ITypeBinding ret;
-		String name = clazz.getName();
 		if (currentAST != null) {
 			ret = currentAST.resolveWellKnownType(name);
 			if (ret != null) {
@@ -534,7 +594,7 @@ public class Transformer {
 		}
 
 		try {
-			ASTParser parser = ASTParser.newParser(AST.JLS4);
+			ASTParser parser = ASTParser.newParser(AST.JLS8);
 			parser.setProject(project);
 			parser.setKind(ASTParser.K_COMPILATION_UNIT);
 			parser.setResolveBindings(true);
@@ -550,6 +610,7 @@ public class Transformer {
 	public void addImpl(ITypeBinding tb) {
 		cur.impls.add(TransformUtil.implPath(root, tb, "").makeRelativeTo(root)
 				.toString());
+		addClass(tb);
 	}
 
 	public void addNative(ITypeBinding tb) {
@@ -560,5 +621,16 @@ public class Transformer {
 	public void addStub(ITypeBinding tb) {
 		cur.stubs.add(TransformUtil.implPath(root, tb, TransformUtil.STUB)
 				.makeRelativeTo(root).toString());
+		addClass(tb);
+	}
+
+	private void addClass(ITypeBinding tb) {
+		ClassTableWriter.Info info = new ClassTableWriter.Info(tb);
+		classes.put(info.name, info);
+	}
+
+	/** tb is implemented by a file of the runtime library */
+	public void addReplacement(ITypeBinding tb) {
+		cur.replacements.add(TransformUtil.implName(tb, ""));
 	}
 }
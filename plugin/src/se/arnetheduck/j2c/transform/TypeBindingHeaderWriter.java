@@ -36,13 +36,21 @@ public class TypeBindingHeaderWriter {
 	public void write() throws Exception {
 		writeType();
 
-		if (!type.isInterface()) {
-			StubWriter sw = new StubWriter(root, ctx, type);
-			sw.write(false, false);
-			if (hasNatives()) {
-				sw = new StubWriter(root, ctx, type);
-				sw.write(true, false);
-			}
+		StubWriter sw = new StubWriter(root, ctx, type);
+		if (type.isInterface()) {
+			sw.writeInterface();
+			return;
+		}
+
+		if (Replacements.isReplaced(type)) {
+			sw.writeReplaced();
+			return;
+		}
+
+		sw.write(false, false);
+		if (hasNatives()) {
+			sw = new StubWriter(root, ctx, type);
+			sw.write(true, false);
 		}
 	}
 
@@ -132,6 +132,14 @@ public class TypeInfoVisitor extends ASTVisitor {
 			return false;
 		}
 
+		// Locals of lambdas are declared by the lambda, which is part of the
+		// method it appears in
+		if (vb.getDeclaringMethod() != null
+				&& type().isEqualTo(
+						vb.getDeclaringMethod().getDeclaringClass())) {
+			return false;
+		}
+
 		if (vb.getDeclaringMethod() == null) {
 			IJavaElement je = vb.getJavaElement().getAncestor(
 					IJavaElement.INITIALIZER);
@@ -145,7 +153,7 @@ public class TypeInfoVisitor extends ASTVisitor {
 			}
 		}
 
-		if (!Modifier.isFinal(vb.getModifiers())) {
+		if (!Modifier.isFinal(vb.getModifiers()) && !vb.isEffectivelyFinal()) {
 			return false;
 		}
 		VariableDeclarationFragment vdf = initializer(node);
@@ -0,0 +1,80 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+/** Calls into the hand written java.util.ArrayList and its nested classes */
+public class ArrayListTest {
+	private static ArrayList<Integer> range(int n) {
+		ArrayList<Integer> ret = new ArrayList<Integer>();
+		for (int i = 0; i < n; ++i) {
+			ret.add(i);
+		}
+
+		return ret;
+	}
+
+	/** Growing past the default capacity, inserting and removing */
+	public boolean positional() {
+		ArrayList<Integer> l = range(25);
+		l.add(0, -1);
+		l.remove(Integer.valueOf(3));
+		return l.size() == 25 && l.get(0) == -1 && l.remove(0) == -1
+				&& l.indexOf(4) == 3 && !l.contains(3);
+	}
+
+	/** Itr and ListItr, with their concurrent modification checks */
+	public boolean iterators() {
+		ArrayList<Integer> l = range(10);
+		for (Iterator<Integer> it = l.iterator(); it.hasNext();) {
+			if (it.next() % 2 == 0) {
+				it.remove();
+			}
+		}
+
+		ListIterator<Integer> li = l.listIterator(1);
+		li.add(42);
+		li.previous();
+		li.set(43);
+
+		Iterator<Integer> it = l.iterator();
+		it.next();
+		l.add(0);
+		try {
+			it.next();
+			return false;
+		} catch (ConcurrentModificationException e) {
+			return l.size() == 7 && l.get(1) == 43;
+		}
+	}
+
+	/** SubList writes through to the list and sees changes made through it */
+	public boolean subList() {
+		ArrayList<Integer> l = range(10);
+		List<Integer> sub = l.subList(2, 6);
+		sub.add(1, 50);
+		sub.subList(0, 1).clear();
+		int sum = 0;
+		for (int i : sub) {
+			sum += i;
+		}
+
+		l.add(0);
+		try {
+			sub.get(0);
+			return false;
+		} catch (ConcurrentModificationException e) {
+			return sum == 50 + 3 + 4 + 5 && l.size() == 11;
+		}
+	}
+
+	public static void main(String[] args) {
+		ArrayListTest t = new ArrayListTest();
+		if (!t.positional() || !t.iterators() || !t.subList()) {
+			throw new AssertionError();
+		}
+	}
+}
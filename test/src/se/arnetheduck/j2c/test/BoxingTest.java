@@ -0,0 +1,43 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BoxingTest {
+	/** sum is kept as an int - it is only ever assigned boxed values */
+	public int sum(int[] values) {
+		Integer sum = 0;
+		for (int v : values) {
+			sum += v;
+		}
+
+		sum++;
+		return sum;
+	}
+
+	/** Not kept as a primitive - the box is stored in a list */
+	public List<Integer> escaped(int n) {
+		List<Integer> ret = new ArrayList<Integer>();
+		Integer x = n;
+		ret.add(x);
+		return ret;
+	}
+
+	/** Box and unbox cancel out */
+	public long cancelled(int i, long l) {
+		return Integer.valueOf(i).intValue() + ((Long) l).longValue();
+	}
+
+	/** Cancelled, the char is still widened - this prints a number */
+	public String widened(char c) {
+		return "" + Integer.valueOf(c).intValue();
+	}
+
+	/** Small values come from the shared cache */
+	public boolean cached() {
+		Integer a = 127;
+		Object b = Integer.valueOf(127);
+		Character c = 'c';
+		return a == b && c.charValue() == 'c';
+	}
+}
@@ -0,0 +1,24 @@
+package se.arnetheduck.j2c.test;
+
+import java.io.Serializable;
+
+public class ClassTableTest implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Found through the generated table */
+	public Class<?> byName() throws ClassNotFoundException {
+		return Class.forName("se.arnetheduck.j2c.test.ClassTableTest");
+	}
+
+	/** Array classes are made from their component descriptor */
+	public Class<?> arrayByName() throws ClassNotFoundException {
+		return Class.forName("[Lse.arnetheduck.j2c.test.ClassTableTest;");
+	}
+
+	public boolean hierarchy() {
+		return ClassTableTest.class.getSuperclass() == Object.class
+				&& Serializable.class.isAssignableFrom(ClassTableTest.class)
+				&& ClassTableTest[].class.getComponentType() == ClassTableTest.class
+				&& int[].class.isArray();
+	}
+}
@@ -0,0 +1,88 @@
+package se.arnetheduck.j2c.test;
+
+public class DevirtTest {
+	public interface Named {
+		String name();
+	}
+
+	public static class Base {
+		/** Non-virtual - no subclass declares size */
+		public int size() {
+			return 1;
+		}
+
+		/** Virtual - overridden below */
+		public int weight() {
+			return 1;
+		}
+
+		/** Virtual - Leaf implements it for Named through a forwarder */
+		public String name() {
+			return "base";
+		}
+	}
+
+	/** Leaf class - final, all its methods are bound statically */
+	public static class Leaf extends Base implements Named {
+		@Override
+		public int weight() {
+			return 2;
+		}
+
+		public int total() {
+			return size() + weight();
+		}
+	}
+
+	/** Two methods, so that no lambda can implement it */
+	public interface Shape {
+		int area();
+
+		int perimeter();
+	}
+
+	public static abstract class Polygon {
+		public abstract int sides();
+	}
+
+	/**
+	 * The only implementation of Shape and Polygon - calls through them name
+	 * Square's versions
+	 */
+	public static class Square extends Polygon implements Shape {
+		@Override
+		public int area() {
+			return 4;
+		}
+
+		@Override
+		public int perimeter() {
+			return 8;
+		}
+
+		@Override
+		public int sides() {
+			return 4;
+		}
+	}
+
+	/** Virtual - the anonymous subclass overrides it */
+	public int run() {
+		return 0;
+	}
+
+	public int test() {
+		DevirtTest t = new DevirtTest() {
+			@Override
+			public int run() {
+				return 1;
+			}
+		};
+
+		Leaf l = new Leaf();
+		Shape s = new Square();
+		Polygon p = new Square();
+		return t.run() + l.total() + l.name().length() + s.area()
+				+ p.sides();
+	}
+}
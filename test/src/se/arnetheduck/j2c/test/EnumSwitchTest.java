@@ -0,0 +1,24 @@
+package se.arnetheduck.j2c.test;
+
+public class EnumSwitchTest {
+	public enum State {
+		IDLE, CONNECTING, OPEN, CLOSING, CLOSED, delete
+	}
+
+	/** A native switch on ordinal() with constexpr case labels */
+	public static int next(State s) {
+		switch (s) {
+		case IDLE:
+			return 1;
+		case CONNECTING:
+		case OPEN:
+			return 2;
+		case delete:
+			break;
+		default:
+			return 0;
+		}
+
+		return -1;
+	}
+}
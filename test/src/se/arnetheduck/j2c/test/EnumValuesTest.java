@@ -0,0 +1,27 @@
+package se.arnetheduck.j2c.test;
+
+public class EnumValuesTest {
+	public enum Op {
+		ADD, SUB, MUL, DIV
+	}
+
+	/** Iterates the shared array - no copy */
+	public static int count() {
+		int n = 0;
+		for (Op op : Op.values()) {
+			n += op.ordinal();
+		}
+
+		return n;
+	}
+
+	/** A copy - the caller may modify it */
+	public static Op[] all() {
+		return Op.values();
+	}
+
+	/** Table lookup on the hash code of the name */
+	public static Op parse(String s) {
+		return Op.valueOf(s);
+	}
+}
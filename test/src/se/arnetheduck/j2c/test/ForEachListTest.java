@@ -0,0 +1,63 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+public class ForEachListTest {
+	/** Leaf random access list - walked by index */
+	public static class Range extends AbstractList<Integer> implements
+			RandomAccess {
+		private final int n;
+
+		public Range(int n) {
+			this.n = n;
+		}
+
+		@Override
+		public Integer get(int index) {
+			return index;
+		}
+
+		@Override
+		public int size() {
+			return n;
+		}
+	}
+
+	/** Walked by index, checking for concurrent modification */
+	public int sum(ArrayList<Integer> list) {
+		int ret = 0;
+		for (int i : list) {
+			ret += i;
+		}
+
+		return ret;
+	}
+
+	public int sum(Range range) {
+		int ret = 0;
+		outer: for (Integer i : range) {
+			for (String s : new ArrayList<String>()) {
+				if (s.length() == i) {
+					continue outer;
+				}
+			}
+
+			ret += i;
+		}
+
+		return ret;
+	}
+
+	/** Not random access - uses the iterator */
+	public int count(Collection<String> c) {
+		int ret = 0;
+		for (String s : c) {
+			ret += s.length();
+		}
+
+		return ret;
+	}
+}
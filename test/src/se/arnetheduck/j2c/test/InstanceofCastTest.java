@@ -0,0 +1,49 @@
+package se.arnetheduck.j2c.test;
+
+public class InstanceofCastTest {
+	private int x;
+
+	/** Fused - test and cast become one conversion */
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof InstanceofCastTest) {
+			InstanceofCastTest other = (InstanceofCastTest) o;
+			return other.x == x;
+		}
+
+		return false;
+	}
+
+	/** Fused, the else branch doesn't redeclare the name */
+	public int length(Object o) {
+		if ((o instanceof CharSequence)) {
+			CharSequence cs = ((CharSequence) o);
+			return cs.length();
+		} else if (o instanceof Object[]) {
+			return ((Object[]) o).length;
+		} else {
+			return -1;
+		}
+	}
+
+	/** Not fused - the declared type is wider than the cast */
+	public Object wider(Object o) {
+		if (o instanceof String) {
+			Object s = (String) o;
+			return s;
+		}
+
+		return null;
+	}
+
+	/** Not fused - the else branch declares the same name */
+	public int clash(Object o) {
+		if (o instanceof Integer) {
+			Integer i = (Integer) o;
+			return i.intValue();
+		} else {
+			Integer i = Integer.valueOf(0);
+			return i.intValue();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+public class LambdaTest {
+	private int base = 10;
+
+	/** Captures nothing, so one Runnable serves every call */
+	public Runnable empty() {
+		return () -> {
+		};
+	}
+
+	/** Captures this */
+	public IntBinaryOperator offset() {
+		return (a, b) -> a + b + base;
+	}
+
+	/** Captures a local, generic parameters are cast to String */
+	public Function<String, Integer> length(final int extra) {
+		return s -> s.length() + extra;
+	}
+
+	/** Called right away, no object */
+	public int direct(int x) {
+		return ((IntBinaryOperator) (a, b) -> a * b).applyAsInt(x, x);
+	}
+
+	/** Only called, so the local holds the closure itself */
+	public int local(int x) {
+		IntBinaryOperator max = (a, b) -> a > b ? a : b;
+		return max.applyAsInt(x, base) + max.applyAsInt(base, x);
+	}
+
+	public Comparator<String> byLength() {
+		return (a, b) -> {
+			int la = a.length();
+			int lb = b.length();
+			return la < lb ? -1 : la == lb ? 0 : 1;
+		};
+	}
+
+	public Function<Object, String> references(final StringBuilder sb) {
+		Supplier<List<String>> make = ArrayList::new;
+		IntFunction<int[]> array = int[]::new;
+		Function<String, StringBuilder> append = sb::append;
+		Callable<String> self = this::toString;
+		Function<Integer, String> hex = Integer::toHexString;
+
+		List<String> list = make.get();
+		list.add(hex.apply(array.apply(3).length));
+		append.apply(list.get(0));
+		return String::valueOf;
+	}
+
+	public interface Named {
+		String name();
+	}
+
+	/** Default and static methods get definitions of their own */
+	public interface Greeter extends Named {
+		@Override
+		default String name() {
+			return "world";
+		}
+
+		default String greet() {
+			return "hello " + name();
+		}
+
+		static String twice(Greeter g) {
+			return g.greet() + g.greet();
+		}
+	}
+
+	public String defaults() {
+		Greeter g = new Greeter() {
+		};
+		return Greeter.twice(g)
+				+ byLength().reversed().compare("a", "b");
+	}
+
+	@Override
+	public String toString() {
+		return "LambdaTest";
+	}
+}
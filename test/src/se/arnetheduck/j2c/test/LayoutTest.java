@@ -0,0 +1,33 @@
+package se.arnetheduck.j2c.test;
+
+public class LayoutTest {
+	public interface Shape {
+		int area();
+	}
+
+	public interface Square extends Shape {
+		int side();
+	}
+
+	/** Object and Shape inherited virtually - Sub reaches Shape twice */
+	public static class Base implements Shape {
+		public int area() {
+			return 0;
+		}
+	}
+
+	public static class Sub extends Base implements Square {
+		public int side() {
+			return 0;
+		}
+	}
+
+	/** Class chain without interfaces - Object inherited non-virtually */
+	public static class Plain {
+		int x;
+	}
+
+	public static class PlainSub extends Plain {
+		int y;
+	}
+}
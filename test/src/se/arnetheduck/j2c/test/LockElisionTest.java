@@ -0,0 +1,59 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.Vector;
+
+public class LockElisionTest {
+	private StringBuffer shared = new StringBuffer();
+
+	/** Elided - sb never leaves the method */
+	public String local(int x) {
+		StringBuffer sb = new StringBuffer();
+		synchronized (sb) {
+			sb.append(x).append(',');
+		}
+		return sb.toString();
+	}
+
+	/** Elided - element reads can't alias the vector */
+	public Object vector(Object o) {
+		Vector<Object> v = new Vector<Object>();
+		v.add(o);
+		synchronized (v) {
+			return v.get(0);
+		}
+	}
+
+	/** Kept - sb is stored in a field */
+	public void escapes() {
+		StringBuffer sb = new StringBuffer();
+		shared = sb;
+		synchronized (sb) {
+			sb.append(1);
+		}
+	}
+
+	/** Kept - the returned builder is sb itself */
+	public StringBuffer returned() {
+		StringBuffer sb = new StringBuffer();
+		synchronized (sb) {
+			return sb.append(1);
+		}
+	}
+
+	/** Kept - notify needs the monitor */
+	public String notified() {
+		StringBuffer sb = new StringBuffer();
+		synchronized (sb) {
+			sb.append(1);
+			sb.notifyAll();
+		}
+		return sb.toString();
+	}
+
+	/** Inner block elided - this is already locked */
+	public synchronized int nested(int x) {
+		synchronized (this) {
+			return x + 1;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package se.arnetheduck.j2c.test;
+
+/** Calls into the hand written java.lang.Math */
+public class MathTest {
+	/** Adding 0.5 would round the largest double below 0.5 up */
+	public boolean roundHalf() {
+		return Math.round(0.49999999999999994) == 0
+				&& Math.round(0.49999997f) == 0 && Math.round(-0.5) == 0
+				&& Math.round(-2.5f) == -2;
+	}
+
+	/** Past 2^52 (2^23) every value is integral and comes back unchanged */
+	public boolean roundIntegral() {
+		return Math.round(4503599627370497.0) == 4503599627370497L
+				&& Math.round(8388609f) == 8388609
+				&& Math.round(-8388609f) == -8388609;
+	}
+
+	/** NaN is 0 and out of range values saturate */
+	public boolean roundSpecial() {
+		return Math.round(Double.NaN) == 0
+				&& Math.round(1e300) == Long.MAX_VALUE
+				&& Math.round(Float.NEGATIVE_INFINITY) == Integer.MIN_VALUE;
+	}
+
+	public static void main(String[] args) {
+		MathTest t = new MathTest();
+		if (!t.roundHalf() || !t.roundIntegral() || !t.roundSpecial()) {
+			throw new AssertionError();
+		}
+	}
+}
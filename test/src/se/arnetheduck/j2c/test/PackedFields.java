@@ -0,0 +1,36 @@
+package se.arnetheduck.j2c.test;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** With -Dj2c.packFields=true, 40 bytes of plain fields shrink to 24 */
+public class PackedFields {
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.FIELD)
+	public @interface Contended {
+		String value() default "";
+	}
+
+	boolean a;
+	long b;
+	int c;
+	Object d;
+	short e;
+	byte f;
+	static int s;
+	final int k = 3;
+
+	/** Each on a cache line of its own, after the rest */
+	@Contended
+	volatile long head;
+	@Contended
+	volatile long tail;
+
+	/** Sharing a line */
+	@Contended("stats")
+	int hits;
+	@Contended("stats")
+	int misses;
+}
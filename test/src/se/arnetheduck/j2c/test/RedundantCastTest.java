@@ -0,0 +1,51 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.List;
+
+public class RedundantCastTest {
+	int x;
+
+	/** Upcasts are static */
+	Object up(String s) {
+		return (Object) s;
+	}
+
+	/** Guarded by the preceding instanceof */
+	int guarded(Object o) {
+		if (o instanceof RedundantCastTest) {
+			return ((RedundantCastTest) o).x;
+		}
+		return 0;
+	}
+
+	/** equals-style early return */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof RedundantCastTest)) {
+			return false;
+		}
+
+		RedundantCastTest other = (RedundantCastTest) o;
+		return other.x == x;
+	}
+
+	/** Second cast of the same local is proven by the first */
+	int repeated(Object o) {
+		int a = ((RedundantCastTest) o).x;
+		return a + ((RedundantCastTest) o).x;
+	}
+
+	/** Condition operands */
+	boolean conditional(Object o) {
+		return o instanceof List && ((List<?>) o).isEmpty();
+	}
+
+	/** Checked - o is reassigned */
+	int reassigned(Object o, Object p) {
+		if (o instanceof RedundantCastTest) {
+			o = p;
+			return ((RedundantCastTest) o).x;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,43 @@
+package se.arnetheduck.j2c.test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/** Translate with -Dj2c.reflect=se.arnetheduck.j2c.test.ReflectionTest */
+public class ReflectionTest {
+	public int value;
+
+	public static String prefix = "v";
+
+	public ReflectionTest() {
+	}
+
+	public ReflectionTest(int value) {
+		this.value = value;
+	}
+
+	public int add(int x) {
+		return value + x;
+	}
+
+	public String describe(String name, long n) {
+		return prefix + name + n;
+	}
+
+	/** Arguments are unboxed and the result boxed by the generated thunk */
+	public Object invoke() throws Exception {
+		Method m = ReflectionTest.class.getDeclaredMethod("add", int.class);
+		return m.invoke(this, 2);
+	}
+
+	public Object construct() throws Exception {
+		Constructor<ReflectionTest> c = ReflectionTest.class
+				.getDeclaredConstructor(int.class);
+		return c.newInstance(5);
+	}
+
+	public int count() {
+		return ReflectionTest.class.getDeclaredFields().length
+				+ ReflectionTest.class.getDeclaredMethods().length;
+	}
+}
@@ -0,0 +1,36 @@
+package se.arnetheduck.j2c.test;
+
+public class RuntimeNativesTest implements Cloneable {
+	private int[] values = { 1, 2, 3, 4, 5 };
+	private long stamp = System.nanoTime();
+
+	/** Overlapping copies within one array are moves */
+	public int[] shift() {
+		System.arraycopy(values, 0, values, 1, values.length - 1);
+		return values;
+	}
+
+	/** Fails at the first element that is not a String */
+	public String[] narrow(Object[] src) {
+		String[] ret = new String[src.length];
+		System.arraycopy(src, 0, ret, 0, src.length);
+		return ret;
+	}
+
+	/** A byte copy of the object, values still shared */
+	@Override
+	public RuntimeNativesTest clone() throws CloneNotSupportedException {
+		return (RuntimeNativesTest) super.clone();
+	}
+
+	public boolean identity() {
+		return System.identityHashCode(this) == hashCode()
+				&& System.identityHashCode(null) == 0;
+	}
+
+	public long bits() {
+		return Float.floatToRawIntBits(1.5f)
+				^ Double.doubleToRawLongBits(Double.longBitsToDouble(stamp))
+				^ System.currentTimeMillis();
+	}
+}
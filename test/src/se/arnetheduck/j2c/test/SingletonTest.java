@@ -0,0 +1,93 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class SingletonTest {
+	private int count;
+
+	/** Made once, the outer instance is never used */
+	public void sort(String[][] tables) {
+		for (String[] table : tables) {
+			Arrays.sort(table, new Comparator<String>() {
+				private static final int SIGN = -1;
+
+				@Override
+				public int compare(String a, String b) {
+					return SIGN * a.compareTo(b);
+				}
+			});
+		}
+	}
+
+	/** Made once, only the sort sees it through the local */
+	public static void sort(List<String> list) {
+		Comparator<String> byLength = new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return a.length() - b.length();
+			}
+		};
+
+		Collections.sort(list, byLength);
+		byLength.compare("a", "b");
+	}
+
+	/** Returned, so made each time - callers may compare the results */
+	public static Runnable printer() {
+		return new Runnable() {
+			@Override
+			public void run() {
+				System.out.println("run");
+			}
+		};
+	}
+
+	/** Stored in a collection, so made each time */
+	public static void add(List<Runnable> list) {
+		list.add(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+
+	/** Uses the outer instance, so made each time */
+	public Runnable counter() {
+		return new Runnable() {
+			@Override
+			public void run() {
+				count++;
+			}
+		};
+	}
+
+	/** Has state, so made each time */
+	public Runnable stateful() {
+		return new Runnable() {
+			private int runs;
+
+			@Override
+			public void run() {
+				runs++;
+			}
+		};
+	}
+
+	/** Compared, so made each time */
+	public boolean same() {
+		Object lock = new Object() {
+		};
+		Runnable a = new Runnable() {
+			@Override
+			public void run() {
+			}
+		};
+
+		synchronized (lock) {
+			return a == counter();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StackAllocTest {
+	private List<String> kept;
+
+	/** sb lives on the stack */
+	public String join(String a, String b) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(a).append(", ").append(b);
+		return sb.toString();
+	}
+
+	/** Constructor arguments are kept */
+	public int sized(int n) {
+		ArrayList<String> l = new ArrayList<String>(n);
+		l.add("x");
+		return l.size();
+	}
+
+	/** Heap - stored in a field */
+	public void escapes() {
+		List<String> l = new ArrayList<String>();
+		kept = l;
+	}
+
+	/** Heap - reassigned */
+	public String reassigned(boolean b) {
+		StringBuilder sb = new StringBuilder("a");
+		if (b) {
+			sb = new StringBuilder("b");
+		}
+		return sb.toString();
+	}
+}
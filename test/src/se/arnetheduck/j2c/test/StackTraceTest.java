@@ -0,0 +1,34 @@
+package se.arnetheduck.j2c.test;
+
+public class StackTraceTest {
+	/** Thrown and caught without ever looking at the trace - cheap */
+	public int parse(String s) {
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/** Frames are named here, starting at thrower */
+	public StackTraceElement[] trace() {
+		try {
+			thrower();
+		} catch (IllegalStateException e) {
+			return e.getStackTrace();
+		}
+
+		return null;
+	}
+
+	private static void thrower() {
+		throw new IllegalStateException();
+	}
+
+	/** No trace recorded at all */
+	public Exception preallocated() {
+		return new Exception("preallocated", null, false, false) {
+			private static final long serialVersionUID = 1L;
+		};
+	}
+}
@@ -0,0 +1,24 @@
+package se.arnetheduck.j2c.test;
+
+public class StringSwitchTest {
+	private static final String QUIT = "quit";
+
+	/** "Aa" and "BB" share a hash code and so a bucket */
+	public static int command(String s) {
+		switch (s) {
+		case "get":
+			return 1;
+		case "put":
+		case QUIT:
+			return 2;
+		case "Aa":
+			return 3;
+		case "BB":
+			break;
+		default:
+			return 0;
+		}
+
+		return -1;
+	}
+}
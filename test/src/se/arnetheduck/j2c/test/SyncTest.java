@@ -1,9 +1,33 @@
 package se.arnetheduck.j2c.test;
 
 public class SyncTest {
+	private static int count;
+	private boolean ready;
+
 	public int m(int x) {
 		synchronized (this) {
 			return x * 6;
 		}
 	}
+
+	public synchronized int sm(int x) {
+		synchronized (this) {
+			return m(x);
+		}
+	}
+
+	public static synchronized int ssm() {
+		return ++count;
+	}
+
+	public synchronized void await() throws InterruptedException {
+		while (!ready) {
+			wait();
+		}
+	}
+
+	public synchronized void signal() {
+		ready = true;
+		notifyAll();
+	}
 }
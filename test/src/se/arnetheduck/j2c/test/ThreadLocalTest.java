@@ -0,0 +1,48 @@
+package se.arnetheduck.j2c.test;
+
+public class ThreadLocalTest {
+	/** Gets a slot, initialValue is called once per thread */
+	private static final ThreadLocal<StringBuilder> buffer = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder();
+		}
+	};
+
+	/** Gets a slot, starts out null */
+	private static final ThreadLocal<Integer> depth = new ThreadLocal<Integer>();
+
+	/** Passed around, so it stays a plain ThreadLocal */
+	private static final ThreadLocal<String> shared = new ThreadLocal<String>();
+
+	/** Not private, so other classes may use it any way they like */
+	static final ThreadLocal<String> open = new ThreadLocal<String>();
+
+	public String format(int i) {
+		StringBuilder sb = buffer.get();
+		sb.setLength(0);
+		return sb.append(i).toString();
+	}
+
+	public int enter() {
+		Integer d = depth.get();
+		int ret = d == null ? 0 : d;
+		depth.set(ret + 1);
+		return ret;
+	}
+
+	public void reset() {
+		depth.remove();
+		open.set(shared.get());
+	}
+
+	public ThreadLocal<String> shared() {
+		return shared;
+	}
+
+	static class Nested {
+		int depth() {
+			return (ThreadLocalTest.depth).get();
+		}
+	}
+}
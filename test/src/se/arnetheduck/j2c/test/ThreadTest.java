@@ -0,0 +1,53 @@
+package se.arnetheduck.j2c.test;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class ThreadTest {
+	private volatile boolean ready;
+
+	/** Started on a thread of its own and joined through Object.wait */
+	public boolean startJoin() throws InterruptedException {
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				ready = true;
+			}
+		};
+
+		t.start();
+		t.join();
+		return ready && !t.isAlive();
+	}
+
+	/** unpark before park leaves a permit */
+	public void permit() {
+		LockSupport.unpark(Thread.currentThread());
+		LockSupport.park();
+	}
+
+	/** An interrupt wakes the sleeper */
+	public boolean interruptSleep() throws InterruptedException {
+		final boolean[] interrupted = { false };
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(Long.MAX_VALUE);
+				} catch (InterruptedException e) {
+					interrupted[0] = true;
+				}
+			}
+		};
+
+		t.start();
+		t.interrupt();
+		t.join();
+		return interrupted[0];
+	}
+
+	public boolean holds() {
+		synchronized (this) {
+			return Thread.holdsLock(this);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package se.arnetheduck.j2c.test;
+
+/** Litmus shapes for volatile memory orders */
+public class VolatileOrder {
+	volatile int x = 1;
+	volatile int y;
+	volatile VolatileOrder next;
+	int data;
+
+	public VolatileOrder() {
+		// Not yet published - relaxed
+		y = 2;
+		next = null;
+	}
+
+	public VolatileOrder(VolatileOrder o) {
+		// Published through o - seq_cst
+		y = 3;
+		o.next = this;
+	}
+
+	/**
+	 * Message passing - the caller may load after the store and may have
+	 * stored before the load, so both stay seq_cst
+	 */
+	void mpWriter() {
+		data = 42;
+		y = 1;
+	}
+
+	int mpReader() {
+		if (y == 1) {
+			return data;
+		}
+
+		return -1;
+	}
+
+	/** Store buffering (Dekker) - store-load needs seq_cst */
+	int sb0() {
+		x = 1;
+		return y;
+	}
+
+	int sb1() {
+		y = 1;
+		return x;
+	}
+
+	/** Load then store - seq_cst, for the same reason as message passing */
+	void lb() {
+		int r = x;
+		y = r;
+	}
+
+	/** Loads and stores in a loop order the next iteration too */
+	void spin() {
+		while (x != 0) {
+			y = 0;
+		}
+	}
+
+	/** Store buffering across calls - the store and load are in different bodies */
+	void storeX() {
+		x = 1;
+	}
+
+	int loadY() {
+		return y;
+	}
+
+	int sbCall() {
+		storeX();
+		return loadY();
+	}
+
+	/** Read-modify-write stays seq_cst */
+	int rmw() {
+		x++;
+		return x += y;
+	}
+}